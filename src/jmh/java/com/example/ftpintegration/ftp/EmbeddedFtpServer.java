@@ -0,0 +1,111 @@
+package com.example.ftpintegration.ftp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.ftpserver.ConnectionConfigFactory;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.usermanager.ClearTextPasswordEncryptor;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.ConcurrentLoginPermission;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+
+/**
+ * In-process Apache MINA FtpServer on localhost with one user whose home is a
+ * temp directory, for end-to-end benchmarks.
+ *
+ * @author Yu-Hua Chang
+ */
+public class EmbeddedFtpServer implements Closeable {
+
+    public static final String USERNAME = "bench";
+    public static final String PASSWORD = "bench";
+
+    private final Path home;
+    private final int port;
+    private final org.apache.ftpserver.FtpServer server;
+
+    public EmbeddedFtpServer() throws Exception {
+        home = Files.createTempDirectory("ftp-bench");
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        ListenerFactory listenerFactory = new ListenerFactory();
+        listenerFactory.setServerAddress("127.0.0.1");
+        listenerFactory.setPort(port);
+
+        PropertiesUserManagerFactory userManagerFactory = new PropertiesUserManagerFactory();
+        userManagerFactory.setFile(Files.createFile(home.resolve("users.properties")).toFile());
+        userManagerFactory.setPasswordEncryptor(new ClearTextPasswordEncryptor());
+        UserManager userManager = userManagerFactory.createUserManager();
+
+        Files.createDirectories(home.resolve("root"));
+        BaseUser user = new BaseUser();
+        user.setName(USERNAME);
+        user.setPassword(PASSWORD);
+        user.setHomeDirectory(home.resolve("root").toString());
+        user.setMaxIdleTime(0);
+        user.setAuthorities(Arrays.asList(new WritePermission(), new ConcurrentLoginPermission(0, 0)));
+        userManager.save(user);
+
+        ConnectionConfigFactory connectionConfigFactory = new ConnectionConfigFactory();
+        connectionConfigFactory.setMaxLogins(0);
+        connectionConfigFactory.setMaxThreads(0);
+
+        FtpServerFactory serverFactory = new FtpServerFactory();
+        serverFactory.addListener("default", listenerFactory.createListener());
+        serverFactory.setUserManager(userManager);
+        serverFactory.setConnectionConfig(connectionConfigFactory.createConnectionConfig());
+
+        server = serverFactory.createServer();
+        server.start();
+    }
+
+    /**
+     * @return client side configuration of this server in passive mode.
+     */
+    public FtpServer getFtpServer() {
+        return new FtpServer("127.0.0.1", port, USERNAME, PASSWORD, true, 10000);
+    }
+
+    /**
+     * @param path
+     *            ftp path, e.g. /input/a.csv
+     * @return the file on disk
+     */
+    public File getFile(String path) {
+        return home.resolve("root").resolve(path.startsWith("/") ? path.substring(1) : path).toFile();
+    }
+
+    /**
+     * Put a file directly on disk, bypassing ftp.
+     */
+    public void writeFile(String path, byte[] content) throws IOException {
+        File file = getFile(path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content);
+    }
+
+    public void mkdirs(String path) {
+        getFile(path).mkdirs();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop();
+        try (Stream<Path> paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.ftpintegration.ftp;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
+
+/**
+ * End-to-end transfers against an {@link EmbeddedFtpServer}, including
+ * connect, login and the data connections.
+ *
+ * The file size is picked per operation from a mix, e.g. "1KB:80;1MB:20" for
+ * 80% 1KB and 20% 1MB files. Run with more threads (jmh -t, or -PjmhThreads
+ * with gradle) for a load test. Throughput is operations per second; the
+ * {@code files} and {@code bytes} counters give files and bytes per second, and
+ * the sample time mode gives the p50/p99 latency per operation.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class FtpTemplateBenchmark {
+
+    private static final int FILES_PER_BATCH = 10;
+
+    @Param({ "1KB", "1MB", "1KB:80;1MB:15;16MB:5" })
+    private String sizes;
+
+    /** reuse logged-in sessions from a {@link FtpSessionPool}. */
+    @Param({ "false", "true" })
+    private boolean pooled;
+
+    private EmbeddedFtpServer ftp;
+    private FtpSessionPool pool;
+    private final Map<String, Integer> weights = new LinkedHashMap<>();
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private int totalWeight;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @Setup
+    public void setup() throws Exception {
+        ftp = new EmbeddedFtpServer();
+        pool = pooled ? new FtpSessionPool() : null;
+        for (String size : sizes.split(";")) {
+            String[] s = size.split(":");
+            String name = s[0].trim();
+            int weight = s.length > 1 ? Integer.parseInt(s[1].trim()) : 1;
+            weights.put(name, weight);
+            totalWeight += weight;
+
+            byte[] content = new byte[(int) BenchmarkFiles.parseSize(name)];
+            new Random(content.length).nextBytes(content);
+            contents.put(name, content);
+            ftp.writeFile("/data/" + name, content);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.close();
+        }
+        ftp.close();
+    }
+
+    /**
+     * keep the disk usage bounded.
+     */
+    @TearDown(Level.Iteration)
+    public void cleanUp() {
+        for (int id = 1; id <= threadIds.get(); id++) {
+            for (String dir : new String[] { "/archive", "/upload" }) {
+                File[] files = ftp.getFile("/t" + id + dir).listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * the per-thread client side, with its own directory on the server.
+     */
+    @State(Scope.Thread)
+    public static class Client {
+
+        FtpTemplateBenchmark benchmark;
+        FtpTemplate template;
+        String dir;
+        private Random random;
+        private int counter;
+
+        @Setup
+        public void setup(FtpTemplateBenchmark benchmark) {
+            int id = benchmark.threadIds.incrementAndGet();
+            this.benchmark = benchmark;
+            template = new FtpTemplate(benchmark.ftp.getFtpServer(), benchmark.pool);
+            random = new Random(id);
+            dir = "/t" + id;
+            benchmark.ftp.mkdirs(dir + "/input");
+            benchmark.ftp.mkdirs(dir + "/archive");
+            benchmark.ftp.mkdirs(dir + "/upload");
+        }
+
+        String nextSizeName() {
+            int r = random.nextInt(benchmark.totalWeight);
+            for (Map.Entry<String, Integer> e : benchmark.weights.entrySet()) {
+                r -= e.getValue();
+                if (r < 0) {
+                    return e.getKey();
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        byte[] nextContent() {
+            return benchmark.contents.get(nextSizeName());
+        }
+
+        String nextName() {
+            return "f" + (counter++);
+        }
+
+        /**
+         * put input files on disk, bypassing ftp.
+         */
+        String writeInputFiles(int count) throws Exception {
+            String name = null;
+            for (int i = 0; i < count; i++) {
+                name = nextName();
+                benchmark.ftp.writeFile(dir + "/input/" + name, nextContent());
+            }
+            return name;
+        }
+    }
+
+    /**
+     * client with one input file put on disk before each call, outside of the
+     * measurement.
+     */
+    @State(Scope.Thread)
+    public static class MoveClient extends Client {
+
+        String name;
+
+        @Setup(Level.Invocation)
+        public void prepare() throws Exception {
+            name = writeInputFiles(1);
+        }
+    }
+
+    /**
+     * client with a batch of input files put on disk before each call.
+     */
+    @State(Scope.Thread)
+    public static class BatchMoveClient extends Client {
+
+        @Setup(Level.Invocation)
+        public void prepare() throws Exception {
+            writeInputFiles(FILES_PER_BATCH);
+        }
+    }
+
+    /**
+     * transferred files and bytes, reported as rates.
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Transferred {
+
+        public long files;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            files = 0;
+            bytes = 0;
+        }
+
+        synchronized void add(int length) {
+            files++;
+            bytes += length;
+        }
+
+        FileHandler handler() {
+            return content -> {
+                add(content.length);
+                return null;
+            };
+        }
+    }
+
+    private static void check(FtpOperationResult result) {
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(result.getMessage(), result.getError());
+        }
+    }
+
+    private static void check(List<FtpOperationResult> results, int expected) {
+        if (results.size() != expected) {
+            throw new IllegalStateException("Expected " + expected + " results but was " + results.size());
+        }
+        results.forEach(FtpTemplateBenchmark::check);
+    }
+
+    @Benchmark
+    public FtpOperationResult retrieveFile(Client client, Transferred transferred) {
+        FtpOperationResult result = client.template.retrieveFile("/data/" + client.nextSizeName(),
+                transferred.handler());
+        check(result);
+        return result;
+    }
+
+    @Benchmark
+    public FtpOperationResult storeFile(Client client, Transferred transferred) {
+        byte[] content = client.nextContent();
+        FtpOperationResult result = client.template.storeFile(client.dir + "/upload/" + client.nextName(),
+                content);
+        check(result);
+        transferred.add(content.length);
+        return result;
+    }
+
+    @Benchmark
+    public FtpOperationResult retrieveThenMove(MoveClient client, Transferred transferred) {
+        FtpOperationResult result = client.template.retrieveThenMove(client.dir + "/input/" + client.name,
+                client.dir + "/archive/" + client.name, transferred.handler());
+        check(result);
+        return result;
+    }
+
+    @Benchmark
+    public List<FtpOperationResult> retrieveThenMoveAll(BatchMoveClient client, Transferred transferred) {
+        List<FtpOperationResult> results = client.template.retrieveThenMoveAll(client.dir + "/input",
+                client.dir + "/archive", transferred.handler());
+        check(results, FILES_PER_BATCH);
+        return results;
+    }
+
+    @Benchmark
+    public List<FtpOperationResult> retrieveThenMoveAllParallel(BatchMoveClient client, Transferred transferred) {
+        FtpParallelConfig config = new FtpParallelConfig();
+        config.setSessions(4);
+        List<FtpOperationResult> results = client.template.retrieveThenMoveAll(client.dir + "/input",
+                client.dir + "/archive", transferred.handler(), config);
+        check(results, FILES_PER_BATCH);
+        return results;
+    }
+
+    @Benchmark
+    public List<FtpOperationResult> retrieveThenMoveAllPipelined(BatchMoveClient client, Transferred transferred) {
+        List<FtpOperationResult> results = client.template.retrieveThenMoveAll(client.dir + "/input",
+                client.dir + "/archive", transferred.handler(), new FtpPipelineConfig());
+        check(results, FILES_PER_BATCH);
+        return results;
+    }
+}
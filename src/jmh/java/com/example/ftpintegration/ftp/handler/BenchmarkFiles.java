@@ -0,0 +1,165 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Generate benchmark input of a given size.
+ *
+ * @author Yu-Hua Chang
+ */
+public final class BenchmarkFiles {
+
+    private static final String[] NAMES = { "John", "王小明", "Marry", "陳大文", "Mike", "林美麗" };
+    private static final String[] CITIES = { "Taipei", "台北市信義區", "Kaohsiung", "高雄市前金區" };
+
+    /** content of a csv stream is repeated in blocks of this size. */
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private BenchmarkFiles() {
+    }
+
+    /**
+     * @param size
+     *            e.g. 1KB, 64MB, 1GB
+     * @return size in bytes
+     */
+    public static long parseSize(String size) {
+        String s = size.trim().toUpperCase();
+        if (s.endsWith("GB")) {
+            return Long.parseLong(s.substring(0, s.length() - 2)) << 30;
+        }
+        if (s.endsWith("MB")) {
+            return Long.parseLong(s.substring(0, s.length() - 2)) << 20;
+        }
+        if (s.endsWith("KB")) {
+            return Long.parseLong(s.substring(0, s.length() - 2)) << 10;
+        }
+        return Long.parseLong(s);
+    }
+
+    public static String[] record(int i) {
+        return new String[] { String.format("ORD%08d", i), NAMES[i % NAMES.length], CITIES[i % CITIES.length],
+                String.valueOf(i * 7 % 100000 / 100.0) };
+    }
+
+    public static List<String[]> records(int count) {
+        List<String[]> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            list.add(record(i));
+        }
+        return list;
+    }
+
+    /**
+     * csv content of at least the given size, ending at a line break.
+     */
+    public static byte[] csv(long size, char delimiter, Charset charset) {
+        if (size > Integer.MAX_VALUE - 1024) {
+            throw new IllegalArgumentException("Too large for a byte array, use csvStream: " + size);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) size + 1024);
+        int i = 0;
+        while (out.size() < size) {
+            byte[] line = line(i++, delimiter, charset);
+            out.write(line, 0, line.length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * csv content of the given size rounded up to 1MB, without holding it in
+     * memory.
+     */
+    public static InputStream csvStream(long size, char delimiter, Charset charset) {
+        byte[] block = csv(Math.min(size, BLOCK_SIZE), delimiter, charset);
+        long blocks = (size + block.length - 1) / block.length;
+        return new InputStream() {
+            private long remaining = blocks;
+            private int pos;
+
+            @Override
+            public int read() {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (remaining == 0) {
+                    return -1;
+                }
+                int n = Math.min(len, block.length - pos);
+                System.arraycopy(block, pos, b, off, n);
+                pos += n;
+                if (pos == block.length) {
+                    pos = 0;
+                    remaining--;
+                }
+                return n;
+            }
+        };
+    }
+
+    private static byte[] line(int i, char delimiter, Charset charset) {
+        return (String.join(String.valueOf(delimiter), record(i)) + "\n").getBytes(charset);
+    }
+
+    /**
+     * Excel file with the given number of rows of 4 string cells.
+     */
+    public static byte[] excel(int rows, boolean xlsx) throws IOException {
+        Workbook wb = xlsx ? new SXSSFWorkbook(100) : new HSSFWorkbook();
+        try {
+            Sheet sheet = wb.createSheet();
+            for (int i = 0; i < rows; i++) {
+                Row row = sheet.createRow(i);
+                String[] values = record(i);
+                for (int j = 0; j < values.length; j++) {
+                    row.createCell(j).setCellValue(values[j]);
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            return out.toByteArray();
+        } finally {
+            if (wb instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) wb).dispose();
+            }
+            wb.close();
+        }
+    }
+
+    /**
+     * discards everything, only counts the bytes.
+     */
+    public static class CountingOutputStream extends OutputStream {
+
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Detect the charset of csv content with different sample sizes.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CharsetDetectionBenchmark {
+
+    @Param({ "1KB", "1MB", "64MB" })
+    private String size;
+
+    @Param({ "UTF-8", "Big5" })
+    private String charset;
+
+    /** 0 to examine the whole content. */
+    @Param({ "0", "65536" })
+    private int sampleSize;
+
+    @Param({ "0", "4" })
+    private int windows;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        content = BenchmarkFiles.csv(BenchmarkFiles.parseSize(size), '|', Charset.forName(charset));
+    }
+
+    @Benchmark
+    public String detect() {
+        return CharsetDetectionUtils.detect(StandardCharsets.UTF_8, content, sampleSize, windows);
+    }
+
+    @Benchmark
+    public String detectStream() throws IOException {
+        return CharsetDetectionUtils.detect(StandardCharsets.UTF_8,
+                new BufferedInputStream(new ByteArrayInputStream(content)), sampleSize);
+    }
+}
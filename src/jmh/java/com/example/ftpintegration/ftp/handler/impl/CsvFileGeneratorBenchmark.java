@@ -0,0 +1,84 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles.CountingOutputStream;
+import com.example.ftpintegration.ftp.handler.impl.CsvRowFileHandlerBenchmark.Amount;
+
+/**
+ * Write csv files into a byte array and into a stream, and with a typed mapper
+ * instead of Object arrays.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CsvFileGeneratorBenchmark {
+
+    @Param({ "1000", "100000", "1000000" })
+    private int records;
+
+    @Param({ "|", "," })
+    private String delimiter;
+
+    @Param({ "UTF-8", "Big5" })
+    private String charset;
+
+    private List<String[]> list;
+    private CsvFileGenerator<String[]> generator;
+    private List<Amount> amounts;
+    private CsvFileGenerator<Amount> typedGenerator;
+
+    @Setup
+    public void setup() {
+        list = BenchmarkFiles.records(records);
+        generator = new CsvFileGenerator<>(delimiter.charAt(0), CsvFileHandlerBenchmark.MAPPER,
+                Charset.forName(charset));
+        amounts = new ArrayList<>(records);
+        for (String[] record : list) {
+            amounts.add(new Amount(record[0], Double.parseDouble(record[3])));
+        }
+        typedGenerator = new CsvFileGenerator<>(delimiter.charAt(0), CsvRowFileHandlerBenchmark.TYPED_MAPPER,
+                Charset.forName(charset));
+    }
+
+    @Benchmark
+    public byte[] createFileContent() throws IOException {
+        return generator.createFileContent(list);
+    }
+
+    @Benchmark
+    public long writeFileContent() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        generator.writeFileContent(list, out);
+        return out.getCount();
+    }
+
+    @Benchmark
+    public long writeFileContentTyped() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        typedGenerator.writeFileContent(amounts, out);
+        return out.getCount();
+    }
+}
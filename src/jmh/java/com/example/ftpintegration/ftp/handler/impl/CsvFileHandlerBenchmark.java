@@ -0,0 +1,100 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+
+/**
+ * Parse csv files held in memory, all records at once and in batches, on the
+ * calling thread and in chunks on the common pool.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CsvFileHandlerBenchmark {
+
+    static final RecordMapper<CSVRecord, String[]> MAPPER = new RecordMapper<CSVRecord, String[]>() {
+        @Override
+        public String[] sourceToTarget(CSVRecord source) {
+            return new String[] { source.get(0), source.get(1), source.get(2), source.get(3) };
+        }
+
+        @Override
+        public Object[] targetToSource(String[] target) {
+            return target;
+        }
+    };
+
+    @Param({ "1KB", "1MB", "64MB" })
+    private String size;
+
+    @Param({ "|", "," })
+    private String delimiter;
+
+    @Param({ "UTF-8", "Big5" })
+    private String charset;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        content = BenchmarkFiles.csv(BenchmarkFiles.parseSize(size), delimiter.charAt(0), Charset.forName(charset));
+    }
+
+    private CsvFileHandler<String[]> handler(Blackhole blackhole, int batchSize) {
+        CsvFileHandler<String[]> handler = new CsvFileHandler<>(delimiter.charAt(0), MAPPER, blackhole::consume);
+        handler.setBatchSize(batchSize);
+        return handler;
+    }
+
+    @Benchmark
+    public String handleFile(Blackhole blackhole) throws Throwable {
+        return handler(blackhole, 0).handleFile(content);
+    }
+
+    @Benchmark
+    public String handleFileTyped(Blackhole blackhole) throws Throwable {
+        return new CsvFileHandler<>(delimiter.charAt(0), CsvRowFileHandlerBenchmark.TYPED_MAPPER, blackhole::consume)
+                .handleFile(content);
+    }
+
+    @Benchmark
+    public String handleFileInBatches(Blackhole blackhole) throws Throwable {
+        return handler(blackhole, 1000).handleFile(content);
+    }
+
+    @Benchmark
+    public String handleStreamInBatches(Blackhole blackhole) throws Throwable {
+        return handler(blackhole, 1000).handleStream(new ByteArrayInputStream(content));
+    }
+
+    @Benchmark
+    public String handleFileInParallelBatches(Blackhole blackhole) throws Throwable {
+        CsvFileHandler<String[]> handler = handler(blackhole, 1000);
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        return handler.handleFile(content);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+
+/**
+ * Parse csv streams up to 1GB in batches. The content is generated while it
+ * is read, so the heap only has to hold one batch; run with a small heap to
+ * verify that memory stays flat.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+@State(Scope.Benchmark)
+public class CsvFileStreamBenchmark {
+
+    @Param({ "64MB", "1GB" })
+    private String size;
+
+    @Param({ "|" })
+    private String delimiter;
+
+    @Param({ "UTF-8", "Big5" })
+    private String charset;
+
+    @Param({ "10000" })
+    private int batchSize;
+
+    @Benchmark
+    public String handleStream(Blackhole blackhole) throws Throwable {
+        CsvFileHandler<String[]> handler = new CsvFileHandler<>(delimiter.charAt(0), CsvFileHandlerBenchmark.MAPPER,
+                blackhole::consume);
+        handler.setBatchSize(batchSize);
+        return handler.handleStream(BenchmarkFiles.csvStream(BenchmarkFiles.parseSize(size), delimiter.charAt(0),
+                Charset.forName(charset)));
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.RowWriter;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
+import com.example.ftpintegration.ftp.handler.TypedRow;
+
+/**
+ * Same files as {@link CsvFileHandlerBenchmark}, tokenized as bytes. Run with
+ * -prof gc to compare the allocation per record.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class CsvRowFileHandlerBenchmark {
+
+    static final RecordMapper<CsvRow, String[]> MAPPER = new RecordMapper<CsvRow, String[]>() {
+        @Override
+        public String[] sourceToTarget(CsvRow source) {
+            return new String[] { source.get(0), source.get(1), source.get(2), source.get(3) };
+        }
+
+        @Override
+        public Object[] targetToSource(String[] target) {
+            return target;
+        }
+    };
+
+    /**
+     * only the first field is materialized.
+     */
+    static final RecordMapper<CsvRow, String> FIRST_FIELD_MAPPER = new RecordMapper<CsvRow, String>() {
+        @Override
+        public String sourceToTarget(CsvRow source) {
+            return source.get(0);
+        }
+
+        @Override
+        public Object[] targetToSource(String target) {
+            return new Object[] { target };
+        }
+    };
+
+    /**
+     * order number and amount of a benchmark record.
+     */
+    static final class Amount {
+        final String orderNumber;
+        final double amount;
+
+        Amount(String orderNumber, double amount) {
+            this.orderNumber = orderNumber;
+            this.amount = amount;
+        }
+    }
+
+    static final TypedRecordMapper<Amount> TYPED_MAPPER = new TypedRecordMapper<Amount>() {
+        @Override
+        public Amount rowToTarget(TypedRow row) {
+            return new Amount(row.getString(0), row.getDouble(3));
+        }
+
+        @Override
+        public void targetToRow(Amount target, RowWriter writer) {
+            writer.writeString(target.orderNumber);
+            writer.writeDouble(target.amount);
+        }
+    };
+
+    @Param({ "1KB", "1MB", "64MB" })
+    private String size;
+
+    @Param({ "|", "," })
+    private String delimiter;
+
+    @Param({ "UTF-8", "Big5" })
+    private String charset;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() {
+        content = BenchmarkFiles.csv(BenchmarkFiles.parseSize(size), delimiter.charAt(0), Charset.forName(charset));
+    }
+
+    private CsvRowFileHandler<String[]> handler(Blackhole blackhole, int batchSize) {
+        CsvRowFileHandler<String[]> handler = new CsvRowFileHandler<>(delimiter.charAt(0), MAPPER,
+                blackhole::consume);
+        handler.setBatchSize(batchSize);
+        return handler;
+    }
+
+    @Benchmark
+    public String handleFile(Blackhole blackhole) throws Throwable {
+        return handler(blackhole, 0).handleFile(content);
+    }
+
+    @Benchmark
+    public String handleFileFirstField(Blackhole blackhole) throws Throwable {
+        return new CsvRowFileHandler<>(delimiter.charAt(0), FIRST_FIELD_MAPPER, blackhole::consume)
+                .handleFile(content);
+    }
+
+    @Benchmark
+    public String handleFileTyped(Blackhole blackhole) throws Throwable {
+        return new CsvRowFileHandler<>(delimiter.charAt(0), TYPED_MAPPER, blackhole::consume).handleFile(content);
+    }
+
+    @Benchmark
+    public String handleStreamInBatches(Blackhole blackhole) throws Throwable {
+        return handler(blackhole, 1000).handleStream(new ByteArrayInputStream(content));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles.CountingOutputStream;
+
+/**
+ * Write xlsx files with the in-memory workbook and in streaming mode.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ExcelFileGeneratorBenchmark {
+
+    @Param({ "1000", "100000" })
+    private int records;
+
+    /** 0 for the in-memory workbook. */
+    @Param({ "0", "100" })
+    private int rowWindowSize;
+
+    private List<String[]> list;
+    private ExcelFileGenerator<String[]> generator;
+
+    @Setup
+    public void setup() {
+        list = BenchmarkFiles.records(records);
+        generator = new ExcelFileGenerator<>(ExcelFileHandlerBenchmark.MAPPER);
+        generator.setRowWindowSize(rowWindowSize);
+    }
+
+    @Benchmark
+    public long writeFileContent() throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        generator.writeFileContent(list, out);
+        return out.getCount();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.ftpintegration.ftp.handler.BenchmarkFiles;
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+
+/**
+ * Read xls and xlsx files with the user model and the event model.
+ *
+ * @author Yu-Hua Chang
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ExcelFileHandlerBenchmark {
+
+    static final RecordMapper<Row, String[]> MAPPER = new RecordMapper<Row, String[]>() {
+        @Override
+        public String[] sourceToTarget(Row source) {
+            return new String[] { source.getCell(0).getStringCellValue(), source.getCell(1).getStringCellValue(),
+                    source.getCell(2).getStringCellValue(), source.getCell(3).getStringCellValue() };
+        }
+
+        @Override
+        public Object[] targetToSource(String[] target) {
+            return target;
+        }
+    };
+
+    /** xls holds at most 65536 rows. */
+    @Param({ "100", "10000", "60000" })
+    private int rows;
+
+    @Param({ "xls", "xlsx" })
+    private String format;
+
+    @Param({ "false", "true" })
+    private boolean eventMode;
+
+    private byte[] content;
+
+    @Setup
+    public void setup() throws IOException {
+        content = BenchmarkFiles.excel(rows, "xlsx".equals(format));
+    }
+
+    @Benchmark
+    public String handleFile(Blackhole blackhole) throws Throwable {
+        ExcelFileHandler<String[]> handler = new ExcelFileHandler<>(MAPPER, blackhole::consume);
+        handler.setEventMode(eventMode);
+        if (eventMode) {
+            handler.setBatchSize(1000);
+        }
+        return handler.handleFile(content);
+    }
+}
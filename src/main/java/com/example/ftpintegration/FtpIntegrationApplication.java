@@ -1,7 +1,18 @@
 package com.example.ftpintegration;
 
+import java.util.concurrent.ExecutorService;
+
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+
+import com.example.ftpintegration.ftp.AsyncFtpTemplate;
+import com.example.ftpintegration.ftp.FtpAsyncConfig;
+import com.example.ftpintegration.ftp.job.FtpJobConfig;
+import com.example.ftpintegration.ftp.job.FtpJobService;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
+import com.example.ftpintegration.ftp.pool.FtpSessionPoolConfig;
 
 @SpringBootApplication
 public class FtpIntegrationApplication {
@@ -9,4 +20,37 @@ public class FtpIntegrationApplication {
     public static void main(String[] args) {
         SpringApplication.run(FtpIntegrationApplication.class, args);
     }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ftp.pool")
+    public FtpSessionPoolConfig ftpSessionPoolConfig() {
+        return new FtpSessionPoolConfig();
+    }
+
+    @Bean
+    public FtpSessionPool ftpSessionPool(FtpSessionPoolConfig config) {
+        return new FtpSessionPool(config);
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ftp.async")
+    public FtpAsyncConfig ftpAsyncConfig() {
+        return new FtpAsyncConfig();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService ftpAsyncExecutor(FtpAsyncConfig config) {
+        return AsyncFtpTemplate.newExecutor(config);
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "ftp.jobs")
+    public FtpJobConfig ftpJobConfig() {
+        return new FtpJobConfig();
+    }
+
+    @Bean
+    public FtpJobService ftpJobService(FtpSessionPool pool, FtpJobConfig config) {
+        return new FtpJobService(pool, config);
+    }
 }
@@ -0,0 +1,33 @@
+package com.example.ftpintegration;
+
+import com.example.ftpintegration.ftp.FtpServer;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class MoveAllJobRequest {
+
+    private final FtpServer server;
+    private final String inputDirectory;
+    private final String archiveDirectory;
+
+    public MoveAllJobRequest(@JsonProperty("server") FtpServer server,
+            @JsonProperty("input_directory") String inputDirectory,
+            @JsonProperty("archive_directory") String archiveDirectory) {
+        this.server = server;
+        this.inputDirectory = inputDirectory;
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    public FtpServer getServer() {
+        return server;
+    }
+
+    public String getInputDirectory() {
+        return inputDirectory;
+    }
+
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+}
@@ -1,23 +1,60 @@
 package com.example.ftpintegration;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
 import org.apache.commons.csv.CSVRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.example.ftpintegration.ftp.AsyncFtpTemplate;
 import com.example.ftpintegration.ftp.FtpOperationResult;
 import com.example.ftpintegration.ftp.FtpServer;
 import com.example.ftpintegration.ftp.FtpTemplate;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
 import com.example.ftpintegration.ftp.handler.impl.CsvFileHandler;
+import com.example.ftpintegration.ftp.job.FtpJob;
+import com.example.ftpintegration.ftp.job.FtpJobProgress;
+import com.example.ftpintegration.ftp.job.FtpJobService;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
 
 @RestController
 public class MyController {
 
     private static final Logger log = LoggerFactory.getLogger(MyController.class);
 
+    /**
+     * a client following a longer job reconnects, instead of holding the
+     * request forever if it goes away without closing.
+     */
+    private static final long JOB_EVENTS_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final FtpSessionPool pool;
+    private final ExecutorService executor;
+    private final FtpJobService jobService;
+
+    public MyController(FtpSessionPool pool, ExecutorService executor, FtpJobService jobService) {
+        this.pool = pool;
+        this.executor = executor;
+        this.jobService = jobService;
+    }
+
     /**
      * Example to fetch a file from FTP.
      * 
@@ -34,10 +71,11 @@ public class MyController {
   "fileName": "/test.txt"
 }
      * </pre>
-     * @return
+     * @return completed on the ftp executor, so the request thread is not held
+     *         during the transfer.
      */
     @PostMapping("/show")
-    public FtpOperationResult retrieveFile(@RequestBody RetrieveFileRequest request) {
+    public CompletableFuture<FtpOperationResult> retrieveFile(@RequestBody RetrieveFileRequest request) {
         log.info("Receive retrieve ftp file request");
 
         FtpServer server = request.getServer();
@@ -46,8 +84,96 @@ public class MyController {
         String fileName = request.getFileName();
         log.info("fileName: " + fileName);
 
-        FtpTemplate template = new FtpTemplate(server);
+        AsyncFtpTemplate template = new AsyncFtpTemplate(new FtpTemplate(server, pool), executor);
+        return template.retrieveFile(fileName, createFileHandler());
+    }
 
+    /**
+     * Submit a job that processes every file of the input directory and moves
+     * it to the archive directory. Poll it with GET /jobs/{id} or follow it with
+     * GET /jobs/{id}/events.
+     * 
+     * @param request example: <pre>
+     * {
+  "server": { ... },
+  "input_directory": "/input",
+  "archive_directory": "/archive"
+}
+     * </pre>
+     * @return progress of the queued job, including its id.
+     */
+    @PostMapping("/jobs")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public FtpJobProgress submitMoveAllJob(@RequestBody MoveAllJobRequest request) {
+        log.info("Receive move all job request: " + request.getServer() + " " + request.getInputDirectory());
+        FtpJob job = jobService.submitMoveAll(request.getServer(), request.getInputDirectory(),
+                request.getArchiveDirectory(), createFileHandler());
+        return job.getProgress();
+    }
+
+    @GetMapping("/jobs/{id}")
+    public FtpJobProgress getJobProgress(@PathVariable String id) {
+        return getJob(id).getProgress();
+    }
+
+    /**
+     * @param id
+     * @return results of the files processed so far; complete once the job has
+     *         finished.
+     */
+    @GetMapping("/jobs/{id}/results")
+    public List<FtpOperationResult> getJobResults(@PathVariable String id) {
+        return getJob(id).getResults();
+    }
+
+    /**
+     * Server-sent "progress" events after every file, until the job has
+     * finished or for 30 minutes.
+     * 
+     * @param id
+     * @return
+     * @throws IOException
+     */
+    @GetMapping("/jobs/{id}/events")
+    public SseEmitter getJobEvents(@PathVariable String id) throws IOException {
+        FtpJob job = getJob(id);
+        SseEmitter emitter = new SseEmitter(JOB_EVENTS_TIMEOUT_MILLIS);
+        FtpJobProgress current = job.getProgress();
+        emitter.send(SseEmitter.event().name("progress").data(current));
+        if (job.isFinished()) {
+            emitter.complete();
+            return emitter;
+        }
+
+        Consumer<FtpJobProgress> listener = progress -> {
+            try {
+                emitter.send(SseEmitter.event().name("progress").data(progress));
+                if (progress.getState() == FtpJob.State.COMPLETED || progress.getState() == FtpJob.State.FAILED) {
+                    emitter.complete();
+                }
+            } catch (IOException e) {
+                // client went away; the job drops the listener.
+                throw new UncheckedIOException(e);
+            }
+        };
+        emitter.onCompletion(() -> job.removeListener(listener));
+        emitter.onTimeout(() -> job.removeListener(listener));
+        job.addListener(listener);
+        return emitter;
+    }
+
+    private FtpJob getJob(String id) {
+        FtpJob job = jobService.getJob(id);
+        if (job == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown job " + id);
+        }
+        return job;
+    }
+
+    /**
+     * Example handler that logs every row of a '|' separated file.
+     */
+    private CsvFileHandler<String[]> createFileHandler() {
         RecordMapper<CSVRecord, String[]> mapper = new RecordMapper<CSVRecord, String[]>() {
 
             @Override
@@ -65,12 +191,20 @@ public class MyController {
             }
         };
 
-        CsvFileHandler<String[]> fileHandler = new CsvFileHandler<>('|', mapper, list -> {
+        return new CsvFileHandler<>('|', mapper, list -> {
             for (String[] row : list) {
                 log.info(" -> " + String.join(", ", row));
             }
         });
+    }
 
-        return template.retrieveFile(fileName, fileHandler);
+    /**
+     * too many transfers running or waiting already.
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public String rejected(RejectedExecutionException e) {
+        log.warn("Reject ftp request: " + e.getMessage());
+        return "Too many ftp operations in progress. Try again later.";
     }
 }
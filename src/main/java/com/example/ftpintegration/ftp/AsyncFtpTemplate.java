@@ -0,0 +1,235 @@
+package com.example.ftpintegration.ftp;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.example.ftpintegration.ftp.handler.FileGenerator;
+import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.handler.SpooledFileHandler;
+import com.example.ftpintegration.ftp.handler.StreamingFileHandler;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking facade of {@link FtpTemplate}. Operations run on the given
+ * executor and the calling thread returns at once, e.g. a web request thread
+ * returning the future to Spring MVC.
+ * 
+ * Like the template, futures complete with a result also if the operation
+ * failed. They only complete exceptionally with a
+ * {@link RejectedExecutionException} when the executor is saturated, so that
+ * callers can reject the request instead of queuing without limit.
+ * 
+ * The directory operations return a cold {@link Flux}: nothing runs until it is
+ * subscribed, and the sequential versions emit each file result as soon as the
+ * file is done.
+ * 
+ * @author Yu-Hua Chang
+ */
+public class AsyncFtpTemplate {
+
+    private final FtpTemplate template;
+    private final Executor executor;
+
+    /**
+     * @param template
+     * @param executor
+     *            should be bounded, see {@link #newExecutor(FtpAsyncConfig)}.
+     */
+    public AsyncFtpTemplate(FtpTemplate template, Executor executor) {
+        template.getClass();
+        executor.getClass();
+        this.template = template;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a fixed size executor with a bounded queue that rejects operations
+     * when the queue is full. The caller owns it and shuts it down.
+     * 
+     * @param config
+     * @return
+     */
+    public static ExecutorService newExecutor(FtpAsyncConfig config) {
+        return FtpThreads.newBoundedExecutor("ftp-async-", config.getThreads(), config.getQueueSize(),
+                config.isVirtualThreads());
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        try {
+            return CompletableFuture.supplyAsync(operation, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    private Flux<FtpOperationResult> publish(Consumer<Consumer<FtpOperationResult>> operation) {
+        return Flux.create(sink -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        operation.accept(sink::next);
+                        sink.complete();
+                    } catch (Throwable e) {
+                        sink.error(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                sink.error(e);
+            }
+        });
+    }
+
+    private Flux<FtpOperationResult> publishAll(Supplier<List<FtpOperationResult>> operation) {
+        return publish(consumer -> operation.get().forEach(consumer));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveFile(String, FileHandler)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveFile(String fileName, FileHandler handler) {
+        return supply(() -> template.retrieveFile(fileName, handler));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveFile(String, FileHandler, FtpResumeConfig)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveFile(String fileName, FileHandler handler,
+            FtpResumeConfig config) {
+        return supply(() -> template.retrieveFile(fileName, handler, config));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveFileSpooled(String, SpooledFileHandler, FtpSpoolConfig)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveFileSpooled(String fileName, SpooledFileHandler handler,
+            FtpSpoolConfig config) {
+        return supply(() -> template.retrieveFileSpooled(fileName, handler, config));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveFileStream(String, StreamingFileHandler)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveFileStream(String fileName, StreamingFileHandler handler) {
+        return supply(() -> template.retrieveFileStream(fileName, handler));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenDelete(String, FileHandler)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveThenDelete(String fileName, FileHandler handler) {
+        return supply(() -> template.retrieveThenDelete(fileName, handler));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenDeleteSpooled(String, SpooledFileHandler, FtpSpoolConfig)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveThenDeleteSpooled(String fileName,
+            SpooledFileHandler handler, FtpSpoolConfig config) {
+        return supply(() -> template.retrieveThenDeleteSpooled(fileName, handler, config));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenDeleteStream(String, StreamingFileHandler)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveThenDeleteStream(String fileName,
+            StreamingFileHandler handler) {
+        return supply(() -> template.retrieveThenDeleteStream(fileName, handler));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenMove(String, String, FileHandler)
+     */
+    public CompletableFuture<FtpOperationResult> retrieveThenMove(String inputFileName, String archiveFileName,
+            FileHandler handler) {
+        return supply(() -> template.retrieveThenMove(inputFileName, archiveFileName, handler));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenDeleteAll(String, FileHandler)
+     */
+    public Flux<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler) {
+        return publish(consumer -> template.retrieveThenDeleteAll(inputDirectory, handler, consumer));
+    }
+
+    /**
+     * @see FtpTemplate#retrieveThenMoveAll(String, String, FileHandler)
+     */
+    public Flux<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler) {
+        return publish(consumer -> template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler, consumer));
+    }
+
+    /**
+     * Results are emitted in listing order once all files are done.
+     * 
+     * @see FtpTemplate#retrieveThenDeleteAll(String, FileHandler,
+     *      FtpParallelConfig)
+     */
+    public Flux<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler,
+            FtpParallelConfig config) {
+        return publishAll(() -> template.retrieveThenDeleteAll(inputDirectory, handler, config));
+    }
+
+    /**
+     * Results are emitted in listing order once all files are done.
+     * 
+     * @see FtpTemplate#retrieveThenMoveAll(String, String, FileHandler,
+     *      FtpParallelConfig)
+     */
+    public Flux<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler, FtpParallelConfig config) {
+        return publishAll(() -> template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler, config));
+    }
+
+    /**
+     * Results are emitted in listing order once all files are done.
+     * 
+     * @see FtpTemplate#retrieveThenDeleteAll(String, FileHandler,
+     *      FtpPipelineConfig)
+     */
+    public Flux<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler,
+            FtpPipelineConfig config) {
+        return publishAll(() -> template.retrieveThenDeleteAll(inputDirectory, handler, config));
+    }
+
+    /**
+     * Results are emitted in listing order once all files are done.
+     * 
+     * @see FtpTemplate#retrieveThenMoveAll(String, String, FileHandler,
+     *      FtpPipelineConfig)
+     */
+    public Flux<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler, FtpPipelineConfig config) {
+        return publishAll(() -> template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler, config));
+    }
+
+    /**
+     * @see FtpTemplate#storeFile(String, byte[])
+     */
+    public CompletableFuture<FtpOperationResult> storeFile(String fileName, byte[] bytes) {
+        return supply(() -> template.storeFile(fileName, bytes));
+    }
+
+    /**
+     * @see FtpTemplate#storeFile(String, byte[], FtpResumeConfig)
+     */
+    public CompletableFuture<FtpOperationResult> storeFile(String fileName, byte[] bytes, FtpResumeConfig config) {
+        return supply(() -> template.storeFile(fileName, bytes, config));
+    }
+
+    /**
+     * @see FtpTemplate#storeFileStream(String, Iterable, FileGenerator)
+     */
+    public <T> CompletableFuture<FtpOperationResult> storeFileStream(String fileName, Iterable<T> records,
+            FileGenerator<T> generator) {
+        return supply(() -> template.storeFileStream(fileName, records, generator));
+    }
+}
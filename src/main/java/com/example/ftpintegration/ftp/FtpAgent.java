@@ -1,9 +1,14 @@
 package com.example.ftpintegration.ftp;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
@@ -16,6 +21,7 @@ import com.example.ftpintegration.ftp.exception.FtpException;
 import com.example.ftpintegration.ftp.exception.FtpListFilesException;
 import com.example.ftpintegration.ftp.exception.FtpLoginException;
 import com.example.ftpintegration.ftp.exception.FtpModeSwitchException;
+import com.example.ftpintegration.ftp.exception.FtpRenameFileException;
 import com.example.ftpintegration.ftp.exception.FtpRetrieveFileException;
 import com.example.ftpintegration.ftp.exception.FtpStoreFileException;
 
@@ -23,17 +29,38 @@ import com.example.ftpintegration.ftp.exception.FtpStoreFileException;
  * FTP agent that wrap core functions in {@link FTPClient} for easier unit
  * testing.
  * 
+ * Like {@link FTPClient}, an agent holds one control connection and is not
+ * thread-safe. Use one agent per thread, see {@link FtpServer#getFtpAgent()}
+ * and {@link FtpAgentFactory}.
+ * 
+ * Operations are timed with {@link FtpAgentMetrics} when one is given.
+ * 
  * @author Yu-Hua Chang
  */
 public class FtpAgent {
 
     private static final Logger log = LoggerFactory.getLogger(FtpAgent.class);
 
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
     private final FTPClient client;
+    private final FtpAgentMetrics metrics;
 
     public FtpAgent(FTPClient client) {
+        this(client, FtpAgentMetrics.NONE);
+    }
+
+    /**
+     * @param client
+     * @param metrics
+     *            should also be registered as protocol command listener of the
+     *            client to tag the meters with the reply codes.
+     */
+    public FtpAgent(FTPClient client, FtpAgentMetrics metrics) {
         client.getClass();
+        metrics.getClass();
         this.client = client;
+        this.metrics = metrics;
     }
 
     private String getLastReply(String msg) {
@@ -44,19 +71,25 @@ public class FtpAgent {
 
     public void connect(String hostname, int port) throws FtpConnectionException {
         log.info(String.format("Connect to %s:%d", hostname, port));
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
-            client.connect(hostname, port);
-        } catch (IOException e) {
-            log.error(e.getMessage(), e);
-            throw new FtpConnectionException(e);
-        }
-        int reply = client.getReplyCode();
-        if (FTPReply.isPositiveCompletion(reply)) {
-            // good.
-        } else {
-            String msg = getLastReply(String.format("Failed to connect %s:%d", hostname, port));
-            log.error(msg);
-            throw new FtpConnectionException(msg);
+            try {
+                client.connect(hostname, port);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                throw new FtpConnectionException(e);
+            }
+            int reply = client.getReplyCode();
+            if (FTPReply.isPositiveCompletion(reply)) {
+                isSuccess = true;
+            } else {
+                String msg = getLastReply(String.format("Failed to connect %s:%d", hostname, port));
+                log.error(msg);
+                throw new FtpConnectionException(msg);
+            }
+        } finally {
+            metrics.record("connect", start, isSuccess);
         }
     }
 
@@ -71,14 +104,39 @@ public class FtpAgent {
         }
     }
 
+    public boolean isConnected() {
+        return client.isConnected();
+    }
+
+    /**
+     * Send a NOOP over the control connection to check whether the session is
+     * still usable (e.g. before reusing a pooled session).
+     * 
+     * @return true if the server replied with a positive completion.
+     */
+    public boolean sendNoOp() {
+        if (log.isDebugEnabled()) {
+            log.debug("NOOP");
+        }
+        try {
+            return client.sendNoOp();
+        } catch (IOException e) {
+            log.warn(getLastReply("NOOP failed."), e);
+            return false;
+        }
+    }
+
     public void enterPassiveMode() throws FtpModeSwitchException {
         log.info("Enter passive mode");
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
             if (client.enterRemotePassiveMode()) {
                 client.enterLocalPassiveMode();
                 String localAddress = "" + client.getLocalAddress();
                 int localPort = client.getLocalPort();
                 log.info(String.format("LocalAddress: %s:%d", localAddress, localPort));
+                isSuccess = true;
             } else {
                 String msg = getLastReply("Unable to enter remote passive mode.");
                 log.error(msg);
@@ -87,14 +145,54 @@ public class FtpAgent {
         } catch (IOException e) {
             log.error(e.getMessage(), e);
             throw new FtpModeSwitchException(e);
+        } finally {
+            metrics.record("enterPassiveMode", start, isSuccess);
+        }
+    }
+
+    /**
+     * Transfer files as they are (TYPE I) instead of converting line endings, so
+     * that sizes and offsets match the file on the server, e.g. to resume a
+     * transfer.
+     * 
+     * @throws FtpModeSwitchException
+     */
+    public void enterBinaryMode() throws FtpModeSwitchException {
+        log.info("Enter binary mode");
+        setFileType(FTP.BINARY_FILE_TYPE, "Unable to enter binary mode.");
+    }
+
+    /**
+     * Transfer files as text (TYPE A), the default of a new connection, e.g. to
+     * hand a session back to a pool after {@link #enterBinaryMode()}.
+     * 
+     * @throws FtpModeSwitchException
+     */
+    public void enterAsciiMode() throws FtpModeSwitchException {
+        log.info("Enter ascii mode");
+        setFileType(FTP.ASCII_FILE_TYPE, "Unable to enter ascii mode.");
+    }
+
+    private void setFileType(int fileType, String message) throws FtpModeSwitchException {
+        try {
+            if (!client.setFileType(fileType)) {
+                String msg = getLastReply(message);
+                log.error(msg);
+                throw new FtpModeSwitchException(msg);
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            throw new FtpModeSwitchException(e);
         }
     }
 
     public void login(String username, String password) throws FtpLoginException {
         log.info(String.format("Login with %s/%s", username, password));
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
             if (client.login(username, password)) {
-                // good
+                isSuccess = true;
             } else {
                 String msg = getLastReply(String.format("Failed to login with %s/%s.", username, password));
                 log.error(msg);
@@ -103,19 +201,25 @@ public class FtpAgent {
         } catch (IOException e) {
             log.error(e.getMessage(), e);
             throw new FtpLoginException(e);
+        } finally {
+            metrics.record("login", start, isSuccess);
         }
     }
 
     public void logout() {
         log.info("Logout");
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
             if (client.logout()) {
-                // good
+                isSuccess = true;
             } else {
                 log.warn(getLastReply("Logout unsuccessful."));
             }
         } catch (IOException e) {
             log.warn("Logout error", e);
+        } finally {
+            metrics.record("logout", start, isSuccess);
         }
     }
 
@@ -128,6 +232,8 @@ public class FtpAgent {
      */
     public FTPFile[] listFiles(String pathname) throws FtpListFilesException {
         log.info(String.format("List %s", pathname));
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
             FTPFile[] files = client.listFiles(pathname);
             if (files == null) {
@@ -137,11 +243,14 @@ public class FtpAgent {
             }
             int reply = client.getReplyCode();
             if (FTPReply.isPositiveCompletion(reply)) {
+                isSuccess = true;
                 return files;
             }
         } catch (IOException e) {
             log.warn(e.getMessage(), e);
             throw new FtpListFilesException(e);
+        } finally {
+            metrics.record("listFiles", start, isSuccess);
         }
         String msg = getLastReply("listFiles failed.");
         log.warn(msg);
@@ -159,6 +268,7 @@ public class FtpAgent {
     public byte[] retrieveFile(String fileName) throws FtpRetrieveFileException {
         log.info(String.format("Retrieve %s", fileName));
         byte[] bytes = null;
+        long start = metrics.start();
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
             if (client.retrieveFile(fileName, outputStream)) {
                 bytes = outputStream.toByteArray();
@@ -170,6 +280,8 @@ public class FtpAgent {
         } catch (IOException e) {
             log.warn(e.getMessage(), e);
             throw new FtpRetrieveFileException(e);
+        } finally {
+            metrics.record("retrieveFile", start, bytes != null, bytes == null ? 0 : bytes.length);
         }
         if (bytes == null) {
             // Something goes wrong if returned byte array is null.
@@ -180,6 +292,168 @@ public class FtpAgent {
         return bytes;
     }
 
+    /**
+     * Get the size of a remote file (SIZE), e.g. to resume or verify a transfer.
+     * 
+     * @param fileName
+     *            path + file name.
+     * @return size in bytes; -1 if the file does not exist or the server does not
+     *         support SIZE.
+     * @throws FtpConnectionException
+     *             on connection errors.
+     */
+    public long getFileSize(String fileName) throws FtpConnectionException {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Size of %s", fileName));
+        }
+        long start = metrics.start();
+        boolean isSuccess = false;
+        try {
+            if (client.sendCommand("SIZE", fileName) == FTPReply.FILE_STATUS) {
+                long size = Long.parseLong(client.getReplyString().substring(3).trim());
+                isSuccess = true;
+                return size;
+            }
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            throw new FtpConnectionException(e);
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            log.warn(getLastReply("Unexpected SIZE reply."));
+            return -1;
+        } finally {
+            metrics.record("getFileSize", start, isSuccess);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(getLastReply("SIZE refused."));
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieve (download) the file content from the offset (REST) into the output
+     * stream, e.g. a partially downloaded file to continue. Bytes received before
+     * a failure are already written to the stream.
+     * 
+     * @param fileName
+     *            path + file name.
+     * @param outputStream
+     * @param offset
+     *            bytes to skip at the beginning of the file; 0 for the whole file.
+     * @return bytes written to the stream.
+     * @throws FtpRetrieveFileException
+     */
+    public long retrieveFile(String fileName, OutputStream outputStream, long offset)
+            throws FtpRetrieveFileException {
+        log.info(String.format("Retrieve %s from offset %d", fileName, offset));
+        long start = metrics.start();
+        boolean isSuccess = false;
+        long[] count = new long[1];
+        OutputStream countingStream = new FilterOutputStream(outputStream) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                count[0]++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                count[0] += len;
+            }
+        };
+        try {
+            client.setRestartOffset(offset);
+            if (client.retrieveFile(fileName, countingStream)) {
+                isSuccess = true;
+                return count[0];
+            }
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            throw new FtpRetrieveFileException(e);
+        } finally {
+            client.setRestartOffset(0);
+            metrics.record("retrieveFile", start, isSuccess, count[0]);
+        }
+        String msg = getLastReply("retrieveFile failed.");
+        log.warn(msg);
+        throw new FtpRetrieveFileException(msg);
+    }
+
+    /**
+     * Open the file content as a stream so that it can be processed while it is
+     * downloading, without holding the whole file in memory. The caller must
+     * close the stream, which completes the transfer; close fails with an
+     * {@link IOException} if the server reports the transfer as failed. No other
+     * command can be sent until the stream is closed.
+     * 
+     * @param fileName
+     *            path + file name.
+     * @return
+     * @throws FtpRetrieveFileException
+     */
+    public InputStream retrieveFileStream(String fileName) throws FtpRetrieveFileException {
+        log.info(String.format("Retrieve %s as stream", fileName));
+        long start = metrics.start();
+        InputStream inputStream;
+        try {
+            inputStream = client.retrieveFileStream(fileName);
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            metrics.record("retrieveFileStream", start, false);
+            throw new FtpRetrieveFileException(e);
+        }
+        if (inputStream == null) {
+            String msg = getLastReply("retrieveFileStream failed.");
+            log.warn(msg);
+            metrics.record("retrieveFileStream", start, false);
+            throw new FtpRetrieveFileException(msg);
+        }
+        return new FilterInputStream(inputStream) {
+
+            private boolean isClosed;
+            private long count;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    count++;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    count += n;
+                }
+                return n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (isClosed) {
+                    return;
+                }
+                isClosed = true;
+                boolean isSuccess = false;
+                try {
+                    super.close();
+                    isSuccess = client.completePendingCommand();
+                } finally {
+                    metrics.record("retrieveFileStream", start, isSuccess, count);
+                }
+                if (!isSuccess) {
+                    String msg = getLastReply(String.format("Unsuccessfully reading file: %s", fileName));
+                    log.warn(msg);
+                    throw new IOException(msg);
+                }
+            }
+        };
+    }
+
     /**
      * Store (upload) file content in byte array (binary) to ftp.
      * 
@@ -190,9 +464,11 @@ public class FtpAgent {
      */
     public void storeFile(String fileName, byte[] bytes) throws FtpStoreFileException {
         log.info(String.format("Store %s", fileName));
+        long start = metrics.start();
+        boolean isSuccess = false;
         try (InputStream inputStream = new ByteArrayInputStream(bytes)) {
             if (client.storeFile(fileName, inputStream)) {
-                // good.
+                isSuccess = true;
             } else {
                 String msg = getLastReply("storeFile failed.");
                 log.warn(msg);
@@ -201,7 +477,147 @@ public class FtpAgent {
         } catch (IOException e) {
             log.warn(e.getMessage(), e);
             throw new FtpStoreFileException(e);
+        } finally {
+            metrics.record("storeFile", start, isSuccess, isSuccess ? bytes.length : 0);
+        }
+    }
+
+    /**
+     * Store (upload) the file content from the offset. From offset 0 the file is
+     * replaced (STOR); otherwise the rest of the content is appended (APPE) to
+     * the first offset bytes already on the server.
+     * 
+     * @param fileName
+     *            path + file name
+     * @param bytes
+     *            the whole content.
+     * @param offset
+     *            bytes already stored.
+     * @throws FtpStoreFileException
+     */
+    public void storeFile(String fileName, byte[] bytes, int offset) throws FtpStoreFileException {
+        if (offset == 0) {
+            storeFile(fileName, bytes);
+            return;
+        }
+        log.info(String.format("Append %s from offset %d", fileName, offset));
+        long start = metrics.start();
+        boolean isSuccess = false;
+        try (InputStream inputStream = new ByteArrayInputStream(bytes, offset, bytes.length - offset)) {
+            if (client.appendFile(fileName, inputStream)) {
+                isSuccess = true;
+            } else {
+                String msg = getLastReply("appendFile failed.");
+                log.warn(msg);
+                throw new FtpStoreFileException(msg);
+            }
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            throw new FtpStoreFileException(e);
+        } finally {
+            metrics.record("appendFile", start, isSuccess, isSuccess ? bytes.length - offset : 0);
+        }
+    }
+
+    /**
+     * Open a stream to store (upload) the file so that content can be written
+     * while it is being produced, without holding the whole file in memory. The
+     * stream is buffered. The caller must close the stream, which completes the
+     * transfer; close fails with an {@link IOException} if the server reports the
+     * transfer as failed. No other command can be sent until the stream is
+     * closed.
+     * 
+     * @param fileName
+     *            path + file name
+     * @return
+     * @throws FtpStoreFileException
+     */
+    public OutputStream storeFileStream(String fileName) throws FtpStoreFileException {
+        log.info(String.format("Store %s as stream", fileName));
+        long start = metrics.start();
+        OutputStream outputStream;
+        try {
+            outputStream = client.storeFileStream(fileName);
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            metrics.record("storeFileStream", start, false);
+            throw new FtpStoreFileException(e);
+        }
+        if (outputStream == null) {
+            String msg = getLastReply("storeFileStream failed.");
+            log.warn(msg);
+            metrics.record("storeFileStream", start, false);
+            throw new FtpStoreFileException(msg);
+        }
+        return new BufferedOutputStream(outputStream, STREAM_BUFFER_SIZE) {
+
+            private boolean isClosed;
+            private long count;
+
+            @Override
+            public synchronized void write(int b) throws IOException {
+                super.write(b);
+                count++;
+            }
+
+            @Override
+            public synchronized void write(byte[] b, int off, int len) throws IOException {
+                super.write(b, off, len);
+                count += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (isClosed) {
+                    return;
+                }
+                isClosed = true;
+                boolean isSuccess = false;
+                try {
+                    super.close();
+                    isSuccess = client.completePendingCommand();
+                } finally {
+                    metrics.record("storeFileStream", start, isSuccess, count);
+                }
+                if (!isSuccess) {
+                    String msg = getLastReply(String.format("Unsuccessfully writing file: %s", fileName));
+                    log.warn(msg);
+                    throw new IOException(msg);
+                }
+            }
+        };
+    }
+
+    /**
+     * Rename (move) a remote file on the server (RNFR/RNTO), without transferring
+     * its content.
+     * 
+     * @param fromFileName
+     *            path + file name
+     * @param toFileName
+     *            path + file name
+     * @return false if the server refused the rename, e.g. because the target is
+     *         on another file system.
+     * @throws FtpRenameFileException
+     *             on connection errors.
+     */
+    public boolean renameFile(String fromFileName, String toFileName) throws FtpRenameFileException {
+        log.info(String.format("Rename %s to %s", fromFileName, toFileName));
+        long start = metrics.start();
+        boolean isSuccess = false;
+        try {
+            if (client.rename(fromFileName, toFileName)) {
+                isSuccess = true;
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+            throw new FtpRenameFileException(e);
+        } finally {
+            metrics.record("renameFile", start, isSuccess);
         }
+        log.warn(getLastReply("renameFile refused."));
+        return false;
     }
 
     /**
@@ -213,9 +629,11 @@ public class FtpAgent {
      */
     public void deleteFile(String fileName) throws FtpDeleteFileException {
         log.info(String.format("Store %s", fileName));
+        long start = metrics.start();
+        boolean isSuccess = false;
         try {
             if (client.deleteFile(fileName)) {
-                // good.
+                isSuccess = true;
             } else {
                 String msg = getLastReply("deleteFile failed.");
                 log.warn(msg);
@@ -224,6 +642,8 @@ public class FtpAgent {
         } catch (IOException e) {
             log.warn(e.getMessage(), e);
             throw new FtpDeleteFileException(e);
+        } finally {
+            metrics.record("deleteFile", start, isSuccess);
         }
     }
 }
@@ -0,0 +1,17 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Supply new {@link FtpAgent}s. An agent wraps one {@link
+ * org.apache.commons.net.ftp.FTPClient} and must only be used by one thread at
+ * a time, so concurrent transfers need one agent each.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public interface FtpAgentFactory {
+
+    /**
+     * @return a new, unconnected agent.
+     */
+    FtpAgent createFtpAgent();
+}
@@ -0,0 +1,108 @@
+package com.example.ftpintegration.ftp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ProtocolCommandEvent;
+import org.apache.commons.net.ProtocolCommandListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters for the operations of one {@link FtpAgent}:
+ * <ul>
+ * <li>{@value #TIMER}: duration per host, operation, outcome and reply code.
+ * <li>{@value #BYTES}: bytes transferred per host and operation.
+ * <li>{@value #ERRORS}: failed operations per host, operation and reply code.
+ * </ul>
+ *
+ * Registered as a listener on the control connection, it remembers the last
+ * reply code, so tagging does not need extra calls on the client. Meters are
+ * looked up once per tag combination and cached.
+ *
+ * @author Yu-Hua Chang
+ */
+public class FtpAgentMetrics implements ProtocolCommandListener {
+
+    public static final String TIMER = "ftp.agent.operation";
+    public static final String BYTES = "ftp.agent.bytes";
+    public static final String ERRORS = "ftp.agent.errors";
+
+    /** records nothing. */
+    static final FtpAgentMetrics NONE = new FtpAgentMetrics(null, null);
+
+    private final MeterRegistry registry;
+    private final String host;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private volatile int replyCode;
+
+    /**
+     * @param registry
+     * @param host
+     *            tag value of all meters.
+     */
+    public FtpAgentMetrics(MeterRegistry registry, String host) {
+        this.registry = registry;
+        this.host = host;
+    }
+
+    @Override
+    public void protocolCommandSent(ProtocolCommandEvent event) {
+        // only replies are of interest.
+    }
+
+    @Override
+    public void protocolReplyReceived(ProtocolCommandEvent event) {
+        replyCode = event.getReplyCode();
+    }
+
+    /**
+     * Mark the start of an operation.
+     *
+     * @return start time for {@link #record(String, long, boolean, long)}
+     */
+    long start() {
+        if (registry == null) {
+            return 0;
+        }
+        replyCode = 0;
+        return System.nanoTime();
+    }
+
+    void record(String operation, long start, boolean isSuccess) {
+        record(operation, start, isSuccess, 0);
+    }
+
+    /**
+     * @param operation
+     * @param start
+     *            from {@link #start()}
+     * @param isSuccess
+     * @param bytes
+     *            transferred bytes, 0 if none.
+     */
+    void record(String operation, long start, boolean isSuccess, long bytes) {
+        if (registry == null) {
+            return;
+        }
+        long duration = System.nanoTime() - start;
+        String reply = replyCode == 0 ? "none" : String.valueOf(replyCode);
+        String outcome = isSuccess ? "success" : "error";
+
+        timers.computeIfAbsent(operation + ':' + outcome + ':' + reply, k -> Timer.builder(TIMER)
+                .tags("host", host, "operation", operation, "outcome", outcome, "reply", reply)
+                .register(registry)).record(duration, TimeUnit.NANOSECONDS);
+        if (bytes > 0) {
+            counters.computeIfAbsent(BYTES + ':' + operation, k -> Counter.builder(BYTES).baseUnit("bytes")
+                    .tags("host", host, "operation", operation).register(registry)).increment(bytes);
+        }
+        if (!isSuccess) {
+            counters.computeIfAbsent(ERRORS + ':' + operation + ':' + reply, k -> Counter.builder(ERRORS)
+                    .tags("host", host, "operation", operation, "reply", reply).register(registry)).increment();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Settings of the executor behind {@link AsyncFtpTemplate}.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpAsyncConfig {
+
+    /**
+     * operations running at the same time. Each one holds an ftp session while
+     * it runs.
+     */
+    private int threads = 16;
+
+    /**
+     * operations waiting for a thread. Further operations are rejected instead
+     * of piling up.
+     */
+    private int queueSize = 256;
+
+    /**
+     * run the operations on virtual threads (Java 21 or later, see
+     * {@link FtpThreads}). Blocking ftp i/o then does not hold a platform
+     * thread, so threads can be raised to thousands; mind the connection limits
+     * of the servers.
+     */
+    private boolean virtualThreads;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
@@ -5,6 +5,7 @@ public class FtpOperationResult {
     private boolean isSuccess;
     private String message;
     private Throwable error;
+    private final FtpOperationTimings timings = new FtpOperationTimings();
 
     public boolean isSuccess() {
         return isSuccess;
@@ -34,4 +35,11 @@ public class FtpOperationResult {
         setSuccess(false);
     }
 
+    /**
+     * @return time per phase and bytes transferred of this operation.
+     */
+    public FtpOperationTimings getTimings() {
+        return timings;
+    }
+
 }
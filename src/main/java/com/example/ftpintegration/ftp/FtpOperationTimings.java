@@ -0,0 +1,155 @@
+package com.example.ftpintegration.ftp;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of a {@link FtpTemplate} operation, plus the bytes
+ * transferred, to tell where a slow operation spent its time.
+ *
+ * Only phases that ran are reported. A phase that failed is still recorded up
+ * to the failure. Streamed transfers handle the content while it is downloading
+ * or being generated, so handling is part of the transfer phase there, and
+ * their bytes are not counted here (see {@link FtpAgentMetrics} for those).
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpOperationTimings {
+
+    public enum Phase {
+        /** connect to the server. */
+        CONNECT,
+        /** borrow a session from the pool, including connect and login of a new one. */
+        BORROW,
+        LOGIN,
+        /** enter passive mode. */
+        PASV,
+        /** list the input directory. */
+        LIST,
+        /** download or upload the content. */
+        TRANSFER,
+        /** run the file handler. */
+        HANDLER,
+        /** rename, or upload to, the archive location. */
+        ARCHIVE,
+        DELETE,
+        LOGOUT
+    }
+
+    /**
+     * internal interface of a timed call with a result.
+     */
+    interface TimedCall<T> {
+        T call() throws Throwable;
+    }
+
+    /**
+     * internal interface of a timed call without a result.
+     */
+    interface TimedRun {
+        void run() throws Throwable;
+    }
+
+    private final Map<Phase, Long> nanos = new EnumMap<>(Phase.class);
+    private long bytes;
+
+    /**
+     * Sum the timings of several results, e.g. of all files of a directory.
+     *
+     * @param results
+     * @return
+     */
+    public static FtpOperationTimings aggregate(Collection<FtpOperationResult> results) {
+        FtpOperationTimings timings = new FtpOperationTimings();
+        for (FtpOperationResult result : results) {
+            timings.add(result.getTimings());
+        }
+        return timings;
+    }
+
+    /**
+     * @return milliseconds per phase, in the order of the phases.
+     */
+    public Map<Phase, Double> getPhases() {
+        Map<Phase, Double> phases = new EnumMap<>(Phase.class);
+        nanos.forEach((phase, n) -> phases.put(phase, n / 1e6));
+        return phases;
+    }
+
+    /**
+     * @return milliseconds of all phases.
+     */
+    public double getTotal() {
+        long total = 0;
+        for (long n : nanos.values()) {
+            total += n;
+        }
+        return total / 1e6;
+    }
+
+    /**
+     * @return bytes downloaded or uploaded in the transfer phase.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return bytes per second of the transfer phase; 0 if nothing was
+     *         transferred.
+     */
+    public double getThroughput() {
+        Long n = nanos.get(Phase.TRANSFER);
+        if (n == null || n == 0 || bytes == 0) {
+            return 0;
+        }
+        return bytes * 1e9 / n;
+    }
+
+    void add(Phase phase, long elapsedNanos) {
+        nanos.merge(phase, elapsedNanos, Long::sum);
+    }
+
+    void addBytes(long count) {
+        bytes += count;
+    }
+
+    void add(FtpOperationTimings other) {
+        other.nanos.forEach(this::add);
+        bytes += other.bytes;
+    }
+
+    /**
+     * Add everything recorded so far to the other timings and start over.
+     */
+    void moveTo(FtpOperationTimings other) {
+        other.add(this);
+        nanos.clear();
+        bytes = 0;
+    }
+
+    <T> T time(Phase phase, TimedCall<T> call) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            add(phase, System.nanoTime() - start);
+        }
+    }
+
+    void time(Phase phase, TimedRun run) throws Throwable {
+        long start = System.nanoTime();
+        try {
+            run.run();
+        } finally {
+            add(phase, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FtpOperationTimings [phases=" + getPhases() + ", bytes=" + bytes + "]";
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Settings of the parallel directory operations in {@link FtpTemplate}.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpParallelConfig {
+
+    /**
+     * concurrent ftp sessions downloading and archiving files. Keep it within
+     * the connection limit of the remote server.
+     */
+    private int sessions = 4;
+
+    /**
+     * threads running {@link com.example.ftpintegration.ftp.handler.FileHandler}.
+     */
+    private int handlerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * downloaded files waiting for a handler thread. When the queue is full the
+     * session thread handles the file itself, which slows down downloading.
+     */
+    private int handlerQueueSize = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * run the sessions on virtual threads (Java 21 or later, see
+     * {@link FtpThreads}). Handlers stay on platform threads as they are cpu
+     * bound.
+     */
+    private boolean virtualThreads;
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        this.handlerThreads = handlerThreads;
+    }
+
+    public int getHandlerQueueSize() {
+        return handlerQueueSize;
+    }
+
+    public void setHandlerQueueSize(int handlerQueueSize) {
+        this.handlerQueueSize = handlerQueueSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
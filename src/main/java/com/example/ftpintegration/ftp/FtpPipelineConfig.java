@@ -0,0 +1,38 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Settings of the pipelined directory operations in {@link FtpTemplate}.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpPipelineConfig {
+
+    /**
+     * threads running {@link com.example.ftpintegration.ftp.handler.FileHandler}.
+     */
+    private int handlerThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * downloaded bytes waiting to be handled or archived. Downloading pauses
+     * when the next file would exceed it; a larger file is still downloaded
+     * once nothing else is buffered.
+     */
+    private long maxBufferedBytes = 64L * 1024 * 1024;
+
+    public int getHandlerThreads() {
+        return handlerThreads;
+    }
+
+    public void setHandlerThreads(int handlerThreads) {
+        this.handlerThreads = handlerThreads;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public void setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Settings of the resumable transfers in {@link FtpTemplate}.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpResumeConfig {
+
+    /**
+     * sessions tried in total, the first one included, before giving up.
+     */
+    private int maxAttempts = 5;
+
+    /**
+     * wait before the second attempt. It doubles for every further attempt.
+     */
+    private long backoffMillis = 1000;
+
+    /**
+     * upper limit of the wait between two attempts.
+     */
+    private long maxBackoffMillis = 60 * 1000;
+
+    /**
+     * local directory keeping partially downloaded files, so that a retry, or a
+     * later call for the same file, continues where the last one stopped.
+     */
+    private String spoolDirectory = System.getProperty("java.io.tmpdir");
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public long getBackoffMillis() {
+        return backoffMillis;
+    }
+
+    public void setBackoffMillis(long backoffMillis) {
+        this.backoffMillis = backoffMillis;
+    }
+
+    public long getMaxBackoffMillis() {
+        return maxBackoffMillis;
+    }
+
+    public void setMaxBackoffMillis(long maxBackoffMillis) {
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+}
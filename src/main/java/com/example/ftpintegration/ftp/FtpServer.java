@@ -3,24 +3,32 @@ package com.example.ftpintegration.ftp;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPClientConfig;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import io.micrometer.core.instrument.Metrics;
+
 /**
  * server info for creating a ftp connection.
  * 
+ * The server itself is immutable and can be shared between threads. Agents are
+ * not: {@link #getFtpAgent()} leases a separate agent to each calling thread and
+ * {@link #createFtpAgent()} creates a new one on every call.
+ * 
  * @author Yu-Hua Chang
  *
  */
 @JsonIgnoreProperties(ignoreUnknown = false)
-public class FtpServer {
+public class FtpServer implements FtpAgentFactory {
 
     private final String host;
     private final int port;
     private final String username;
     private final String password;
     private final boolean isPassiveMode;
-    private final FtpAgent agent;
+    private final int timeout;
+    private final ThreadLocal<FtpAgent> agents = ThreadLocal.withInitial(this::createFtpAgent);
 
     /**
      * 
@@ -45,7 +53,22 @@ public class FtpServer {
         this.username = username;
         this.password = password;
         this.isPassiveMode = isPassiveMode;
+        this.timeout = timeout;
+    }
 
+    /**
+     * Create a new agent with its own {@link FTPClient} configured for this
+     * server. Unlike {@link #getFtpAgent()}, every call returns a fresh agent,
+     * which is what a session pool needs.
+     * 
+     * The operations of the agent are recorded in the global meter registry,
+     * which Spring Boot backs with the registries of the application, tagged by
+     * the host of this server.
+     * 
+     * @return a new, unconnected agent
+     */
+    @Override
+    public FtpAgent createFtpAgent() {
         FTPClient client = new FTPClient();
         FTPClientConfig config = new FTPClientConfig();
         client.configure(config);
@@ -55,7 +78,9 @@ public class FtpServer {
         client.setDataTimeout(timeout);
         client.setDefaultTimeout(timeout);
 
-        agent = new FtpAgent(client);
+        FtpAgentMetrics metrics = new FtpAgentMetrics(Metrics.globalRegistry, host);
+        client.addProtocolCommandListener(metrics);
+        return new FtpAgent(client, metrics);
     }
 
     public String getHost() {
@@ -78,8 +103,21 @@ public class FtpServer {
         return isPassiveMode;
     }
 
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Get the agent leased to the calling thread. Repeated calls on the same
+     * thread return the same agent, so a connect, login, transfer and logout
+     * sequence stays on one control connection, while other threads work on
+     * their own connections in parallel.
+     * 
+     * @return the agent of the calling thread
+     */
+    @JsonIgnore
     public FtpAgent getFtpAgent() {
-        return agent;
+        return agents.get();
     }
 
     @Override
@@ -0,0 +1,37 @@
+package com.example.ftpintegration.ftp;
+
+/**
+ * Settings of the spooled downloads in {@link FtpTemplate}.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpSpoolConfig {
+
+    /**
+     * files up to this size are downloaded to the heap; larger files, or files
+     * of unknown size, are spooled to a local file.
+     */
+    private long heapThreshold = 16L * 1024 * 1024;
+
+    /**
+     * local directory of the spool files. They are removed once handled.
+     */
+    private String spoolDirectory = System.getProperty("java.io.tmpdir");
+
+    public long getHeapThreshold() {
+        return heapThreshold;
+    }
+
+    public void setHeapThreshold(long heapThreshold) {
+        this.heapThreshold = heapThreshold;
+    }
+
+    public String getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    public void setSpoolDirectory(String spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+}
@@ -1,26 +1,109 @@
 package com.example.ftpintegration.ftp;
 
-import java.util.LinkedList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.net.ftp.FTPFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.ftpintegration.ftp.FtpOperationTimings.Phase;
+import com.example.ftpintegration.ftp.FtpOperationTimings.TimedCall;
 import com.example.ftpintegration.ftp.exception.FtpConnectionException;
+import com.example.ftpintegration.ftp.exception.FtpException;
 import com.example.ftpintegration.ftp.exception.FtpLoginException;
 import com.example.ftpintegration.ftp.exception.FtpModeSwitchException;
+import com.example.ftpintegration.ftp.exception.FtpRetrieveFileException;
+import com.example.ftpintegration.ftp.exception.FtpStoreFileException;
+import com.example.ftpintegration.ftp.handler.FileGenerator;
 import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.handler.SpooledContent;
+import com.example.ftpintegration.ftp.handler.SpooledFileHandler;
+import com.example.ftpintegration.ftp.handler.StreamingFileHandler;
+import com.example.ftpintegration.ftp.pool.FtpSession;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
 
 /**
  * Wrap common ftp actions, such as connect, disconnect, login, logout, etc.
  * into templates and organize common ftp operations as function calls.
  * 
+ * A template can be shared between threads. Each call runs on the agent of the
+ * calling thread (or on a session borrowed for the call), so parallel calls
+ * never share a control connection.
+ * 
+ * Every result carries the time spent per phase, see
+ * {@link FtpOperationTimings}. For the directory operations, the connect, login,
+ * list and logout of a session are added to the first file handled on it, so
+ * that {@link FtpOperationTimings#aggregate(java.util.Collection)} of the
+ * results covers the whole run.
+ * 
  * @author Yu-Hua Chang
  */
 public class FtpTemplate {
 
+    private static final Logger log = LoggerFactory.getLogger(FtpTemplate.class);
+
     private final FtpServer server;
+    private final FtpSessionPool pool;
+
+    /**
+     * agent of the pooled session bound to the running operation.
+     */
+    private final ThreadLocal<FtpAgent> sessionAgent = new ThreadLocal<>();
 
     public FtpTemplate(FtpServer server) {
+        this(server, null);
+    }
+
+    /**
+     * Create a template that borrows logged-in sessions from the pool instead of
+     * connecting and logging in for every call.
+     * 
+     * @param server
+     * @param pool
+     *            session pool; null to connect per call.
+     */
+    public FtpTemplate(FtpServer server, FtpSessionPool pool) {
         this.server = server;
+        this.pool = pool;
+    }
+
+    /**
+     * @return the agent the current operation should talk to.
+     */
+    FtpAgent getFtpAgent() {
+        FtpAgent agent = sessionAgent.get();
+        if (agent != null) {
+            return agent;
+        }
+        return server.getFtpAgent();
     }
 
     /**
@@ -31,6 +114,14 @@ public class FtpTemplate {
         void execute(final FtpOperationResult result) throws Throwable;
     }
 
+    /**
+     * @return where the templates record their phases; a throwaway if there is
+     *         no result.
+     */
+    private static FtpOperationTimings timingsOf(FtpOperationResult result) {
+        return result != null ? result.getTimings() : new FtpOperationTimings();
+    }
+
     /**
      * the template to handle ftp connect and disconnect.
      */
@@ -46,7 +137,7 @@ public class FtpTemplate {
         public void execute(final FtpOperationResult result) throws Throwable {
             FtpAgent agent = server.getFtpAgent();
             try {
-                agent.connect(server.getHost(), server.getPort());
+                timingsOf(result).time(Phase.CONNECT, () -> agent.connect(server.getHost(), server.getPort()));
 
                 // nested call operations...
                 if (op != null) {
@@ -84,11 +175,12 @@ public class FtpTemplate {
         @Override
         public void execute(final FtpOperationResult result) throws Throwable {
             FtpAgent agent = server.getFtpAgent();
+            FtpOperationTimings timings = timingsOf(result);
             try {
-                agent.login(server.getUsername(), server.getPassword());
+                timings.time(Phase.LOGIN, () -> agent.login(server.getUsername(), server.getPassword()));
 
                 if (server.isPassiveMode()) {
-                    agent.enterPassiveMode();
+                    timings.time(Phase.PASV, agent::enterPassiveMode);
                 }
 
                 // nested call operations...
@@ -103,23 +195,76 @@ public class FtpTemplate {
                 // do nothing. only handle the exceptions we know here.
                 throw e;
             } finally {
-                agent.logout();
+                timings.time(Phase.LOGOUT, agent::logout);
             }
         }
     }
 
     /**
-     * Default template that combine connection and login template together.
+     * the template to borrow a logged-in session from the pool and give it back
+     * afterwards. it replaces the connection and login templates when a pool is
+     * configured.
+     */
+    class DoWithSessionTemplate implements FtpOperation {
+
+        private final FtpOperation op;
+
+        public DoWithSessionTemplate(FtpOperation op) {
+            this.op = op;
+        }
+
+        @Override
+        public void execute(final FtpOperationResult result) throws Throwable {
+            FtpSession session;
+            try {
+                session = timingsOf(result).time(Phase.BORROW, () -> pool.borrow(server));
+            } catch (FtpException e) {
+                // connection, login or mode switch error
+                result.setError(e);
+                throw e;
+            }
+
+            boolean isReusable = true;
+            sessionAgent.set(session.getFtpAgent());
+            try {
+                // nested call operations...
+                if (op != null) {
+                    op.execute(result);
+                }
+            } catch (FtpException | IOException e) {
+                // the control connection may be broken or out of sync, e.g. a
+                // streamed transfer was aborted.
+                isReusable = false;
+                throw e;
+            } finally {
+                sessionAgent.remove();
+                if (isReusable) {
+                    pool.release(session);
+                } else {
+                    pool.invalidate(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Default template that combine connection and login template together, or
+     * use a pooled session if a pool is configured.
      */
     class DefaultTemplate {
         public FtpOperationResult run(FtpOperation op) {
             final FtpOperationResult result = new FtpOperationResult();
 
-            DoWithLoginTemplate loginTemplate = new DoWithLoginTemplate(op);
-            DoWithConnectionTemplate connectionTemplate = new DoWithConnectionTemplate(loginTemplate);
+            FtpOperation template;
+            if (pool == null) {
+                DoWithLoginTemplate loginTemplate = new DoWithLoginTemplate(op);
+                template = new DoWithConnectionTemplate(loginTemplate);
+            } else {
+                template = new DoWithSessionTemplate(op);
+            }
 
             try {
-                connectionTemplate.execute(result);
+                template.execute(result);
             } catch (Throwable e) {
                 result.setError(e);
             }
@@ -127,6 +272,473 @@ public class FtpTemplate {
         }
     }
 
+    /**
+     * the template to run an operation again on a new session after a connection
+     * or transfer error, waiting longer after every attempt. Other errors, e.g. of
+     * the login or the file handler, are not retried. The result keeps the
+     * timings of all attempts.
+     */
+    class RetryTemplate {
+
+        private final FtpResumeConfig config;
+
+        public RetryTemplate(FtpResumeConfig config) {
+            this.config = config;
+        }
+
+        public FtpOperationResult run(FtpOperation op) {
+            FtpOperationTimings timings = new FtpOperationTimings();
+            long backoff = config.getBackoffMillis();
+            for (int attempt = 1;; attempt++) {
+                FtpOperationResult result = new DefaultTemplate().run(op);
+                timings.moveTo(result.getTimings());
+                if (result.isSuccess() || attempt >= config.getMaxAttempts() || !isRetryable(result.getError())) {
+                    return result;
+                }
+                log.warn(String.format("Attempt %d of %d failed, retry in %d ms: %s", attempt,
+                        config.getMaxAttempts(), backoff, result.getMessage()));
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return result;
+                }
+                backoff = Math.min(backoff * 2, config.getMaxBackoffMillis());
+                result.getTimings().moveTo(timings);
+            }
+        }
+
+        private boolean isRetryable(Throwable error) {
+            return error instanceof FtpConnectionException || error instanceof FtpModeSwitchException
+                    || error instanceof FtpRetrieveFileException || error instanceof FtpStoreFileException;
+        }
+    }
+
+    /**
+     * internal interface of an operation on one file of a directory.
+     */
+    interface FtpFileOperation {
+        void execute(final String fileName, final FtpOperationResult result) throws Throwable;
+    }
+
+    /**
+     * the template to run an operation on every file of a directory with several
+     * sessions in parallel. File handling runs on a separate bounded thread pool
+     * so that cpu usage is limited independently of the number of sessions.
+     */
+    class ParallelTemplate {
+
+        private final FtpParallelConfig config;
+        private ExecutorService handlerExecutor;
+
+        public ParallelTemplate(FtpParallelConfig config) {
+            this.config = config;
+        }
+
+        public List<FtpOperationResult> run(String inputDirectory, FtpFileOperation op) {
+            // list on one session, then share the file names between sessions.
+            List<String> fileNames = new ArrayList<>();
+            FtpOperationResult listResult = new DefaultTemplate().run(result -> {
+                FtpAgent agent = getFtpAgent();
+                FTPFile[] files = result.getTimings().time(Phase.LIST, () -> agent.listFiles(inputDirectory));
+                for (FTPFile file : files) {
+                    if (!file.isDirectory()) {
+                        fileNames.add(file.getName());
+                    }
+                }
+                result.setSuccess(true);
+            });
+            if (!listResult.isSuccess() || fileNames.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            int size = fileNames.size();
+            FtpOperationResult[] fileResults = new FtpOperationResult[size];
+            AtomicInteger next = new AtomicInteger();
+
+            int sessions = Math.max(1, Math.min(config.getSessions(), size));
+            int handlerThreads = Math.max(1, config.getHandlerThreads());
+            ExecutorService sessionExecutor = Executors.newFixedThreadPool(sessions,
+                    FtpThreads.threadFactory("ftp-session-", config.isVirtualThreads()));
+            handlerExecutor = new ThreadPoolExecutor(handlerThreads, handlerThreads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(Math.max(1, config.getHandlerQueueSize())),
+                    FtpThreads.threadFactory("ftp-handler-"), new ThreadPoolExecutor.CallerRunsPolicy());
+
+            // first file handled by each session.
+            int[] firstIndexes = new int[sessions];
+            Arrays.fill(firstIndexes, -1);
+
+            Throwable sessionError = null;
+            try {
+                List<Future<FtpOperationResult>> sessionResults = new ArrayList<>();
+                for (int i = 0; i < sessions; i++) {
+                    int session = i;
+                    sessionResults.add(sessionExecutor.submit(() -> new DefaultTemplate().run(result -> {
+                        int index;
+                        while ((index = next.getAndIncrement()) < size) {
+                            if (firstIndexes[session] < 0) {
+                                firstIndexes[session] = index;
+                            }
+                            FtpOperationResult r = new FtpOperationResult();
+                            try {
+                                op.execute(fileNames.get(index), r);
+                            } catch (Throwable e) {
+                                r.setError(e);
+                            }
+                            fileResults[index] = r;
+                        }
+                        result.setSuccess(true);
+                    })));
+                }
+                for (int i = 0; i < sessions; i++) {
+                    FtpOperationResult r = sessionResults.get(i).get();
+                    if (!r.isSuccess() && sessionError == null) {
+                        sessionError = r.getError();
+                    }
+                    if (firstIndexes[i] >= 0) {
+                        fileResults[firstIndexes[i]].getTimings().add(r.getTimings());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                sessionError = e;
+            } catch (ExecutionException e) {
+                sessionError = e.getCause();
+            } finally {
+                sessionExecutor.shutdownNow();
+                handlerExecutor.shutdownNow();
+            }
+
+            // files no session got to, e.g. every session failed to login.
+            List<FtpOperationResult> results = new ArrayList<>(size);
+            for (FtpOperationResult r : fileResults) {
+                if (r == null) {
+                    r = new FtpOperationResult();
+                    r.setError(sessionError != null ? sessionError
+                            : new FtpConnectionException("No ftp session processed the file."));
+                }
+                results.add(r);
+            }
+            results.get(0).getTimings().add(listResult.getTimings());
+            return results;
+        }
+
+        /**
+         * Run the handler on the handler pool and wait for it.
+         */
+        public String handleFile(FileHandler handler, byte[] bytes) throws Throwable {
+            Future<String> future = handlerExecutor.submit(() -> {
+                try {
+                    return handler.handleFile(bytes);
+                } catch (Exception | Error e) {
+                    throw e;
+                } catch (Throwable e) {
+                    throw new ExecutionException(e);
+                }
+            });
+            try {
+                return future.get();
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * internal interface of the last step of a pipelined file, e.g. move or
+     * delete.
+     */
+    interface FtpFileFinisher {
+        void execute(FtpAgent agent, String fileName, byte[] bytes, FtpOperationTimings timings) throws Throwable;
+    }
+
+    /**
+     * the template to run an operation on every file of a directory as a
+     * pipeline on one session: the session downloads the next file while the
+     * previous files are handled on a thread pool, and finishes (moves or
+     * deletes) the handled files in between downloads. Downloaded files that are
+     * not finished yet are bounded in bytes, estimated from the listing.
+     */
+    class PipelineTemplate {
+
+        private final FtpPipelineConfig config;
+
+        public PipelineTemplate(FtpPipelineConfig config) {
+            this.config = config;
+        }
+
+        /**
+         * a file on its way through the pipeline.
+         */
+        private class Item {
+            private final String fileName;
+            private final String inputFileName;
+            private final FtpOperationResult result;
+            private final int permits;
+            private byte[] bytes;
+            private String message;
+            private Throwable error;
+
+            Item(String fileName, String inputFileName, FtpOperationResult result, int permits) {
+                this.fileName = fileName;
+                this.inputFileName = inputFileName;
+                this.result = result;
+                this.permits = permits;
+            }
+        }
+
+        public List<FtpOperationResult> run(String inputDirectory, FileHandler handler, FtpFileFinisher finisher) {
+            List<FtpOperationResult> results = new ArrayList<>();
+
+            // one permit per KB.
+            int maxPermits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, config.getMaxBufferedBytes() / 1024));
+            Semaphore budget = new Semaphore(maxPermits);
+            BlockingQueue<Item> handled = new LinkedBlockingQueue<>();
+            ExecutorService handlerExecutor = Executors.newFixedThreadPool(Math.max(1, config.getHandlerThreads()),
+                    FtpThreads.threadFactory("ftp-handler-"));
+
+            FtpOperationResult sessionResult;
+            try {
+                sessionResult = new DefaultTemplate().run(result -> {
+                    FtpAgent agent = getFtpAgent();
+                    FTPFile[] files = result.getTimings().time(Phase.LIST, () -> agent.listFiles(inputDirectory));
+                    int pending = 0;
+                    for (FTPFile file : files) {
+                        if (file.isDirectory()) {
+                            continue;
+                        }
+                        FtpOperationResult r = new FtpOperationResult();
+                        results.add(r);
+                        long size = Math.max(1, (file.getSize() + 1023) / 1024);
+                        Item item = new Item(file.getName(), inputDirectory + "/" + file.getName(), r,
+                                (int) Math.min(maxPermits, size));
+
+                        // finish handled files, waiting for them while the buffer is full.
+                        Item done;
+                        while ((done = handled.poll()) != null) {
+                            finish(agent, done, finisher, budget);
+                            pending--;
+                        }
+                        while (!budget.tryAcquire(item.permits)) {
+                            finish(agent, handled.take(), finisher, budget);
+                            pending--;
+                        }
+
+                        try {
+                            item.bytes = retrieveFile(agent, item.inputFileName, r.getTimings());
+                        } catch (Throwable e) {
+                            budget.release(item.permits);
+                            r.setError(e);
+                            continue;
+                        }
+                        pending++;
+                        handlerExecutor.execute(() -> {
+                            try {
+                                item.message = r.getTimings().time(Phase.HANDLER, () -> handler.handleFile(item.bytes));
+                            } catch (Throwable e) {
+                                item.error = e;
+                            }
+                            handled.add(item);
+                        });
+                    }
+                    while (pending > 0) {
+                        finish(agent, handled.take(), finisher, budget);
+                        pending--;
+                    }
+                });
+            } finally {
+                handlerExecutor.shutdownNow();
+            }
+
+            // files in the pipeline when the session failed.
+            for (FtpOperationResult r : results) {
+                if (!r.isSuccess() && r.getError() == null) {
+                    r.setError(sessionResult.getError() != null ? sessionResult.getError()
+                            : new FtpConnectionException("No ftp session processed the file."));
+                }
+            }
+            addSessionTimings(results, sessionResult);
+            return results;
+        }
+
+        private void finish(FtpAgent agent, Item item, FtpFileFinisher finisher, Semaphore budget) {
+            FtpOperationResult r = item.result;
+            try {
+                if (item.error != null) {
+                    r.setError(item.error);
+                    return;
+                }
+                finisher.execute(agent, item.fileName, item.bytes, r.getTimings());
+                if (item.message == null) {
+                    r.setMessage(String.format("Process file %s success.", item.inputFileName));
+                } else {
+                    r.setMessage(item.message);
+                }
+                r.setSuccess(true);
+            } catch (Throwable e) {
+                r.setError(e);
+            } finally {
+                item.bytes = null;
+                budget.release(item.permits);
+            }
+        }
+    }
+
+    /**
+     * Move the input file to the archive location with a server-side rename. Only
+     * if the server refuses the rename, upload the downloaded content as the
+     * archive file and delete the input file.
+     */
+    private void moveFile(FtpAgent agent, String inputFileName, String archiveFileName, byte[] bytes,
+            FtpOperationTimings timings) throws Throwable {
+        boolean isRenamed = timings.time(Phase.ARCHIVE, () -> agent.renameFile(inputFileName, archiveFileName));
+        if (!isRenamed) {
+            timings.time(Phase.ARCHIVE, () -> agent.storeFile(archiveFileName, bytes));
+            timings.time(Phase.DELETE, () -> agent.deleteFile(inputFileName));
+        }
+    }
+
+    /**
+     * Run the call in binary mode and switch the session back to ascii mode, the
+     * default of a new session, afterwards, so that a pooled session is handed
+     * to the next borrower as it was created. A failure to switch back does not
+     * hide the failure of the call.
+     */
+    private static <T> T inBinaryMode(FtpAgent agent, TimedCall<T> call) throws Throwable {
+        agent.enterBinaryMode();
+        T value;
+        try {
+            value = call.call();
+        } catch (Throwable e) {
+            try {
+                agent.enterAsciiMode();
+            } catch (Throwable suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        agent.enterAsciiMode();
+        return value;
+    }
+
+    /**
+     * Download the file, timed as transfer.
+     */
+    private byte[] retrieveFile(FtpAgent agent, String fileName, FtpOperationTimings timings) throws Throwable {
+        byte[] bytes = timings.time(Phase.TRANSFER, () -> agent.retrieveFile(fileName));
+        if (bytes != null) {
+            timings.addBytes(bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Download the file through the spool file, continuing after the bytes a
+     * previous attempt left there if the server reports the size of the file.
+     * The spool file is removed once the complete content is read.
+     */
+    private byte[] retrieveFile(FtpAgent agent, String fileName, File spool, FtpOperationTimings timings)
+            throws Throwable {
+        long size = agent.getFileSize(fileName);
+        long offset = size >= 0 && spool.length() <= size ? spool.length() : 0;
+        if (size < 0 || offset < size) {
+            try (OutputStream outputStream = new FileOutputStream(spool, offset > 0)) {
+                timings.time(Phase.TRANSFER, () -> {
+                    try {
+                        timings.addBytes(agent.retrieveFile(fileName, outputStream, offset));
+                    } finally {
+                        outputStream.flush();
+                    }
+                });
+            }
+        }
+        byte[] bytes = spool.exists() ? Files.readAllBytes(spool.toPath()) : new byte[0];
+        if (size >= 0 && bytes.length != size) {
+            if (bytes.length > size) {
+                Files.delete(spool.toPath());
+            }
+            throw new FtpRetrieveFileException(
+                    String.format("Downloaded %d of %d bytes of %s.", bytes.length, size, fileName));
+        }
+        Files.deleteIfExists(spool.toPath());
+        return bytes;
+    }
+
+    /**
+     * Download the file to the heap if the server reports it within the
+     * threshold, otherwise through a file channel into a new spool file.
+     */
+    private SpooledContent retrieveFile(FtpAgent agent, String fileName, FtpSpoolConfig config,
+            FtpOperationTimings timings) throws Throwable {
+        long size = agent.getFileSize(fileName);
+        if (size >= 0 && size <= config.getHeapThreshold()) {
+            return new SpooledContent(retrieveFile(agent, fileName, timings));
+        }
+        Path spool = Files.createTempFile(Paths.get(config.getSpoolDirectory()), "ftp-", ".spool");
+        try {
+            try (FileChannel channel = FileChannel.open(spool, StandardOpenOption.WRITE);
+                    OutputStream outputStream = Channels.newOutputStream(channel)) {
+                timings.time(Phase.TRANSFER, () -> {
+                    timings.addBytes(agent.retrieveFile(fileName, outputStream, 0));
+                });
+            }
+            return new SpooledContent(spool);
+        } catch (Throwable e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+    }
+
+    /**
+     * Run the handler on the file while it is downloading, timed as transfer as
+     * the two overlap. The bytes read by the handler are counted.
+     */
+    private static String handleStream(FtpAgent agent, String fileName, StreamingFileHandler handler,
+            FtpOperationTimings timings) throws Throwable {
+        return timings.time(Phase.TRANSFER, () -> {
+            CountingInputStream inputStream = new CountingInputStream(agent.retrieveFileStream(fileName));
+            try (InputStream in = inputStream) {
+                return handler.handleStream(in);
+            } finally {
+                timings.addBytes(inputStream.count);
+            }
+        });
+    }
+
+    /**
+     * Run the handler and release the content and its spool file afterwards.
+     */
+    private static String handleFile(SpooledFileHandler handler, SpooledContent content,
+            FtpOperationTimings timings) throws Throwable {
+        try {
+            return timings.time(Phase.HANDLER, () -> handler.handleFile(content));
+        } finally {
+            content.close();
+            if (content.isSpooled()) {
+                Files.deleteIfExists(content.getPath());
+            }
+        }
+    }
+
+    /**
+     * @return the spool file of a remote file of this server.
+     */
+    private File getSpoolFile(String fileName, FtpResumeConfig config) {
+        String key = server.getHost() + ":" + server.getPort() + fileName;
+        String name = key.replaceAll("[^A-Za-z0-9._-]", "_") + "." + Integer.toHexString(key.hashCode()) + ".part";
+        return new File(config.getSpoolDirectory(), name);
+    }
+
+    /**
+     * Add the timings of the session not yet added (the logout) to the first file
+     * result.
+     */
+    private static void addSessionTimings(List<FtpOperationResult> results, FtpOperationResult sessionResult) {
+        if (!results.isEmpty()) {
+            sessionResult.getTimings().moveTo(results.get(0).getTimings());
+        }
+    }
+
     /**
      * Download and process file.
      * 
@@ -136,9 +748,91 @@ public class FtpTemplate {
      */
     public FtpOperationResult retrieveFile(String fileName, FileHandler handler) {
         return new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            byte[] bytes = agent.retrieveFile(fileName);
-            String message = handler.handleFile(bytes);
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            byte[] bytes = retrieveFile(agent, fileName, timings);
+            String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+            if (message == null) {
+                result.setMessage(String.format("Download file %s success.", fileName));
+            } else {
+                result.setMessage(message);
+            }
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Download and process file, resuming an interrupted download on a new
+     * session. The content is spooled to a local file while downloading; a retry
+     * continues from its end (REST), and the size is checked against the server
+     * afterwards. The session is in binary mode for that, and back in ascii mode
+     * when the call returns. If all attempts fail the spool file is kept, so
+     * that a later call for the same file continues from there.
+     * 
+     * A file must not be downloaded by two calls at the same time, as they would
+     * share the spool file.
+     * 
+     * @param fileName
+     * @param handler
+     * @param config
+     * @return
+     */
+    public FtpOperationResult retrieveFile(String fileName, FileHandler handler, FtpResumeConfig config) {
+        File spool = getSpoolFile(fileName, config);
+        return new RetryTemplate(config).run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            byte[] bytes = inBinaryMode(agent, () -> retrieveFile(agent, fileName, spool, timings));
+            String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+            if (message == null) {
+                result.setMessage(String.format("Download file %s success.", fileName));
+            } else {
+                result.setMessage(message);
+            }
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Download and process file, spooling it to a local file instead of the heap
+     * if it is larger than the threshold of the config. The handler reads spooled
+     * content memory-mapped, so files of any size can be handled with a small
+     * heap.
+     * 
+     * @param fileName
+     * @param handler
+     * @param config
+     * @return
+     */
+    public FtpOperationResult retrieveFileSpooled(String fileName, SpooledFileHandler handler,
+            FtpSpoolConfig config) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            SpooledContent content = retrieveFile(agent, fileName, config, timings);
+            String message = handleFile(handler, content, timings);
+            if (message == null) {
+                result.setMessage(String.format("Download file %s success.", fileName));
+            } else {
+                result.setMessage(message);
+            }
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Download and process file as a stream, without holding the whole file in
+     * memory.
+     * 
+     * @param fileName
+     * @param handler
+     * @return
+     */
+    public FtpOperationResult retrieveFileStream(String fileName, StreamingFileHandler handler) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            String message = handleStream(agent, fileName, handler, timings);
             if (message == null) {
                 result.setMessage(String.format("Download file %s success.", fileName));
             } else {
@@ -158,10 +852,61 @@ public class FtpTemplate {
      */
     public FtpOperationResult retrieveThenDelete(String fileName, FileHandler handler) {
         return new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            byte[] bytes = agent.retrieveFile(fileName);
-            String message = handler.handleFile(bytes);
-            agent.deleteFile(fileName);
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            byte[] bytes = retrieveFile(agent, fileName, timings);
+            String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+            timings.time(Phase.DELETE, () -> agent.deleteFile(fileName));
+            if (message == null) {
+                result.setMessage(String.format("Process file %s success.", fileName));
+            } else {
+                result.setMessage(message);
+            }
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Spooled version of {@link #retrieveThenDelete(String, FileHandler)}, see
+     * {@link #retrieveFileSpooled(String, SpooledFileHandler, FtpSpoolConfig)}.
+     * 
+     * @param fileName
+     * @param handler
+     * @param config
+     * @return
+     */
+    public FtpOperationResult retrieveThenDeleteSpooled(String fileName, SpooledFileHandler handler,
+            FtpSpoolConfig config) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            SpooledContent content = retrieveFile(agent, fileName, config, timings);
+            String message = handleFile(handler, content, timings);
+            timings.time(Phase.DELETE, () -> agent.deleteFile(fileName));
+            if (message == null) {
+                result.setMessage(String.format("Process file %s success.", fileName));
+            } else {
+                result.setMessage(message);
+            }
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Stream version of {@link #retrieveThenDelete(String, FileHandler)}: the
+     * file is processed while it is downloading and deleted once both the
+     * transfer and the handling succeeded.
+     * 
+     * @param fileName
+     * @param handler
+     * @return
+     */
+    public FtpOperationResult retrieveThenDeleteStream(String fileName, StreamingFileHandler handler) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            String message = handleStream(agent, fileName, handler, timings);
+            timings.time(Phase.DELETE, () -> agent.deleteFile(fileName));
             if (message == null) {
                 result.setMessage(String.format("Process file %s success.", fileName));
             } else {
@@ -173,7 +918,9 @@ public class FtpTemplate {
 
     /**
      * Retrieve (download) file content as byte array (binary) from input directory
-     * and move it to the archive location after a successful handling.
+     * and move it to the archive location after a successful handling. The file
+     * is renamed on the server; it is only uploaded again if the rename is
+     * refused.
      * 
      * @param inputFileName
      * @param archiveFileName
@@ -182,11 +929,11 @@ public class FtpTemplate {
      */
     public FtpOperationResult retrieveThenMove(String inputFileName, String archiveFileName, FileHandler handler) {
         return new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            byte[] bytes = agent.retrieveFile(inputFileName);
-            String message = handler.handleFile(bytes);
-            agent.storeFile(archiveFileName, bytes);
-            agent.deleteFile(inputFileName);
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            byte[] bytes = retrieveFile(agent, inputFileName, timings);
+            String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+            moveFile(agent, inputFileName, archiveFileName, bytes, timings);
             if (message == null) {
                 result.setMessage(String.format("Process file %s success.", inputFileName));
             } else {
@@ -206,10 +953,30 @@ public class FtpTemplate {
      * @return
      */
     public List<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler) {
-        List<FtpOperationResult> results = new LinkedList<>();
-        new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            FTPFile[] files = agent.listFiles(inputDirectory);
+        List<FtpOperationResult> results = new ArrayList<>();
+        FtpOperationResult sessionResult = retrieveThenDeleteAll(inputDirectory, handler, results::add);
+        addSessionTimings(results, sessionResult);
+        return results;
+    }
+
+    /**
+     * Same as {@link #retrieveThenDeleteAll(String, FileHandler)} but each result
+     * is passed on as soon as the file is done. The session timings up to the
+     * first file are added to its result, the logout stays in the returned
+     * session result.
+     * 
+     * @param inputDirectory
+     * @param handler
+     * @param consumer
+     *            called on the calling thread.
+     * @return the result of the session, with the error if the session failed.
+     */
+    public FtpOperationResult retrieveThenDeleteAll(String inputDirectory, FileHandler handler,
+            Consumer<FtpOperationResult> consumer) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FTPFile[] files = result.getTimings().time(Phase.LIST, () -> agent.listFiles(inputDirectory));
+            boolean isFirst = true;
             for (FTPFile file : files) {
                 String fileName = file.getName();
                 if (file.isDirectory()) {
@@ -218,10 +985,11 @@ public class FtpTemplate {
                 String inputFileName = inputDirectory + "/" + fileName;
 
                 FtpOperationResult r = new FtpOperationResult();
+                FtpOperationTimings timings = r.getTimings();
                 try {
-                    byte[] bytes = agent.retrieveFile(inputFileName);
-                    String message = handler.handleFile(bytes);
-                    agent.deleteFile(inputFileName);
+                    byte[] bytes = retrieveFile(agent, inputFileName, timings);
+                    String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+                    timings.time(Phase.DELETE, () -> agent.deleteFile(inputFileName));
                     if (message == null) {
                         r.setMessage(String.format("Process file %s success.", inputFileName));
                     } else {
@@ -231,10 +999,13 @@ public class FtpTemplate {
                 } catch (Throwable e) {
                     r.setError(e);
                 }
-                results.add(r);
+                if (isFirst) {
+                    result.getTimings().moveTo(timings);
+                    isFirst = false;
+                }
+                consumer.accept(r);
             }
         });
-        return results;
     }
 
     /**
@@ -249,10 +1020,32 @@ public class FtpTemplate {
      */
     public List<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
             FileHandler handler) {
-        List<FtpOperationResult> results = new LinkedList<>();
-        new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            FTPFile[] files = agent.listFiles(inputDirectory);
+        List<FtpOperationResult> results = new ArrayList<>();
+        FtpOperationResult sessionResult = retrieveThenMoveAll(inputDirectory, archiveDirectory, handler,
+                results::add);
+        addSessionTimings(results, sessionResult);
+        return results;
+    }
+
+    /**
+     * Same as {@link #retrieveThenMoveAll(String, String, FileHandler)} but each
+     * result is passed on as soon as the file is done. The session timings up to
+     * the first file are added to its result, the logout stays in the returned
+     * session result.
+     * 
+     * @param inputDirectory
+     * @param archiveDirectory
+     * @param handler
+     * @param consumer
+     *            called on the calling thread.
+     * @return the result of the session, with the error if the session failed.
+     */
+    public FtpOperationResult retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler, Consumer<FtpOperationResult> consumer) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FTPFile[] files = result.getTimings().time(Phase.LIST, () -> agent.listFiles(inputDirectory));
+            boolean isFirst = true;
             for (FTPFile file : files) {
                 String fileName = file.getName();
                 if (file.isDirectory()) {
@@ -262,11 +1055,11 @@ public class FtpTemplate {
                 String archiveFileName = archiveDirectory + "/" + fileName;
 
                 FtpOperationResult r = new FtpOperationResult();
+                FtpOperationTimings timings = r.getTimings();
                 try {
-                    byte[] bytes = agent.retrieveFile(inputFileName);
-                    String message = handler.handleFile(bytes);
-                    agent.storeFile(archiveFileName, bytes);
-                    agent.deleteFile(inputFileName);
+                    byte[] bytes = retrieveFile(agent, inputFileName, timings);
+                    String message = timings.time(Phase.HANDLER, () -> handler.handleFile(bytes));
+                    moveFile(agent, inputFileName, archiveFileName, bytes, timings);
                     if (message == null) {
                         r.setMessage(String.format("Process file %s success.", inputFileName));
                     } else {
@@ -276,10 +1069,119 @@ public class FtpTemplate {
                 } catch (Throwable e) {
                     r.setError(e);
                 }
-                results.add(r);
+                if (isFirst) {
+                    result.getTimings().moveTo(timings);
+                    isFirst = false;
+                }
+                consumer.accept(r);
             }
         });
-        return results;
+    }
+
+    /**
+     * Parallel version of {@link #retrieveThenDeleteAll(String, FileHandler)}.
+     * Files are spread over several sessions and handled on a bounded thread
+     * pool. Results are in listing order and one failing file does not stop the
+     * others.
+     * 
+     * @param inputDirectory
+     * @param handler
+     *            must be thread-safe.
+     * @param config
+     * @return
+     */
+    public List<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler,
+            FtpParallelConfig config) {
+        ParallelTemplate template = new ParallelTemplate(config);
+        return template.run(inputDirectory, (fileName, r) -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = r.getTimings();
+            String inputFileName = inputDirectory + "/" + fileName;
+            byte[] bytes = retrieveFile(agent, inputFileName, timings);
+            String message = timings.time(Phase.HANDLER, () -> template.handleFile(handler, bytes));
+            timings.time(Phase.DELETE, () -> agent.deleteFile(inputFileName));
+            if (message == null) {
+                r.setMessage(String.format("Process file %s success.", inputFileName));
+            } else {
+                r.setMessage(message);
+            }
+            r.setSuccess(true);
+        });
+    }
+
+    /**
+     * Parallel version of
+     * {@link #retrieveThenMoveAll(String, String, FileHandler)}. Files are spread
+     * over several sessions and handled on a bounded thread pool. Results are in
+     * listing order and one failing file does not stop the others.
+     * 
+     * @param inputDirectory
+     * @param archiveDirectory
+     * @param handler
+     *            must be thread-safe.
+     * @param config
+     * @return
+     */
+    public List<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler, FtpParallelConfig config) {
+        ParallelTemplate template = new ParallelTemplate(config);
+        return template.run(inputDirectory, (fileName, r) -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = r.getTimings();
+            String inputFileName = inputDirectory + "/" + fileName;
+            String archiveFileName = archiveDirectory + "/" + fileName;
+            byte[] bytes = retrieveFile(agent, inputFileName, timings);
+            String message = timings.time(Phase.HANDLER, () -> template.handleFile(handler, bytes));
+            moveFile(agent, inputFileName, archiveFileName, bytes, timings);
+            if (message == null) {
+                r.setMessage(String.format("Process file %s success.", inputFileName));
+            } else {
+                r.setMessage(message);
+            }
+            r.setSuccess(true);
+        });
+    }
+
+    /**
+     * Pipelined version of {@link #retrieveThenDeleteAll(String, FileHandler)}
+     * on one session: the next file is downloading while the previous files are
+     * handled on a thread pool, and handled files are deleted in between
+     * downloads. Results are in listing order and one failing file does not stop
+     * the others.
+     * 
+     * @param inputDirectory
+     * @param handler
+     *            must be thread-safe.
+     * @param config
+     * @return
+     */
+    public List<FtpOperationResult> retrieveThenDeleteAll(String inputDirectory, FileHandler handler,
+            FtpPipelineConfig config) {
+        return new PipelineTemplate(config).run(inputDirectory, handler, (agent, fileName, bytes, timings) -> {
+            String inputFileName = inputDirectory + "/" + fileName;
+            timings.time(Phase.DELETE, () -> agent.deleteFile(inputFileName));
+        });
+    }
+
+    /**
+     * Pipelined version of
+     * {@link #retrieveThenMoveAll(String, String, FileHandler)} on one session:
+     * the next file is downloading while the previous files are handled on a
+     * thread pool, and handled files are archived in between downloads. Results
+     * are in listing order and one failing file does not stop the others.
+     * 
+     * @param inputDirectory
+     * @param archiveDirectory
+     * @param handler
+     *            must be thread-safe.
+     * @param config
+     * @return
+     */
+    public List<FtpOperationResult> retrieveThenMoveAll(String inputDirectory, String archiveDirectory,
+            FileHandler handler, FtpPipelineConfig config) {
+        return new PipelineTemplate(config).run(inputDirectory, handler, (agent, fileName, bytes, timings) -> {
+            moveFile(agent, inputDirectory + "/" + fileName, archiveDirectory + "/" + fileName, bytes, timings);
+        });
     }
 
     /**
@@ -291,10 +1193,162 @@ public class FtpTemplate {
      */
     public FtpOperationResult storeFile(String fileName, byte[] bytes) {
         return new DefaultTemplate().run(result -> {
-            FtpAgent agent = server.getFtpAgent();
-            agent.storeFile(fileName, bytes);
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            timings.time(Phase.TRANSFER, () -> agent.storeFile(fileName, bytes));
+            timings.addBytes(bytes.length);
+            result.setMessage(String.format("Upload file %s success.", fileName));
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Upload to ftp, resuming an interrupted upload on a new session. A retry
+     * appends (APPE) the rest of the content to what the server already has, and
+     * the size is checked against the server afterwards, in binary mode. The first
+     * attempt always replaces an existing file.
+     * 
+     * @param fileName
+     * @param bytes
+     * @param config
+     * @return
+     */
+    public FtpOperationResult storeFile(String fileName, byte[] bytes, FtpResumeConfig config) {
+        AtomicBoolean isRetry = new AtomicBoolean();
+        return new RetryTemplate(config).run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            inBinaryMode(agent, () -> {
+                int offset = 0;
+                if (isRetry.getAndSet(true)) {
+                    long size = agent.getFileSize(fileName);
+                    offset = size > 0 && size <= bytes.length ? (int) size : 0;
+                }
+                if (offset == 0 || offset < bytes.length) {
+                    int from = offset;
+                    timings.time(Phase.TRANSFER, () -> agent.storeFile(fileName, bytes, from));
+                    timings.addBytes(bytes.length - offset);
+                }
+                long size = agent.getFileSize(fileName);
+                if (size >= 0 && size != bytes.length) {
+                    throw new FtpStoreFileException(
+                            String.format("Uploaded %d of %d bytes of %s.", size, bytes.length, fileName));
+                }
+                return null;
+            });
+            result.setMessage(String.format("Upload file %s success.", fileName));
+            result.setSuccess(true);
+        });
+    }
+
+    /**
+     * Upload to ftp while the content is being generated. Records are written by
+     * the generator straight into the data connection, so memory use does not
+     * depend on the file size.
+     *
+     * If the generator fails, the server cannot tell the end of the data
+     * connection from the end of the file, so the truncated file is deleted.
+     *
+     * @param fileName
+     * @param records
+     * @param generator
+     * @return
+     */
+    public <T> FtpOperationResult storeFileStream(String fileName, Iterable<T> records, FileGenerator<T> generator) {
+        return new DefaultTemplate().run(result -> {
+            FtpAgent agent = getFtpAgent();
+            FtpOperationTimings timings = result.getTimings();
+            timings.time(Phase.TRANSFER, () -> {
+                CountingOutputStream outputStream = new CountingOutputStream(agent.storeFileStream(fileName));
+                try {
+                    generator.writeFileContent(records, outputStream);
+                } catch (Throwable e) {
+                    try {
+                        outputStream.close();
+                        agent.deleteFile(fileName);
+                    } catch (Throwable suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+                outputStream.close();
+                timings.addBytes(outputStream.count);
+            });
             result.setMessage(String.format("Upload file %s success.", fileName));
             result.setSuccess(true);
         });
     }
+
+    /**
+     * bytes read through a stream.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b) throws IOException {
+            return read(b, 0, b.length);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * bytes written through a stream. Arrays are passed on as they are, not
+     * byte by byte as by {@link FilterOutputStream}.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b) throws IOException {
+            out.write(b);
+            count += b.length;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
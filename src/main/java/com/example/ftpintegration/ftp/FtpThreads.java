@@ -0,0 +1,119 @@
+package com.example.ftpintegration.ftp;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thread factories for the ftp executors.
+ * 
+ * Virtual threads are created by reflection, so that the project still builds
+ * and runs on Java 8. On a JDK without virtual threads, platform threads are
+ * used instead.
+ * 
+ * @author Yu-Hua Chang
+ */
+public class FtpThreads {
+
+    private static final Logger log = LoggerFactory.getLogger(FtpThreads.class);
+
+    /** Thread.ofVirtual(), or null if not supported. */
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            // preview api on some versions, fails here if not enabled.
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private FtpThreads() {
+    }
+
+    /**
+     * @return true if the running JDK has virtual threads (Java 21 or later).
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Daemon platform threads named prefix + number.
+     * 
+     * @param prefix
+     * @return
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Virtual threads named prefix + number if requested and supported,
+     * otherwise platform threads.
+     * 
+     * @param prefix
+     * @param isVirtual
+     * @return
+     */
+    public static ThreadFactory threadFactory(String prefix, boolean isVirtual) {
+        if (!isVirtual) {
+            return threadFactory(prefix);
+        }
+        if (!isVirtualThreadSupported()) {
+            log.warn("Virtual threads are not supported by Java {}. Use platform threads for {}",
+                    System.getProperty("java.version"), prefix);
+            return threadFactory(prefix);
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, prefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Fixed size executor with a bounded queue that rejects tasks with a
+     * {@link java.util.concurrent.RejectedExecutionException} when the queue is
+     * full.
+     * 
+     * @param prefix
+     *            of the thread names.
+     * @param threads
+     * @param queueSize
+     * @param isVirtual
+     * @return
+     */
+    public static ExecutorService newBoundedExecutor(String prefix, int threads, int queueSize, boolean isVirtual) {
+        int n = Math.max(1, threads);
+        return new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                threadFactory(prefix, isVirtual), new ThreadPoolExecutor.AbortPolicy());
+    }
+}
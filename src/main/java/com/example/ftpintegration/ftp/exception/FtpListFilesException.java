@@ -6,7 +6,7 @@ package com.example.ftpintegration.ftp.exception;
  * @author Yu-Hua Chang
  *
  */
-public class FtpListFilesException extends Exception {
+public class FtpListFilesException extends FtpException {
 
     private static final long serialVersionUID = 1L;
 
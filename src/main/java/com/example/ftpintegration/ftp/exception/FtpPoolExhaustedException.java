@@ -0,0 +1,24 @@
+package com.example.ftpintegration.ftp.exception;
+
+/**
+ * No pooled ftp session became available within the borrow timeout.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpPoolExhaustedException extends FtpConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FtpPoolExhaustedException(String message) {
+        super(message);
+    }
+
+    public FtpPoolExhaustedException(Throwable cause) {
+        super(cause);
+    }
+
+    public FtpPoolExhaustedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ftpintegration.ftp.exception;
+
+/**
+ * Ftp related exception.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpRenameFileException extends FtpException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FtpRenameFileException(String message) {
+        super(message);
+    }
+
+    public FtpRenameFileException(Throwable cause) {
+        super(cause);
+    }
+
+    public FtpRenameFileException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -6,7 +6,7 @@ package com.example.ftpintegration.ftp.exception;
  * @author Yu-Hua Chang
  *
  */
-public class FtpStoreFileException extends Exception {
+public class FtpStoreFileException extends FtpException {
 
     private static final long serialVersionUID = 1L;
 
@@ -1,7 +1,12 @@
 package com.example.ftpintegration.ftp.handler;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.tika.parser.txt.CharsetDetector;
 import org.apache.tika.parser.txt.CharsetMatch;
@@ -11,7 +16,13 @@ import org.slf4j.LoggerFactory;
 /**
  * Utility class to "guess" the encoding of a plain text file with UTF-8 as the
  * default charset.
- * 
+ *
+ * Only a sample of the content is examined: a prefix of
+ * {@link #DEFAULT_SAMPLE_SIZE} bytes unless specified, optionally followed by a
+ * few windows from the rest of the content. A byte order mark decides the
+ * encoding without detection. Results can be cached per source, e.g. per
+ * partner sending files always in the same encoding.
+ *
  * @author yu
  *
  */
@@ -19,18 +30,198 @@ public class CharsetDetectionUtils {
 
     private static final Logger log = LoggerFactory.getLogger(CharsetDetectionUtils.class);
 
+    public static final int DEFAULT_SAMPLE_SIZE = 64 * 1024;
+
+    private static final ConcurrentMap<String, String> cache = new ConcurrentHashMap<>();
+
     public static String detect(byte[] content) {
         return detect(StandardCharsets.UTF_8, content);
     }
 
     public static String detect(Charset defaultCharset, byte[] content) {
+        return detect(defaultCharset, content, DEFAULT_SAMPLE_SIZE, 0);
+    }
+
+    /**
+     * Detect the encoding from a sample of the content.
+     *
+     * @param defaultCharset
+     * @param content
+     * @param sampleSize
+     *            bytes from the beginning; 0 or less to examine everything.
+     * @param windows
+     *            number of additional windows of a quarter of the sample size,
+     *            evenly spread over the rest of the content.
+     * @return
+     */
+    public static String detect(Charset defaultCharset, byte[] content, int sampleSize, int windows) {
         if (log.isDebugEnabled()) {
-            log.debug("Auto detect encoding for {}", content);
+            log.debug("Auto detect encoding for {} bytes", content.length);
+        }
+        String bom = detectBom(content, content.length);
+        if (bom != null) {
+            return bom;
+        }
+        CharsetDetector detector = new CharsetDetector();
+        detector.setText(sample(content, sampleSize, windows));
+        return getName(defaultCharset, detector.detect());
+    }
+
+    /**
+     * Same as {@link #detect(Charset, byte[], int, int)} but the result is cached
+     * by the key and the content is only examined the first time.
+     *
+     * @param key
+     *            the source of the content, e.g. a partner name.
+     * @param defaultCharset
+     * @param content
+     * @param sampleSize
+     * @param windows
+     * @return
+     */
+    public static String detect(String key, Charset defaultCharset, byte[] content, int sampleSize, int windows) {
+        String charsetName = cache.get(key);
+        if (charsetName == null) {
+            charsetName = detect(defaultCharset, content, sampleSize, windows);
+            cache.putIfAbsent(key, charsetName);
+        }
+        return charsetName;
+    }
+
+    /**
+     * Detect the encoding from the beginning of the stream. The stream must
+     * support mark/reset; it is reset to where it was, so the content can be read
+     * afterwards.
+     *
+     * @param defaultCharset
+     * @param inputStream
+     * @return
+     * @throws IOException
+     */
+    public static String detect(Charset defaultCharset, InputStream inputStream) throws IOException {
+        return detect(defaultCharset, inputStream, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * Detect the encoding from at most sample size bytes at the beginning of the
+     * stream. The stream must support mark/reset; it is reset to where it was.
+     *
+     * @param defaultCharset
+     * @param inputStream
+     * @param sampleSize
+     * @return
+     * @throws IOException
+     */
+    public static String detect(Charset defaultCharset, InputStream inputStream, int sampleSize)
+            throws IOException {
+        if (log.isDebugEnabled()) {
+            log.debug("Auto detect encoding for stream");
+        }
+        int size = sampleSize > 0 ? sampleSize : DEFAULT_SAMPLE_SIZE;
+        byte[] sample = new byte[size];
+        int length = 0;
+        inputStream.mark(size);
+        try {
+            int n;
+            while (length < size && (n = inputStream.read(sample, length, size - length)) != -1) {
+                length += n;
+            }
+        } finally {
+            inputStream.reset();
+        }
+
+        String bom = detectBom(sample, length);
+        if (bom != null) {
+            return bom;
         }
         CharsetDetector detector = new CharsetDetector();
-        detector.setText(content);
+        detector.setText(length == size ? sample : Arrays.copyOf(sample, length));
+        return getName(defaultCharset, detector.detect());
+    }
+
+    /**
+     * Same as {@link #detect(Charset, InputStream, int)} but the result is cached
+     * by the key and the stream is only examined the first time.
+     *
+     * @param key
+     *            the source of the content, e.g. a partner name.
+     * @param defaultCharset
+     * @param inputStream
+     * @param sampleSize
+     * @return
+     * @throws IOException
+     */
+    public static String detect(String key, Charset defaultCharset, InputStream inputStream, int sampleSize)
+            throws IOException {
+        String charsetName = cache.get(key);
+        if (charsetName == null) {
+            charsetName = detect(defaultCharset, inputStream, sampleSize);
+            cache.putIfAbsent(key, charsetName);
+        }
+        return charsetName;
+    }
+
+    /**
+     * Forget the cached encoding of a source, e.g. after a partner changed it.
+     *
+     * @param key
+     */
+    public static void evict(String key) {
+        cache.remove(key);
+    }
+
+    private static String detectBom(byte[] content, int length) {
+        if (length >= 3 && (content[0] & 0xFF) == 0xEF && (content[1] & 0xFF) == 0xBB
+                && (content[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8.name();
+        }
+        if (length >= 4 && content[0] == 0 && content[1] == 0 && (content[2] & 0xFF) == 0xFE
+                && (content[3] & 0xFF) == 0xFF) {
+            return "UTF-32BE";
+        }
+        if (length >= 4 && (content[0] & 0xFF) == 0xFF && (content[1] & 0xFF) == 0xFE && content[2] == 0
+                && content[3] == 0) {
+            return "UTF-32LE";
+        }
+        if (length >= 2 && (content[0] & 0xFF) == 0xFE && (content[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE.name();
+        }
+        if (length >= 2 && (content[0] & 0xFF) == 0xFF && (content[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE.name();
+        }
+        return null;
+    }
+
+    /**
+     * the prefix plus windows starting at a line break, so that multi-byte
+     * characters are not cut at the window start.
+     */
+    private static byte[] sample(byte[] content, int sampleSize, int windows) {
+        if (sampleSize <= 0 || content.length <= sampleSize) {
+            return content;
+        }
+        int windowSize = Math.max(1, sampleSize / 4);
+        byte[] sample = new byte[sampleSize + windows * windowSize];
+        System.arraycopy(content, 0, sample, 0, sampleSize);
+        int length = sampleSize;
+
+        long rest = content.length - sampleSize;
+        for (int i = 1; i <= windows; i++) {
+            int start = (int) (sampleSize + rest * i / (windows + 1));
+            int end = Math.min(content.length, start + windowSize);
+            while (start < end && content[start] != '\n') {
+                start++;
+            }
+            start++;
+            if (start < end) {
+                System.arraycopy(content, start, sample, length, end - start);
+                length += end - start;
+            }
+        }
+        return length == sample.length ? sample : Arrays.copyOf(sample, length);
+    }
 
-        CharsetMatch matchedCharset = detector.detect();
+    private static String getName(Charset defaultCharset, CharsetMatch matchedCharset) {
         if (matchedCharset == null) {
             if (log.isDebugEnabled()) {
                 log.debug("Cannot find matched charset. Set charset to default charset {}", defaultCharset);
@@ -1,6 +1,8 @@
 package com.example.ftpintegration.ftp.handler;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -13,4 +15,21 @@ import java.util.List;
 public interface FileGenerator<T> {
 
     byte[] createFileContent(List<T> records) throws IOException;
+
+    /**
+     * Write the file content to a stream, e.g. straight into the ftp data
+     * connection, so that generating and uploading overlap. The stream is
+     * flushed but not closed. Implementations should override the default,
+     * which creates the whole content in memory first.
+     * 
+     * @param records
+     * @param outputStream
+     * @throws IOException
+     */
+    default void writeFileContent(Iterable<T> records, OutputStream outputStream) throws IOException {
+        List<T> list = new ArrayList<>();
+        records.forEach(list::add);
+        outputStream.write(createFileContent(list));
+        outputStream.flush();
+    }
 }
@@ -0,0 +1,19 @@
+package com.example.ftpintegration.ftp.handler;
+
+/**
+ * Take care of a record that could not be mapped, e.g. collect it for a report
+ * or a retry, so that one bad record does not fail the whole file. The record
+ * is left out of the records passed to the {@link RecordHandler}.
+ *
+ * Errors are passed in file order, on the thread handling the file. Throw an
+ * exception to fail the file after all.
+ *
+ * @author Yu-Hua Chang
+ *
+ * @param <S>
+ *            source object type
+ */
+public interface RecordErrorHandler<S> {
+
+    void handleError(S source, RuntimeException error);
+}
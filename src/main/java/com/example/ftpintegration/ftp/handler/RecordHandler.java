@@ -8,6 +8,13 @@ import java.util.List;
  * any error, throw an exception to let the caller to know. Otherwise, we assume
  * everything is done successfully.
  * 
+ * By default a file handler passes all records of a file in one call. If a
+ * batch size is set on the file handler, records are passed in consecutive
+ * batches while the file is still being parsed, so this method is called
+ * several times per file.
+ * 
+ * The list is array-backed, so {@code list.get(i)} is as cheap as iterating.
+ * 
  * @author Yu-Hua Chang
  *
  * @param <T>
@@ -0,0 +1,40 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Write the columns of a record of an output file one after another, without
+ * boxing primitive values. Passed to {@link TypedRecordMapper#targetToRow}.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public interface RowWriter {
+
+    /**
+     * @param value
+     *            null for an empty column.
+     */
+    void writeString(String value);
+
+    void writeInt(int value);
+
+    void writeLong(long value);
+
+    void writeDouble(double value);
+
+    /**
+     * @param value
+     *            null for an empty column.
+     */
+    void writeDecimal(BigDecimal value);
+
+    /**
+     * @param value
+     *            in ISO format in text files; null for an empty column.
+     */
+    void writeDate(LocalDate value);
+
+    void writeEmpty();
+}
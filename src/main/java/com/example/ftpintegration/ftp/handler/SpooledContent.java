@@ -0,0 +1,130 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Content of a downloaded file, either held on the heap or spooled to a local
+ * file. Spooled content is not copied into the heap: it is memory-mapped on
+ * access, so files larger than the heap, or than 2GB, can be handled.
+ *
+ * The buffers are read-only and only valid until the handler returns.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class SpooledContent implements Closeable {
+
+    private final byte[] bytes;
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * @param bytes
+     *            content held on the heap.
+     */
+    public SpooledContent(byte[] bytes) {
+        bytes.getClass();
+        this.bytes = bytes;
+        this.path = null;
+        this.channel = null;
+        this.size = bytes.length;
+    }
+
+    /**
+     * @param path
+     *            spool file with the content.
+     * @throws IOException
+     */
+    public SpooledContent(Path path) throws IOException {
+        this.bytes = null;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+    }
+
+    /**
+     * @return bytes of the content.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return true if the content is in a spool file rather than on the heap.
+     */
+    public boolean isSpooled() {
+        return path != null;
+    }
+
+    /**
+     * @return the spool file, e.g. to pass it to a tool reading files; null if
+     *         the content is on the heap.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * The whole content as one buffer. Use {@link #map(long, long)} in windows
+     * for content above 2GB.
+     *
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer getBuffer() throws IOException {
+        return map(0, size);
+    }
+
+    /**
+     * A window of the content, mapped from the spool file or sliced from the
+     * heap without copying.
+     *
+     * @param position
+     * @param length
+     *            at most {@link Integer#MAX_VALUE}.
+     * @return
+     * @throws IOException
+     */
+    public ByteBuffer map(long position, long length) throws IOException {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IndexOutOfBoundsException(
+                    String.format("Window %d+%d out of content of %d bytes.", position, length, size));
+        }
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    String.format("Cannot map %d bytes at once, map the content in windows instead.", length));
+        }
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes, (int) position, (int) length).slice().asReadOnlyBuffer();
+        }
+        return channel.map(MapMode.READ_ONLY, position, length);
+    }
+
+    /**
+     * @return a new stream over the whole content.
+     * @throws IOException
+     */
+    public InputStream openStream() throws IOException {
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ftpintegration.ftp.handler;
+
+/**
+ * Handle input file content that may be spooled to a local file instead of
+ * being held in memory, so files of any size can be handled with a small heap.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public interface SpooledFileHandler {
+
+    /**
+     * Handle input binary file content. Same contract as
+     * {@link FileHandler#handleFile(byte[])}: die with an exception on any error,
+     * otherwise the handling is success. The content, and the spool file, are
+     * released when this method returns.
+     *
+     * @param content
+     *            file content
+     * @return any information related to the handling process
+     * @throws Throwable
+     */
+    String handleFile(SpooledContent content) throws Throwable;
+}
@@ -0,0 +1,26 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.io.InputStream;
+
+/**
+ * Handle input file content as a stream while it is being downloaded, so the
+ * whole file never has to be held in memory.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public interface StreamingFileHandler {
+
+    /**
+     * Handle input binary file content as a stream. Same contract as
+     * {@link FileHandler#handleFile(byte[])}: die with an exception on any error,
+     * otherwise the handling is success. The caller owns the stream and closes it
+     * afterwards; the handler may close it earlier.
+     * 
+     * @param inputStream
+     *            file content
+     * @return any information related to the handling process
+     * @throws Throwable
+     */
+    String handleStream(InputStream inputStream) throws Throwable;
+}
@@ -0,0 +1,18 @@
+package com.example.ftpintegration.ftp.handler;
+
+/**
+ * Map records of any file format to target objects and back with typed
+ * columns, instead of a {@link RecordMapper} of the format's record type and
+ * Object arrays.
+ *
+ * @author Yu-Hua Chang
+ *
+ * @param <T>
+ *            target object type
+ */
+public interface TypedRecordMapper<T> {
+
+    T rowToTarget(TypedRow row);
+
+    void targetToRow(T target, RowWriter writer);
+}
@@ -0,0 +1,99 @@
+package com.example.ftpintegration.ftp.handler;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A record of an input file with typed access to its columns, so that mappers
+ * get numbers and dates without parsing Strings themselves. Implementations
+ * read values in the cheapest way the format allows, e.g. numbers straight
+ * from the bytes of a csv file or from the numeric cells of an Excel file.
+ *
+ * Values that cannot be converted throw a {@link NumberFormatException} or a
+ * {@link java.time.DateTimeException}. Columns can be accessed by header name
+ * if the handler reads a header row.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public interface TypedRow {
+
+    /**
+     * @return number of columns.
+     */
+    int size();
+
+    /**
+     * @param name
+     *            header of the column.
+     * @return
+     * @throws IllegalArgumentException
+     *             if there is no such column, or no header row.
+     */
+    int getColumnIndex(String name);
+
+    /**
+     * @param i
+     * @return true if the column has no value.
+     */
+    boolean isEmpty(int i);
+
+    String getString(int i);
+
+    int getInt(int i);
+
+    long getLong(int i);
+
+    double getDouble(int i);
+
+    BigDecimal getDecimal(int i);
+
+    /**
+     * @param i
+     * @return a date cell, or text in ISO format, e.g. 2018-10-01. A number
+     *         cell not formatted as a date fails with a
+     *         {@link java.time.DateTimeException}.
+     */
+    LocalDate getDate(int i);
+
+    /**
+     * @param i
+     * @param formatter
+     *            of text values.
+     * @return
+     */
+    LocalDate getDate(int i, DateTimeFormatter formatter);
+
+    default boolean isEmpty(String name) {
+        return isEmpty(getColumnIndex(name));
+    }
+
+    default String getString(String name) {
+        return getString(getColumnIndex(name));
+    }
+
+    default int getInt(String name) {
+        return getInt(getColumnIndex(name));
+    }
+
+    default long getLong(String name) {
+        return getLong(getColumnIndex(name));
+    }
+
+    default double getDouble(String name) {
+        return getDouble(getColumnIndex(name));
+    }
+
+    default BigDecimal getDecimal(String name) {
+        return getDecimal(getColumnIndex(name));
+    }
+
+    default LocalDate getDate(String name) {
+        return getDate(getColumnIndex(name));
+    }
+
+    default LocalDate getDate(String name, DateTimeFormatter formatter) {
+        return getDate(getColumnIndex(name), formatter);
+    }
+}
@@ -1,22 +1,31 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.math.BigDecimal;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.csv.CSVRecord;
 
 import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.RowWriter;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
 
 public class CsvFileGenerator<T> extends GenericFileGenerator<CSVRecord, T> {
 
     private final char delimiter;
     private final Charset charset;
+    private final TypedRecordMapper<T> typedMapper;
 
     public CsvFileGenerator(char delimiter, RecordMapper<CSVRecord, T> mapper) {
         this(delimiter, mapper, StandardCharsets.UTF_8);
@@ -26,23 +35,158 @@ public class CsvFileGenerator<T> extends GenericFileGenerator<CSVRecord, T> {
         super(mapper);
         this.delimiter = delimiter;
         this.charset = charset;
+        this.typedMapper = null;
+    }
+
+    public CsvFileGenerator(char delimiter, TypedRecordMapper<T> mapper) {
+        this(delimiter, mapper, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the columns of each record as they are written by the typed mapper,
+     * without boxing numbers into an Object array first. Decimals are written
+     * without an exponent and dates in ISO format.
+     */
+    public CsvFileGenerator(char delimiter, TypedRecordMapper<T> mapper, Charset charset) {
+        super(TypedRows.<CSVRecord, T>mapper(TypedRows::of, mapper));
+        this.delimiter = delimiter;
+        this.charset = charset;
+        this.typedMapper = mapper;
     }
 
     @Override
-    public byte[] createFileContent(List<T> records) throws IOException {
+    public void writeFileContent(Iterable<T> records, OutputStream outputStream) throws IOException {
 
-        CSVFormat format = CSVFormat.newFormat(delimiter).withIgnoreEmptyLines().withTrim(true);
+        // newFormat has no record separator; without one all records end up on one line.
+        CSVFormat format = CSVFormat.newFormat(delimiter).withIgnoreEmptyLines().withTrim(true)
+                .withRecordSeparator('\n');
 
-        try (Writer writer = new StringWriter()) {
-            try (CSVPrinter csvPrinter = new CSVPrinter(writer, format)) {
+        // not closed; the caller owns the stream.
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, charset));
+        if (typedMapper != null) {
+            CsvRowWriter rowWriter = new CsvRowWriter(writer);
+            try {
                 for (T target : records) {
-                    Object[] values = mapper.targetToSource(target);
-                    csvPrinter.printRecord(values);
+                    typedMapper.targetToRow(target, rowWriter);
+                    rowWriter.endRecord();
                 }
-                csvPrinter.flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
-            return writer.toString().getBytes(charset);
+            writer.flush();
+            return;
+        }
+        CSVPrinter csvPrinter = new CSVPrinter(writer, format);
+        for (T target : records) {
+            Object[] values = mapper.targetToSource(target);
+            csvPrinter.printRecord(values);
         }
+        csvPrinter.flush();
     }
 
+    /**
+     * writes columns straight to the writer.
+     */
+    private class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+        private final char[] digits = new char[20];
+        private boolean isFirst = true;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        private void startColumn() {
+            try {
+                if (!isFirst) {
+                    writer.write(delimiter);
+                }
+                isFirst = false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(String value) {
+            try {
+                writer.write(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void endRecord() throws IOException {
+            writer.write('\n');
+            isFirst = true;
+        }
+
+        @Override
+        public void writeString(String value) {
+            startColumn();
+            if (value != null) {
+                write(value.trim());
+            }
+        }
+
+        @Override
+        public void writeInt(int value) {
+            writeLong(value);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            startColumn();
+            // digits from the end, negated so that the minimum fits.
+            int pos = digits.length;
+            long rest = value < 0 ? value : -value;
+            do {
+                digits[--pos] = (char) ('0' - rest % 10);
+                rest /= 10;
+            } while (rest != 0);
+            if (value < 0) {
+                digits[--pos] = '-';
+            }
+            try {
+                writer.write(digits, pos, digits.length - pos);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void writeDouble(double value) {
+            startColumn();
+            write(Double.toString(value));
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            startColumn();
+            if (value != null) {
+                write(value.toPlainString());
+            }
+        }
+
+        @Override
+        public void writeDate(LocalDate value) {
+            startColumn();
+            if (value == null) {
+                return;
+            }
+            try {
+                DateTimeFormatter.ISO_LOCAL_DATE.formatTo(value, writer);
+            } catch (DateTimeException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new UncheckedIOException((IOException) e.getCause());
+                }
+                throw e;
+            }
+        }
+
+        @Override
+        public void writeEmpty() {
+            startColumn();
+        }
+    }
 }
@@ -1,10 +1,22 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
+import java.io.BufferedInputStream;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
@@ -14,13 +26,30 @@ import org.slf4j.LoggerFactory;
 import com.example.ftpintegration.ftp.handler.CharsetDetectionUtils;
 import com.example.ftpintegration.ftp.handler.RecordHandler;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.SpooledContent;
+import com.example.ftpintegration.ftp.handler.SpooledFileHandler;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
 
-public class CsvFileHandler<T> extends GenericFileHandler<CSVRecord, T> {
+public class CsvFileHandler<T> extends GenericFileHandler<CSVRecord, T> implements SpooledFileHandler {
 
     private static final Logger log = LoggerFactory.getLogger(CsvFileHandler.class);
 
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    /** bytes searched at once for the end of a record. */
+    private static final int SCAN_SIZE = 64 * 1024;
+
     private final char delimiter;
     private final Charset charset;
+    private final CSVFormat format;
+
+    private int charsetSampleSize = CharsetDetectionUtils.DEFAULT_SAMPLE_SIZE;
+    private int charsetSampleWindows;
+    private String charsetCacheKey;
+
+    private ForkJoinPool parallelPool;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private boolean isOrdered = true;
 
     public CsvFileHandler(char delimiter, RecordMapper<CSVRecord, T> mapper, RecordHandler<T> handler) {
         this(delimiter, mapper, handler, null);
@@ -31,36 +60,286 @@ public class CsvFileHandler<T> extends GenericFileHandler<CSVRecord, T> {
         super(mapper, handler);
         this.delimiter = delimiter;
         this.charset = charset;
+        this.format = CSVFormat.newFormat(delimiter).withIgnoreEmptyLines().withTrim(true);
+    }
+
+    public CsvFileHandler(char delimiter, TypedRecordMapper<T> mapper, RecordHandler<T> handler) {
+        this(delimiter, mapper, handler, null);
+    }
+
+    /**
+     * Map records with typed columns, see {@link TypedRows#of(CSVRecord)}.
+     */
+    public CsvFileHandler(char delimiter, TypedRecordMapper<T> mapper, RecordHandler<T> handler,
+            Charset charset) {
+        this(delimiter, TypedRows.<CSVRecord, T>mapper(TypedRows::of, mapper), handler, charset);
+    }
+
+    public int getCharsetSampleSize() {
+        return charsetSampleSize;
+    }
+
+    /**
+     * @param charsetSampleSize
+     *            bytes at the beginning of the file examined to detect the
+     *            encoding; 0 or less to examine the whole file (byte array input
+     *            only).
+     */
+    public void setCharsetSampleSize(int charsetSampleSize) {
+        this.charsetSampleSize = charsetSampleSize;
+    }
+
+    public int getCharsetSampleWindows() {
+        return charsetSampleWindows;
+    }
+
+    /**
+     * @param charsetSampleWindows
+     *            additional windows from the rest of the file examined to detect
+     *            the encoding (byte array input only).
+     */
+    public void setCharsetSampleWindows(int charsetSampleWindows) {
+        this.charsetSampleWindows = charsetSampleWindows;
+    }
+
+    public String getCharsetCacheKey() {
+        return charsetCacheKey;
+    }
+
+    /**
+     * @param charsetCacheKey
+     *            if set, the encoding is detected once and reused for all files
+     *            with the same key, e.g. the partner sending the files.
+     */
+    public void setCharsetCacheKey(String charsetCacheKey) {
+        this.charsetCacheKey = charsetCacheKey;
+    }
+
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    /**
+     * Parse files larger than the chunk size in chunks in parallel, e.g. on
+     * {@link ForkJoinPool#commonPool()}. Chunks are split at line breaks, which
+     * always end a record as the format has no quote character. The record
+     * mapper must then be thread-safe, and {@link CSVRecord#getRecordNumber()}
+     * counts from 1 in every chunk. Encodings that do not encode a line break as
+     * a single byte, e.g. UTF-16, are still parsed on the calling thread.
+     * 
+     * @param parallelPool
+     *            null (default) to parse on the calling thread.
+     */
+    public void setParallelPool(ForkJoinPool parallelPool) {
+        this.parallelPool = parallelPool;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @param chunkSize
+     *            bytes parsed by one task in parallel mode; a chunk is extended to
+     *            the end of its last record.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public boolean isOrdered() {
+        return isOrdered;
+    }
+
+    /**
+     * @param isOrdered
+     *            in parallel mode, pass batches in file order (default), or in
+     *            the order the chunks are parsed, which keeps the pool busy when a
+     *            chunk is slow.
+     */
+    public void setOrdered(boolean isOrdered) {
+        this.isOrdered = isOrdered;
+    }
+
+    @Override
+    public String handleFile(byte[] bytes) throws Throwable {
+        if (parallelPool != null && bytes.length > chunkSize) {
+            return handleFile(new SpooledContent(bytes));
+        }
+        return super.handleFile(bytes);
+    }
+
+    /**
+     * Parse spooled content in chunks in parallel if a pool is set, otherwise
+     * as a stream.
+     */
+    @Override
+    public String handleFile(SpooledContent content) throws Throwable {
+        if (parallelPool != null && content.getSize() > chunkSize) {
+            int sampleSize = charsetSampleSize > 0 ? charsetSampleSize : CharsetDetectionUtils.DEFAULT_SAMPLE_SIZE;
+            ByteBuffer buffer = content.map(0, Math.min(sampleSize, content.getSize()));
+            byte[] sample = new byte[buffer.remaining()];
+            buffer.get(sample);
+            Charset contentCharset = Charset.forName(detect(sample));
+            if (Arrays.equals(new byte[] { '\n' }, "\n".getBytes(contentCharset))) {
+                return handleChunks(parallelPool, parallelPool.getParallelism(),
+                        new Chunks(content, contentCharset), isOrdered);
+            }
+            log.info("Parse {} on the calling thread.", contentCharset);
+        }
+        try (InputStream inputStream = content.openStream()) {
+            return handleStream(inputStream);
+        }
+    }
+
+    /**
+     * records are immutable.
+     */
+    @Override
+    protected boolean isSourceObjectRetainable() {
+        return true;
     }
 
     @Override
     public List<CSVRecord> getSourceObjectList(byte[] bytes) throws Throwable {
-        String charsetName = CharsetDetectionUtils.detect(charset, bytes);
+        String charsetName = detect(bytes);
         String content = new String(bytes, charsetName);
 
-        List<CSVRecord> list = new LinkedList<>();
         try (Reader reader = new StringReader(content)) {
-            Iterable<CSVRecord> records = CSVFormat.newFormat(delimiter).withIgnoreEmptyLines().withTrim(true)
-                    .parse(reader);
+            List<CSVRecord> list = new ArrayList<>();
+            parse(reader, list::add);
+            return list;
+        }
+    }
 
-            for (CSVRecord record : records) {
+    /**
+     * Parse records while the content is read. Only the beginning of the stream
+     * is buffered for charset detection.
+     */
+    @Override
+    public List<CSVRecord> getSourceObjectList(InputStream inputStream) throws Throwable {
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        String charsetName = detect(in);
 
-                // ignore empty lines
-                if (record.size() == 1 && record.get(0).trim().length() == 0) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("line {}: (empty line)", record.getRecordNumber());
-                    }
-                    continue;
-                }
+        try (Reader reader = new InputStreamReader(in, charsetName)) {
+            return parse(reader);
+        }
+    }
+
+    /**
+     * Pass each record to the consumer as soon as it is parsed, without
+     * collecting the records.
+     */
+    @Override
+    protected void readSourceObjects(InputStream inputStream, Consumer<CSVRecord> consumer) throws Throwable {
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        String charsetName = detect(in);
+
+        try (Reader reader = new InputStreamReader(in, charsetName)) {
+            parse(reader, consumer);
+        }
+    }
+
+    private String detect(byte[] bytes) {
+        if (charsetCacheKey == null) {
+            return CharsetDetectionUtils.detect(charset, bytes, charsetSampleSize, charsetSampleWindows);
+        }
+        return CharsetDetectionUtils.detect(charsetCacheKey, charset, bytes, charsetSampleSize,
+                charsetSampleWindows);
+    }
+
+    private String detect(InputStream in) throws IOException {
+        if (charsetCacheKey == null) {
+            return CharsetDetectionUtils.detect(charset, in, charsetSampleSize);
+        }
+        return CharsetDetectionUtils.detect(charsetCacheKey, charset, in, charsetSampleSize);
+    }
+
+    private List<CSVRecord> parse(Reader reader) throws IOException {
+        List<CSVRecord> list = new ArrayList<>();
+        parse(reader, list::add);
+        return list;
+    }
+
+    private void parse(Reader reader, Consumer<CSVRecord> consumer) throws IOException {
+        Iterable<CSVRecord> records = format.parse(reader);
+
+        for (CSVRecord record : records) {
+
+            // ignore empty lines
+            if (record.size() == 1 && record.get(0).trim().length() == 0) {
                 if (log.isDebugEnabled()) {
-                    log.debug("line {}: {}", record.getRecordNumber(), record);
+                    log.debug("line {}: (empty line)", record.getRecordNumber());
                 }
+                continue;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("line {}: {}", record.getRecordNumber(), record);
+            }
+
+            consumer.accept(record);
+        }
+    }
+
+    /**
+     * chunks of whole records, found while iterating so that only the pending
+     * chunks are mapped.
+     */
+    private class Chunks implements Iterator<SourceChunk<CSVRecord>> {
+
+        private final SpooledContent content;
+        private final Charset charset;
+        private long position;
+
+        Chunks(SpooledContent content, Charset charset) {
+            this.content = content;
+            this.charset = charset;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < content.getSize();
+        }
 
-                list.add(record);
+        @Override
+        public SourceChunk<CSVRecord> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
+            long start = position;
+            long end;
+            try {
+                end = findEnd(start);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            position = end;
+            return consumer -> {
+                CharBuffer chars = charset.decode(content.map(start, end - start));
+                // record numbers restart here, as the records before are not counted.
+                try (Reader reader = new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(),
+                        chars.remaining())) {
+                    parse(reader, consumer);
+                }
+            };
         }
 
-        return list;
+        /**
+         * @return position after the first line break after the chunk size.
+         */
+        private long findEnd(long start) throws IOException {
+            long size = content.getSize();
+            long from = Math.min(size, start + chunkSize);
+            while (from < size) {
+                ByteBuffer buffer = content.map(from, Math.min(SCAN_SIZE, size - from));
+                while (buffer.hasRemaining()) {
+                    if (buffer.get() == '\n') {
+                        return from + buffer.position();
+                    }
+                }
+                from += buffer.position();
+            }
+            return size;
+        }
     }
-
 }
@@ -0,0 +1,333 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+import com.example.ftpintegration.ftp.handler.TypedRow;
+
+/**
+ * A record of a csv file as a view of the raw bytes, see
+ * {@link CsvRowFileHandler}. Nothing is decoded until a field is asked for:
+ * {@link #getField(int)} of an ASCII record is a view without copying, and
+ * {@link #get(int)} creates the String of a single field. Numbers, and dates
+ * in ISO format, are parsed from the bytes without creating Strings.
+ *
+ * Fields are trimmed. A row keeps the bytes of the file it was read from.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class CsvRow implements TypedRow {
+
+    /** powers of ten that are exact doubles. */
+    private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+    private final byte[] bytes;
+    private final int[] bounds;
+    private final boolean isAscii;
+    private final Charset charset;
+    private final long recordNumber;
+    private final Map<String, Integer> headers;
+
+    /**
+     * @param bytes
+     * @param bounds
+     *            start and end of each field.
+     * @param isAscii
+     *            no field has a byte outside of ASCII.
+     * @param charset
+     *            of the bytes.
+     * @param recordNumber
+     * @param headers
+     *            column index by name; null if the file has no header row.
+     */
+    CsvRow(byte[] bytes, int[] bounds, boolean isAscii, Charset charset, long recordNumber,
+            Map<String, Integer> headers) {
+        this.bytes = bytes;
+        this.bounds = bounds;
+        this.isAscii = isAscii;
+        this.charset = charset;
+        this.recordNumber = recordNumber;
+        this.headers = headers;
+    }
+
+    /**
+     * @return number of fields.
+     */
+    public int size() {
+        return bounds.length / 2;
+    }
+
+    @Override
+    public int getColumnIndex(String name) {
+        if (headers == null) {
+            throw TypedRows.noHeader(name);
+        }
+        Integer i = headers.get(name);
+        if (i == null) {
+            throw new IllegalArgumentException(String.format("No column '%s' in %s.", name, headers.keySet()));
+        }
+        return i;
+    }
+
+    /**
+     * @return 1 for the first record of the file; empty lines are not counted.
+     */
+    public long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * @param i
+     * @return the field as a new String.
+     * @throws ArrayIndexOutOfBoundsException
+     *             if the record has no such field.
+     */
+    public String get(int i) {
+        int start = start(i);
+        // ISO-8859-1 is the cheapest decoding and the same for ASCII.
+        return new String(bytes, start, end(i) - start, isAscii ? StandardCharsets.ISO_8859_1 : charset);
+    }
+
+    /**
+     * @param i
+     * @return the field without copying if the record is ASCII, otherwise as a
+     *         new String.
+     * @throws ArrayIndexOutOfBoundsException
+     *             if the record has no such field.
+     */
+    public CharSequence getField(int i) {
+        if (!isAscii) {
+            return get(i);
+        }
+        return new AsciiSequence(bytes, start(i), end(i));
+    }
+
+    /**
+     * @return true if the field has no characters.
+     */
+    @Override
+    public boolean isEmpty(int i) {
+        return start(i) == end(i);
+    }
+
+    @Override
+    public String getString(int i) {
+        return get(i);
+    }
+
+    @Override
+    public int getInt(int i) {
+        long value = parseLong(i, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        return (int) value;
+    }
+
+    @Override
+    public long getLong(int i) {
+        return parseLong(i, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Plain decimals of up to 15 digits are parsed from the bytes; other
+     * numbers, e.g. with an exponent, by {@link Double#parseDouble(String)}.
+     */
+    @Override
+    public double getDouble(int i) {
+        long unscaled = parseUnscaled(i, 15);
+        if (unscaled == Long.MIN_VALUE) {
+            return Double.parseDouble(get(i));
+        }
+        // both are exact, so the quotient is correctly rounded.
+        double value = (double) Math.abs(unscaled) / POWERS_OF_TEN[scale(i)];
+        return bytes[start(i)] == '-' ? -value : value;
+    }
+
+    /**
+     * Plain decimals of up to 18 digits are parsed from the bytes.
+     */
+    @Override
+    public BigDecimal getDecimal(int i) {
+        long unscaled = parseUnscaled(i, 18);
+        if (unscaled == Long.MIN_VALUE) {
+            return new BigDecimal(get(i));
+        }
+        return BigDecimal.valueOf(unscaled, scale(i));
+    }
+
+    @Override
+    public LocalDate getDate(int i) {
+        int start = start(i);
+        if (end(i) - start == 10 && bytes[start + 4] == '-' && bytes[start + 7] == '-') {
+            int year = parseDigits(start, start + 4);
+            int month = parseDigits(start + 5, start + 7);
+            int day = parseDigits(start + 8, start + 10);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        return LocalDate.parse(getField(i));
+    }
+
+    @Override
+    public LocalDate getDate(int i, DateTimeFormatter formatter) {
+        return LocalDate.parse(getField(i), formatter);
+    }
+
+    int start(int i) {
+        return bounds[2 * i];
+    }
+
+    int end(int i) {
+        return bounds[2 * i + 1];
+    }
+
+    /**
+     * @return the field as an integer within the bounds.
+     */
+    private long parseLong(int i, long min, long max) {
+        int start = start(i);
+        int end = end(i);
+        int pos = start;
+        boolean isNegative = pos < end && bytes[pos] == '-';
+        if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+            pos++;
+        }
+        if (pos == end) {
+            throw numberFormatException(i);
+        }
+        // accumulate negatively, as the minimum has no positive counterpart.
+        long limit = isNegative ? min : -max;
+        long value = 0;
+        for (; pos < end; pos++) {
+            int digit = bytes[pos] - '0';
+            if (digit < 0 || digit > 9 || value < (limit + digit) / 10) {
+                throw numberFormatException(i);
+            }
+            value = value * 10 - digit;
+        }
+        return isNegative ? value : -value;
+    }
+
+    /**
+     * @return the digits of a plain decimal without the point, or
+     *         {@link Long#MIN_VALUE} if the field is not one, or has more digits.
+     */
+    private long parseUnscaled(int i, int maxDigits) {
+        int start = start(i);
+        int end = end(i);
+        int pos = start;
+        boolean isNegative = pos < end && bytes[pos] == '-';
+        if (pos < end && (bytes[pos] == '-' || bytes[pos] == '+')) {
+            pos++;
+        }
+        long value = 0;
+        int digits = 0;
+        boolean hasPoint = false;
+        for (; pos < end; pos++) {
+            byte b = bytes[pos];
+            if (b == '.' && !hasPoint) {
+                hasPoint = true;
+                continue;
+            }
+            if (b < '0' || b > '9' || ++digits > maxDigits) {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (b - '0');
+        }
+        if (digits == 0) {
+            return Long.MIN_VALUE;
+        }
+        return isNegative ? -value : value;
+    }
+
+    /**
+     * @return digits after the point of a plain decimal.
+     */
+    private int scale(int i) {
+        int end = end(i);
+        for (int pos = start(i); pos < end; pos++) {
+            if (bytes[pos] == '.') {
+                return end - pos - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the non-negative number, or -1 if a byte is not a digit.
+     */
+    private int parseDigits(int start, int end) {
+        int value = 0;
+        for (int pos = start; pos < end; pos++) {
+            int digit = bytes[pos] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private NumberFormatException numberFormatException(int i) {
+        return new NumberFormatException(String.format("For input string: \"%s\"", get(i)));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("CsvRow [recordNumber=").append(recordNumber).append(", fields=[");
+        for (int i = 0; i < size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(getField(i));
+        }
+        return sb.append("]]").toString();
+    }
+
+    /**
+     * ASCII bytes as characters.
+     */
+    private static class AsciiSequence implements CharSequence {
+
+        private final byte[] bytes;
+        private final int start;
+        private final int end;
+
+        AsciiSequence(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= end - start) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return (char) bytes[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            if (from < 0 || to > end - start || from > to) {
+                throw new StringIndexOutOfBoundsException(String.format("%d-%d of %d", from, to, end - start));
+            }
+            return new AsciiSequence(bytes, start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.ftpintegration.ftp.handler.CharsetDetectionUtils;
+import com.example.ftpintegration.ftp.handler.RecordHandler;
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
+
+/**
+ * Handle csv files of the same format as {@link CsvFileHandler}, without
+ * decoding the content and without creating a String per field: records are
+ * {@link CsvRow} views of the raw bytes, and the record mapper creates the
+ * Strings, or numbers, it needs. A {@link TypedRecordMapper} gets the rows as
+ * they are.
+ *
+ * UTF-8 and single-byte encodings are read as they are. Other encodings, e.g.
+ * Big5 or UTF-16, are converted to UTF-8 first.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public class CsvRowFileHandler<T> extends GenericFileHandler<CsvRow, T> {
+
+    private static final Logger log = LoggerFactory.getLogger(CsvRowFileHandler.class);
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private final char delimiter;
+    private final Charset charset;
+
+    private int charsetSampleSize = CharsetDetectionUtils.DEFAULT_SAMPLE_SIZE;
+    private String charsetCacheKey;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private boolean hasHeader;
+
+    public CsvRowFileHandler(char delimiter, RecordMapper<CsvRow, T> mapper, RecordHandler<T> handler) {
+        this(delimiter, mapper, handler, null);
+    }
+
+    public CsvRowFileHandler(char delimiter, TypedRecordMapper<T> mapper, RecordHandler<T> handler) {
+        this(delimiter, mapper, handler, null);
+    }
+
+    public CsvRowFileHandler(char delimiter, TypedRecordMapper<T> mapper, RecordHandler<T> handler,
+            Charset charset) {
+        this(delimiter, TypedRows.<CsvRow, T>mapper(row -> row, mapper), handler, charset);
+    }
+
+    /**
+     * @param delimiter
+     *            an ASCII character.
+     * @param mapper
+     * @param handler
+     * @param charset
+     *            if the encoding cannot be detected; UTF-8 if null.
+     */
+    public CsvRowFileHandler(char delimiter, RecordMapper<CsvRow, T> mapper, RecordHandler<T> handler,
+            Charset charset) {
+        super(mapper, handler);
+        // fail here rather than on the first file.
+        new CsvTokenizer(delimiter, StandardCharsets.UTF_8, false);
+        this.delimiter = delimiter;
+        this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    public int getCharsetSampleSize() {
+        return charsetSampleSize;
+    }
+
+    /**
+     * @param charsetSampleSize
+     *            bytes at the beginning of the file examined to detect the
+     *            encoding; 0 or less to examine the whole file (byte array input
+     *            only).
+     */
+    public void setCharsetSampleSize(int charsetSampleSize) {
+        this.charsetSampleSize = charsetSampleSize;
+    }
+
+    public String getCharsetCacheKey() {
+        return charsetCacheKey;
+    }
+
+    /**
+     * @param charsetCacheKey
+     *            if set, the encoding is detected once and reused for all files
+     *            with the same key, e.g. the partner sending the files.
+     */
+    public void setCharsetCacheKey(String charsetCacheKey) {
+        this.charsetCacheKey = charsetCacheKey;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @param blockSize
+     *            bytes read from a stream at once. Records of a block share its
+     *            array, so a retained record keeps its whole block in memory. A
+     *            block grows to hold a longer line.
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    public boolean isHeader() {
+        return hasHeader;
+    }
+
+    /**
+     * @param hasHeader
+     *            the first record of a file names the columns, for
+     *            {@link CsvRow#getColumnIndex(String)}, and is not mapped.
+     */
+    public void setHeader(boolean hasHeader) {
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * rows are immutable, and each block of a stream is a new array.
+     */
+    @Override
+    protected boolean isSourceObjectRetainable() {
+        return true;
+    }
+
+    @Override
+    public List<CsvRow> getSourceObjectList(byte[] bytes) throws Throwable {
+        Charset contentCharset = Charset.forName(detect(bytes));
+        if (!isAsciiCompatible(contentCharset)) {
+            log.info("Convert {} to UTF-8.", contentCharset);
+            bytes = new String(bytes, contentCharset).getBytes(StandardCharsets.UTF_8);
+            contentCharset = StandardCharsets.UTF_8;
+        }
+        List<CsvRow> list = new ArrayList<>();
+        new CsvTokenizer(delimiter, contentCharset, hasHeader).tokenize(bytes,
+                bomLength(bytes, bytes.length, contentCharset), bytes.length, true, list::add);
+        return list;
+    }
+
+    @Override
+    public List<CsvRow> getSourceObjectList(InputStream inputStream) throws Throwable {
+        List<CsvRow> list = new ArrayList<>();
+        readSourceObjects(inputStream, list::add);
+        return list;
+    }
+
+    /**
+     * Pass the records of each block to the consumer as soon as the block is
+     * read. Only the beginning of the stream is buffered for charset detection.
+     */
+    @Override
+    protected void readSourceObjects(InputStream inputStream, Consumer<CsvRow> consumer) throws Throwable {
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        Charset contentCharset = Charset.forName(detect(in));
+        if (isAsciiCompatible(contentCharset)) {
+            tokenize(in, contentCharset, consumer);
+            return;
+        }
+        log.info("Convert {} to UTF-8.", contentCharset);
+        try (Reader reader = new InputStreamReader(in, contentCharset)) {
+            tokenize(new Utf8InputStream(reader, blockSize), StandardCharsets.UTF_8, consumer);
+        }
+    }
+
+    private void tokenize(InputStream in, Charset contentCharset, Consumer<CsvRow> consumer) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(delimiter, contentCharset, hasHeader);
+        byte[] block = new byte[Math.max(16, blockSize)];
+        int length = 0;
+        int start = -1;
+        int n;
+        while ((n = in.read(block, length, block.length - length)) != -1) {
+            length += n;
+            if (length < block.length) {
+                continue;
+            }
+            if (start < 0) {
+                start = bomLength(block, length, contentCharset);
+            }
+            int end = tokenizer.tokenize(block, start, length, false, consumer);
+            // a new array, as the rows keep the block.
+            byte[] next = new byte[length - end > block.length / 2 ? block.length * 2 : block.length];
+            System.arraycopy(block, end, next, 0, length - end);
+            block = next;
+            length -= end;
+            start = 0;
+        }
+        if (start < 0) {
+            start = bomLength(block, length, contentCharset);
+        }
+        tokenizer.tokenize(block, start, length, true, consumer);
+        if (log.isDebugEnabled()) {
+            log.debug("Read {} records.", tokenizer.getRecordNumber());
+        }
+    }
+
+    private String detect(byte[] bytes) {
+        if (charsetCacheKey == null) {
+            return CharsetDetectionUtils.detect(charset, bytes, charsetSampleSize, 0);
+        }
+        return CharsetDetectionUtils.detect(charsetCacheKey, charset, bytes, charsetSampleSize, 0);
+    }
+
+    private String detect(InputStream in) throws IOException {
+        if (charsetCacheKey == null) {
+            return CharsetDetectionUtils.detect(charset, in, charsetSampleSize);
+        }
+        return CharsetDetectionUtils.detect(charsetCacheKey, charset, in, charsetSampleSize);
+    }
+
+    /**
+     * @return true if the charset encodes ASCII characters as their single
+     *         bytes, and no other character with those bytes.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+            return false;
+        }
+        byte[] ascii = new byte[128];
+        for (int i = 0; i < ascii.length; i++) {
+            ascii[i] = (byte) i;
+        }
+        return new String(ascii, charset).equals(new String(ascii, StandardCharsets.US_ASCII));
+    }
+
+    private static int bomLength(byte[] bytes, int length, Charset charset) {
+        if (charset.equals(StandardCharsets.UTF_8) && length >= 3 && bytes[0] == (byte) 0xEF
+                && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * characters of a reader encoded as UTF-8.
+     */
+    private static class Utf8InputStream extends InputStream {
+
+        private final Reader reader;
+        private final CharBuffer chars;
+        private final ByteBuffer bytes;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private boolean isEnd;
+
+        Utf8InputStream(Reader reader, int size) {
+            this.reader = reader;
+            this.chars = CharBuffer.allocate(Math.max(16, size / 3));
+            this.bytes = ByteBuffer.allocate(chars.capacity() * 3);
+            bytes.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            while (!bytes.hasRemaining()) {
+                if (isEnd) {
+                    return -1;
+                }
+                fill();
+            }
+            int n = Math.min(len, bytes.remaining());
+            bytes.get(b, off, n);
+            return n;
+        }
+
+        private void fill() throws IOException {
+            bytes.clear();
+            int n = reader.read(chars);
+            chars.flip();
+            isEnd = n == -1;
+            // a high surrogate at the end stays for the next read.
+            encoder.encode(chars, bytes, isEnd);
+            if (isEnd) {
+                encoder.flush(bytes);
+            }
+            chars.compact();
+            bytes.flip();
+        }
+    }
+}
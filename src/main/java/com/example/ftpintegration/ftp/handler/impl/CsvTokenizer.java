@@ -0,0 +1,173 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Split csv bytes into {@link CsvRow}s without decoding them. The bytes are
+ * searched 8 at a time for the delimiter and line breaks (SWAR), so the charset
+ * must encode them, and only them, as their ASCII bytes, e.g. UTF-8.
+ *
+ * Same format as {@link CsvFileHandler}: no quote character, trimmed fields,
+ * empty lines skipped, and a line break is "\n", "\r\n" or "\r".
+ *
+ * One tokenizer per file; not thread-safe.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+class CsvTokenizer {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long LF_PATTERN = ONES * '\n';
+    private static final long CR_PATTERN = ONES * '\r';
+
+    private final byte delimiter;
+    private final long delimiterPattern;
+    private final Charset charset;
+    private final boolean hasHeader;
+
+    private int[] bounds = new int[32];
+    private long recordNumber;
+    private Map<String, Integer> headers;
+
+    /**
+     * @param delimiter
+     *            an ASCII character.
+     * @param charset
+     *            of the non-ASCII bytes.
+     * @param hasHeader
+     *            the first record names the columns and is not passed on.
+     */
+    CsvTokenizer(char delimiter, Charset charset, boolean hasHeader) {
+        if (delimiter >= 0x80 || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Delimiter must be an ASCII character other than a line break.");
+        }
+        this.delimiter = (byte) delimiter;
+        this.delimiterPattern = ONES * delimiter;
+        this.charset = charset;
+        this.hasHeader = hasHeader;
+    }
+
+    /**
+     * @return records passed to the consumer so far.
+     */
+    long getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Pass the records of the bytes to the consumer. The rows keep the array.
+     *
+     * @param bytes
+     * @param from
+     * @param to
+     * @param isLast
+     *            the bytes end the file; otherwise the last line is only read if
+     *            it ends with a line break.
+     * @param consumer
+     * @return start of the line not read.
+     */
+    int tokenize(byte[] bytes, int from, int to, boolean isLast, Consumer<CsvRow> consumer) {
+        ByteBuffer words = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        int lineStart = from;
+        int fieldStart = from;
+        int fields = 0;
+        long high = 0;
+        int i = from;
+        while (i < to) {
+            if (i + 8 <= to) {
+                long word = words.getLong(i);
+                long found = findZero(word ^ delimiterPattern) | findZero(word ^ LF_PATTERN)
+                        | findZero(word ^ CR_PATTERN);
+                if (found == 0) {
+                    high |= word;
+                    i += 8;
+                    continue;
+                }
+                // the lowest flag is exact: the first delimiter or line break.
+                int skipped = Long.numberOfTrailingZeros(found) >>> 3;
+                if (skipped > 0) {
+                    high |= word << (64 - 8 * skipped);
+                    i += skipped;
+                }
+            }
+            byte b = bytes[i];
+            if (b == delimiter) {
+                fields = addField(fields, bytes, fieldStart, i);
+                fieldStart = ++i;
+            } else if (b == '\n' || b == '\r') {
+                fields = addField(fields, bytes, fieldStart, i);
+                emit(bytes, fields, (high & HIGH_BITS) == 0, consumer);
+                i++;
+                if (b == '\r' && i < to && bytes[i] == '\n') {
+                    i++;
+                }
+                lineStart = fieldStart = i;
+                fields = 0;
+                high = 0;
+            } else {
+                high |= b;
+                i++;
+            }
+        }
+        if (!isLast) {
+            return lineStart;
+        }
+        if (lineStart < to) {
+            fields = addField(fields, bytes, fieldStart, to);
+            emit(bytes, fields, (high & HIGH_BITS) == 0, consumer);
+        }
+        return to;
+    }
+
+    /**
+     * @return the high bit of the zero bytes of the word, and maybe of bytes
+     *         above the lowest one.
+     */
+    private static long findZero(long word) {
+        return (word - ONES) & ~word & HIGH_BITS;
+    }
+
+    private int addField(int fields, byte[] bytes, int start, int end) {
+        // trim as String#trim() does; bytes of multi-byte characters are above.
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        if (2 * fields + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * fields] = start;
+        bounds[2 * fields + 1] = end;
+        return fields + 1;
+    }
+
+    private void emit(byte[] bytes, int fields, boolean isAscii, Consumer<CsvRow> consumer) {
+        // ignore empty lines
+        if (fields == 1 && bounds[0] == bounds[1]) {
+            return;
+        }
+        CsvRow row = new CsvRow(bytes, Arrays.copyOf(bounds, 2 * fields), isAscii, charset, recordNumber + 1,
+                headers);
+        if (hasHeader && headers == null) {
+            Map<String, Integer> names = new HashMap<>();
+            for (int i = 0; i < row.size(); i++) {
+                names.putIfAbsent(row.get(i), i);
+            }
+            headers = Collections.unmodifiableMap(names);
+            return;
+        }
+        recordNumber++;
+        consumer.accept(row);
+    }
+}
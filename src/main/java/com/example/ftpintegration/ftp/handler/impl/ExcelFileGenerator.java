@@ -1,47 +1,200 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.List;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
 
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.RowWriter;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
 
+/**
+ * Generate xlsx file.
+ *
+ * In streaming mode only the last rows are kept in memory and older rows are
+ * flushed to a temp file, see {@link #setRowWindowSize(int)}.
+ *
+ * @author Yu-Hua Chang
+ *
+ * @param <T>
+ */
 public class ExcelFileGenerator<T> extends GenericFileGenerator<Row, T> {
 
+    private final TypedRecordMapper<T> typedMapper;
+
+    private int rowWindowSize;
+    private boolean compressTempFiles;
+
     public ExcelFileGenerator(RecordMapper<Row, T> mapper) {
         super(mapper);
+        this.typedMapper = null;
+    }
+
+    /**
+     * Write numbers as numeric cells and dates as date cells, without boxing them
+     * into an Object array first.
+     *
+     * @param mapper
+     */
+    public ExcelFileGenerator(TypedRecordMapper<T> mapper) {
+        super(TypedRows.<Row, T>mapper(TypedRows::of, mapper));
+        this.typedMapper = mapper;
+    }
+
+    public int getRowWindowSize() {
+        return rowWindowSize;
+    }
+
+    /**
+     * Write with {@link SXSSFWorkbook} keeping only this many rows in memory, so
+     * that memory does not grow with the number of records.
+     *
+     * @param rowWindowSize
+     *            0 (default) to build the whole workbook in memory.
+     */
+    public void setRowWindowSize(int rowWindowSize) {
+        this.rowWindowSize = rowWindowSize;
+    }
+
+    public boolean isCompressTempFiles() {
+        return compressTempFiles;
+    }
+
+    /**
+     * Gzip the temp file of flushed rows in streaming mode. Saves disk space at
+     * the cost of some cpu.
+     *
+     * @param compressTempFiles
+     */
+    public void setCompressTempFiles(boolean compressTempFiles) {
+        this.compressTempFiles = compressTempFiles;
     }
 
     @Override
-    public byte[] createFileContent(List<T> records) throws IOException {
+    public void writeFileContent(Iterable<T> records, OutputStream outputStream) throws IOException {
+        if (rowWindowSize > 0) {
+            SXSSFWorkbook wb = new SXSSFWorkbook(null, rowWindowSize, compressTempFiles);
+            try {
+                writeRows(wb.createSheet(), records);
+                wb.write(outputStream);
+                outputStream.flush();
+            } finally {
+                // delete the temp file.
+                wb.dispose();
+                wb.close();
+            }
+            return;
+        }
+
         try (Workbook wb = new XSSFWorkbook()) {
-            Sheet sheet = wb.createSheet();
-            
-            int rownum = 0;
+            writeRows(wb.createSheet(), records);
+            wb.write(outputStream);
+            outputStream.flush();
+        }
+    }
+
+    private void writeRows(Sheet sheet, Iterable<T> records) {
+        if (typedMapper != null) {
+            ExcelRowWriter rowWriter = new ExcelRowWriter(sheet);
             for (T o : records) {
-                Object[] values = mapper.targetToSource(o);
-                Row row = sheet.createRow(rownum);
-                for (int i = 0; i < values.length; i++) {
-                    Object value = values[i];
-                    if (value != null) {
-                        Cell cell = row.createCell(i);
-                        cell.setCellValue(value.toString());
-                    }
+                rowWriter.startRow();
+                typedMapper.targetToRow(o, rowWriter);
+            }
+            return;
+        }
+        int rownum = 0;
+        for (T o : records) {
+            Object[] values = mapper.targetToSource(o);
+            Row row = sheet.createRow(rownum);
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value != null) {
+                    Cell cell = row.createCell(i);
+                    cell.setCellValue(value.toString());
                 }
-                rownum++;
             }
+            rownum++;
+        }
+    }
 
-            try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-                wb.write(out);
-                return out.toByteArray();
+    /**
+     * writes typed cells into the rows of the sheet.
+     */
+    private static class ExcelRowWriter implements RowWriter {
+
+        private final Sheet sheet;
+        private final CellStyle dateStyle;
+        private Row row;
+        private int column;
+
+        ExcelRowWriter(Sheet sheet) {
+            this.sheet = sheet;
+            Workbook wb = sheet.getWorkbook();
+            this.dateStyle = wb.createCellStyle();
+            dateStyle.setDataFormat(wb.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+        }
+
+        void startRow() {
+            row = sheet.createRow(row == null ? 0 : row.getRowNum() + 1);
+            column = 0;
+        }
+
+        @Override
+        public void writeString(String value) {
+            if (value != null) {
+                row.createCell(column).setCellValue(value);
             }
+            column++;
+        }
+
+        @Override
+        public void writeInt(int value) {
+            writeDouble(value);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            writeDouble(value);
         }
-    }
 
+        @Override
+        public void writeDouble(double value) {
+            row.createCell(column++).setCellValue(value);
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            if (value != null) {
+                row.createCell(column).setCellValue(value.doubleValue());
+            }
+            column++;
+        }
+
+        @Override
+        public void writeDate(LocalDate value) {
+            if (value != null) {
+                // read back in the default time zone as well.
+                Cell cell = row.createCell(column);
+                cell.setCellValue(Date.from(value.atStartOfDay(ZoneId.systemDefault()).toInstant()));
+                cell.setCellStyle(dateStyle);
+            }
+            column++;
+        }
+
+        @Override
+        public void writeEmpty() {
+            column++;
+        }
+    }
 }
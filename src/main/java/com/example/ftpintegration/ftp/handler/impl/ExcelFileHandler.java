@@ -1,25 +1,32 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.openxml4j.exceptions.OLE2NotOfficeXmlFileException;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.example.ftpintegration.ftp.handler.RecordHandler;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
-
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
 
 /**
  * Handle Excel file; both xls and xlsx are supported and xlsx is tried first.
  * 
+ * In event mode the first sheet is read row by row with the POI event model
+ * instead of loading the whole workbook, see {@link #setEventMode(boolean)}.
+ * 
  * @author Yu-Hua Chang
  *
  * @param <T>
@@ -28,19 +35,55 @@ public class ExcelFileHandler<T> extends GenericFileHandler<Row, T> {
 
     private static final Logger log = LoggerFactory.getLogger(ExcelFileHandler.class);
 
+    private boolean eventMode;
+
     public ExcelFileHandler(RecordMapper<Row, T> mapper, RecordHandler<T> handler) {
         super(mapper, handler);
     }
 
+    /**
+     * Map rows with typed columns, see {@link TypedRows#of(Row)}.
+     */
+    public ExcelFileHandler(TypedRecordMapper<T> mapper, RecordHandler<T> handler) {
+        this(TypedRows.<Row, T>mapper(TypedRows::of, mapper), handler);
+    }
+
+    public boolean isEventMode() {
+        return eventMode;
+    }
+
+    /**
+     * Read rows with the event model ({@code XSSFReader} for xlsx,
+     * {@code HSSFEventFactory} for xls) so that memory does not grow with the
+     * number of rows. The rows passed to the mapper are only valid during the
+     * mapper call, and formula cells hold their cached results. Best combined
+     * with {@link #setBatchSize(int)}.
+     * 
+     * @param eventMode
+     *            false (default) to load the whole workbook.
+     */
+    public void setEventMode(boolean eventMode) {
+        this.eventMode = eventMode;
+    }
+
+    @Override
+    public String handleFile(byte[] bytes) throws Throwable {
+        if (eventMode) {
+            return handleStream(new ByteArrayInputStream(bytes));
+        }
+        return super.handleFile(bytes);
+    }
+
     @Override
     public List<Row> getSourceObjectList(byte[] bytes) throws Throwable {
-        List<Row> list = new LinkedList<>();
+        ArrayList<Row> list = new ArrayList<>();
         try (ByteArrayInputStream in = new ByteArrayInputStream(bytes)) {
             if (log.isDebugEnabled()) {
                 log.debug("Try read Excel file in OOXML (Office Open XML) format (*.xlsx files)");
             }
             try (XSSFWorkbook wb = new XSSFWorkbook(in)) {
                 XSSFSheet sheet = wb.getSheetAt(0);
+                list.ensureCapacity(sheet.getPhysicalNumberOfRows());
                 for (Iterator<Row> iter = sheet.rowIterator(); iter.hasNext();) {
                     Row row = iter.next();
                     list.add(row);
@@ -52,6 +95,7 @@ public class ExcelFileHandler<T> extends GenericFileHandler<Row, T> {
                 }
                 try (HSSFWorkbook wb = new HSSFWorkbook(in)) {
                     HSSFSheet sheet = wb.getSheetAt(0);
+                    list.ensureCapacity(sheet.getPhysicalNumberOfRows());
 
                     for (Iterator<Row> iter = sheet.rowIterator(); iter.hasNext();) {
                         Row row = iter.next();
@@ -62,4 +106,68 @@ public class ExcelFileHandler<T> extends GenericFileHandler<Row, T> {
         }
         return list;
     }
+
+    /**
+     * Read the first sheet from a stream without copying it into a byte array
+     * first. The format is decided by the file header.
+     */
+    @Override
+    public List<Row> getSourceObjectList(InputStream inputStream) throws Throwable {
+        ArrayList<Row> list = new ArrayList<>();
+        InputStream in = FileMagic.prepareToCheckMagic(inputStream);
+        if (FileMagic.valueOf(in) == FileMagic.OOXML) {
+            if (log.isDebugEnabled()) {
+                log.debug("Read Excel stream in OOXML (Office Open XML) format (*.xlsx files)");
+            }
+            try (XSSFWorkbook wb = new XSSFWorkbook(in)) {
+                XSSFSheet sheet = wb.getSheetAt(0);
+                list.ensureCapacity(sheet.getPhysicalNumberOfRows());
+                for (Iterator<Row> iter = sheet.rowIterator(); iter.hasNext();) {
+                    Row row = iter.next();
+                    list.add(row);
+                }
+            }
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("Read Excel stream in OLE2 format (*.xls files)");
+            }
+            try (HSSFWorkbook wb = new HSSFWorkbook(in)) {
+                HSSFSheet sheet = wb.getSheetAt(0);
+                list.ensureCapacity(sheet.getPhysicalNumberOfRows());
+                for (Iterator<Row> iter = sheet.rowIterator(); iter.hasNext();) {
+                    Row row = iter.next();
+                    list.add(row);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * rows of the event model are removed once passed on.
+     */
+    @Override
+    protected boolean isSourceObjectRetainable() {
+        return !eventMode;
+    }
+
+    @Override
+    protected void readSourceObjects(InputStream inputStream, Consumer<Row> consumer) throws Throwable {
+        if (!eventMode) {
+            super.readSourceObjects(inputStream, consumer);
+            return;
+        }
+        InputStream in = FileMagic.prepareToCheckMagic(inputStream);
+        if (FileMagic.valueOf(in) == FileMagic.OOXML) {
+            if (log.isDebugEnabled()) {
+                log.debug("Read Excel stream in OOXML (Office Open XML) format (*.xlsx files) with event model");
+            }
+            XlsxEventReader.read(in, consumer);
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug("Read Excel stream in OLE2 format (*.xls files) with event model");
+            }
+            XlsEventReader.read(in, consumer);
+        }
+    }
 }
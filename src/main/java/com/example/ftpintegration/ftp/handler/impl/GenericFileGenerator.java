@@ -1,5 +1,10 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
 import com.example.ftpintegration.ftp.handler.FileGenerator;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
 
@@ -10,4 +15,15 @@ public abstract class GenericFileGenerator<S, T> implements FileGenerator<T> {
     public GenericFileGenerator(RecordMapper<S, T> mapper) {
         this.mapper = mapper;
     }
+
+    @Override
+    public abstract void writeFileContent(Iterable<T> records, OutputStream outputStream) throws IOException;
+
+    @Override
+    public byte[] createFileContent(List<T> records) throws IOException {
+        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            writeFileContent(records, out);
+            return out.toByteArray();
+        }
+    }
 }
@@ -1,44 +1,472 @@
 package com.example.ftpintegration.ftp.handler.impl;
 
-import java.util.LinkedList;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.handler.RecordErrorHandler;
 import com.example.ftpintegration.ftp.handler.RecordHandler;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.StreamingFileHandler;
 
-public abstract class GenericFileHandler<S, T> implements FileHandler {
+public abstract class GenericFileHandler<S, T> implements FileHandler, StreamingFileHandler {
 
     private static final Logger log = LoggerFactory.getLogger(GenericFileHandler.class);
 
+    public static final int DEFAULT_MAPPING_THRESHOLD = 10000;
+
+    /** records mapped by one task in parallel mode. */
+    private static final int MAPPING_CHUNK_SIZE = 1024;
+
     private final RecordMapper<S, T> mapper;
     private final RecordHandler<T> handler;
 
+    /**
+     * records per {@link RecordHandler#handleRecord(List)} call; 0 to pass all
+     * records of a file at once.
+     */
+    private int batchSize;
+
+    private ExecutorService mappingPool;
+    private int mappingThreshold = DEFAULT_MAPPING_THRESHOLD;
+    private RecordErrorHandler<S> errorHandler;
+
     public GenericFileHandler(RecordMapper<S, T> mapper, RecordHandler<T> handler) {
         this.mapper = mapper;
         this.handler = handler;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Pass records to the record handler in batches of this size while the file
+     * is still being read, instead of all at once after the whole file is read.
+     * Memory use then depends on the batch size rather than on the file size.
+     * 
+     * @param batchSize
+     *            0 (default) to pass all records at once.
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public ExecutorService getMappingPool() {
+        return mappingPool;
+    }
+
+    /**
+     * Map the records of a file, or of a batch, in parallel on the pool, e.g. a
+     * {@link java.util.concurrent.ForkJoinPool}, keeping their order. The record
+     * mapper must then be thread-safe. Streamed batches are only mapped in
+     * parallel if {@link #isSourceObjectRetainable()}.
+     * 
+     * @param mappingPool
+     *            null (default) to map on the calling thread.
+     */
+    public void setMappingPool(ExecutorService mappingPool) {
+        this.mappingPool = mappingPool;
+    }
+
+    public int getMappingThreshold() {
+        return mappingThreshold;
+    }
+
+    /**
+     * @param mappingThreshold
+     *            fewer records are mapped on the calling thread even if a pool is
+     *            set, as handing them over would cost more than mapping them.
+     */
+    public void setMappingThreshold(int mappingThreshold) {
+        this.mappingThreshold = mappingThreshold;
+    }
+
+    public RecordErrorHandler<S> getErrorHandler() {
+        return errorHandler;
+    }
+
+    /**
+     * @param errorHandler
+     *            receives the records the mapper failed on, which are then
+     *            skipped; null (default) to fail the file on the first one.
+     */
+    public void setErrorHandler(RecordErrorHandler<S> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Whether source objects stay valid after they were passed to the consumer of
+     * {@link #readSourceObjects(InputStream, Consumer)}, so that streamed records
+     * can be collected and mapped in parallel. False by default, as readers may
+     * reuse them.
+     * 
+     * @return
+     */
+    protected boolean isSourceObjectRetainable() {
+        return false;
+    }
+
     public abstract List<S> getSourceObjectList(byte[] bytes) throws Throwable;
 
+    /**
+     * Read source objects from a stream. Subclasses should override this to
+     * parse while reading; the default reads the whole stream first.
+     *
+     * @param inputStream
+     * @return
+     * @throws Throwable
+     */
+    public List<S> getSourceObjectList(InputStream inputStream) throws Throwable {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, n);
+        }
+        return getSourceObjectList(outputStream.toByteArray());
+    }
+
+    /**
+     * Read source objects from a stream and pass each one to the consumer as soon
+     * as it is parsed. Used by {@link #handleStream(InputStream)}. Subclasses
+     * should override this to avoid collecting the source objects; the default
+     * reads them all first. The consumer maps each source object before it
+     * returns, so it does not need to stay valid afterwards.
+     * 
+     * @param inputStream
+     * @param consumer
+     * @throws Throwable
+     */
+    protected void readSourceObjects(InputStream inputStream, Consumer<S> consumer) throws Throwable {
+        for (S sourceObject : getSourceObjectList(inputStream)) {
+            consumer.accept(sourceObject);
+        }
+    }
+
     @Override
     public String handleFile(byte[] bytes) throws Throwable {
-        List<S> sourceList = getSourceObjectList(bytes);
-        List<T> targetList = new LinkedList<>();
-        for (S sourceObject : sourceList) {
-            T targetObject = mapper.sourceToTarget(sourceObject);
-            targetList.add(targetObject);
+        if (batchSize > 0) {
+            return handleStream(new ByteArrayInputStream(bytes));
+        }
+        return handleSourceObjects(getSourceObjectList(bytes));
+    }
+
+    @Override
+    public String handleStream(InputStream inputStream) throws Throwable {
+        boolean isParallel = mappingPool != null && isSourceObjectRetainable();
+        if (batchSize > 0) {
+            BatchConsumer batchConsumer = new BatchConsumer(isParallel);
+            readSourceObjects(inputStream, batchConsumer);
+            batchConsumer.flush();
+            return batchConsumer.getMessage();
+        }
+        if (isParallel) {
+            List<S> sourceList = new ArrayList<>();
+            readSourceObjects(inputStream, sourceList::add);
+            return handleSourceObjects(sourceList);
+        }
+
+        // map while reading, so that the source objects are not collected.
+        Mapped mapped = new Mapped(new ArrayList<>(), false);
+        readSourceObjects(inputStream, sourceObject -> map(sourceObject, mapped));
+        return handleTargetObjects(mapped.targets, mapped.failures);
+    }
+
+    /**
+     * internal interface of a chunk of consecutive source objects of a file.
+     */
+    protected interface SourceChunk<S> {
+        void read(Consumer<S> consumer) throws Exception;
+    }
+
+    /**
+     * Parse and map the chunks of a file on the pool and pass the records to the
+     * record handler: all at once, or in batches while the chunks complete. At
+     * most twice the parallelism of chunks are in progress or waiting to be
+     * handled, so memory use does not depend on the file size in batch mode. The
+     * record handler is only called from the calling thread.
+     * 
+     * @param pool
+     * @param parallelism
+     *            of the pool.
+     * @param chunks
+     *            iterated on the calling thread.
+     * @param isOrdered
+     *            pass the records in file order; otherwise in the order the
+     *            chunks complete.
+     * @return
+     * @throws Throwable
+     *             the first error of a chunk.
+     */
+    protected String handleChunks(ExecutorService pool, int parallelism, Iterator<SourceChunk<S>> chunks,
+            boolean isOrdered) throws Throwable {
+        CompletionService<Mapped> completionService = new ExecutorCompletionService<>(pool);
+        Deque<Future<Mapped>> pending = new ArrayDeque<>();
+        int maxPending = Math.max(1, parallelism) * 2;
+        Mapped all = new Mapped(new ArrayList<>(), false);
+        BatchConsumer batchConsumer = batchSize > 0 ? new BatchConsumer(false) : null;
+        long chunkCount = 0;
+        try {
+            while (chunks.hasNext() || !pending.isEmpty()) {
+                while (pending.size() < maxPending && chunks.hasNext()) {
+                    SourceChunk<S> chunk = chunks.next();
+                    Callable<Mapped> task = () -> {
+                        Mapped mapped = new Mapped(new ArrayList<>(), true);
+                        chunk.read(sourceObject -> map(sourceObject, mapped));
+                        return mapped;
+                    };
+                    pending.add(isOrdered ? pool.submit(task) : completionService.submit(task));
+                    chunkCount++;
+                }
+                Future<Mapped> done = isOrdered ? pending.peekFirst() : completionService.take();
+                pending.remove(done);
+                Mapped mapped = getResult(done);
+                if (batchConsumer != null) {
+                    batchConsumer.failures += mapped.report();
+                    mapped.targets.forEach(batchConsumer::add);
+                } else {
+                    all.failures += mapped.report();
+                    all.targets.addAll(mapped.targets);
+                }
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Parsed {} chunks.", chunkCount);
+        }
+
+        if (batchConsumer == null) {
+            return handleTargetObjects(all.targets, all.failures);
+        }
+        batchConsumer.flush();
+        return batchConsumer.getMessage();
+    }
+
+    private static <R> R getResult(Future<R> future) throws Throwable {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Map one source object, on any thread.
+     */
+    private void map(S sourceObject, Mapped mapped) {
+        if (errorHandler == null) {
+            mapped.targets.add(mapper.sourceToTarget(sourceObject));
+            return;
+        }
+        try {
+            mapped.targets.add(mapper.sourceToTarget(sourceObject));
+        } catch (RuntimeException e) {
+            mapped.fail(sourceObject, e);
+        }
+    }
+
+    /**
+     * Map source objects in order, in parallel on the mapping pool from the
+     * threshold on. Errors are reported on the calling thread.
+     */
+    private Mapped mapAll(List<S> sourceList) throws Throwable {
+        if (mappingPool == null || sourceList.size() < Math.max(1, mappingThreshold)) {
+            Mapped mapped = new Mapped(new ArrayList<>(sourceList.size()), false);
+            sourceList.forEach(sourceObject -> map(sourceObject, mapped));
+            return mapped;
         }
 
+        List<S> sources = sourceList instanceof RandomAccess ? sourceList : new ArrayList<>(sourceList);
+        List<Future<Mapped>> futures = new ArrayList<>(sources.size() / MAPPING_CHUNK_SIZE + 1);
+        try {
+            for (int from = 0; from < sources.size(); from += MAPPING_CHUNK_SIZE) {
+                List<S> chunk = sources.subList(from, Math.min(sources.size(), from + MAPPING_CHUNK_SIZE));
+                futures.add(mappingPool.submit(() -> {
+                    Mapped mapped = new Mapped(new ArrayList<>(chunk.size()), true);
+                    chunk.forEach(sourceObject -> map(sourceObject, mapped));
+                    return mapped;
+                }));
+            }
+            Mapped all = new Mapped(new ArrayList<>(sources.size()), false);
+            for (Future<Mapped> future : futures) {
+                Mapped mapped = getResult(future);
+                all.failures += mapped.report();
+                all.targets.addAll(mapped.targets);
+            }
+            return all;
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private String handleSourceObjects(List<S> sourceList) throws Throwable {
+        Mapped mapped = mapAll(sourceList);
+        return handleTargetObjects(mapped.targets, mapped.failures);
+    }
+
+    private String handleTargetObjects(List<T> targetList, long failures) {
         // handle records
         log.info("Done record mapping. Pass records to record handler.");
         handler.handleRecord(targetList);
 
         String msg = "All record handling are completed successfully.";
+        if (failures > 0) {
+            msg += String.format(" (%d records failed)", failures);
+        }
         log.info(msg);
         return msg;
     }
+
+    /**
+     * mapped records, and the records failed to map. Failures of a task on the
+     * mapping pool are kept to be reported on the calling thread; otherwise
+     * they are reported at once, while the source object is still valid.
+     */
+    private class Mapped {
+
+        private final List<T> targets;
+        private final boolean isDeferred;
+        private final List<S> failedSources = new ArrayList<>(0);
+        private final List<RuntimeException> errors = new ArrayList<>(0);
+        private long failures;
+
+        Mapped(List<T> targets, boolean isDeferred) {
+            this.targets = targets;
+            this.isDeferred = isDeferred;
+        }
+
+        void fail(S sourceObject, RuntimeException error) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to map {}: {}", sourceObject, error.toString());
+            }
+            failures++;
+            if (isDeferred) {
+                failedSources.add(sourceObject);
+                errors.add(error);
+            } else {
+                errorHandler.handleError(sourceObject, error);
+            }
+        }
+
+        /**
+         * @return failures passed to the error handler.
+         */
+        long report() {
+            for (int i = 0; i < errors.size(); i++) {
+                errorHandler.handleError(failedSources.get(i), errors.get(i));
+            }
+            return failures;
+        }
+    }
+
+    /**
+     * map source objects and pass them to the record handler batch by batch.
+     */
+    private class BatchConsumer implements Consumer<S> {
+
+        private final boolean isParallel;
+        private final List<S> sources;
+        private List<T> batch = new ArrayList<>(batchSize);
+        private long records;
+        private long batches;
+        private long failures;
+
+        /**
+         * @param isParallel
+         *            collect the source objects of a batch and map them on the
+         *            mapping pool.
+         */
+        BatchConsumer(boolean isParallel) {
+            this.isParallel = isParallel;
+            this.sources = isParallel ? new ArrayList<>(batchSize) : null;
+        }
+
+        @Override
+        public void accept(S sourceObject) {
+            if (isParallel) {
+                sources.add(sourceObject);
+                if (sources.size() >= batchSize) {
+                    mapSources();
+                }
+                return;
+            }
+            if (errorHandler == null) {
+                add(mapper.sourceToTarget(sourceObject));
+                return;
+            }
+            try {
+                add(mapper.sourceToTarget(sourceObject));
+            } catch (RuntimeException e) {
+                errorHandler.handleError(sourceObject, e);
+                failures++;
+            }
+        }
+
+        private void mapSources() {
+            Mapped sourcesMapped;
+            try {
+                sourcesMapped = mapAll(sources);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            sources.clear();
+            failures += sourcesMapped.failures;
+            sourcesMapped.targets.forEach(this::add);
+        }
+
+        String getMessage() {
+            String msg = String.format("All record handling are completed successfully. (%d records in %d batches)",
+                    records, batches);
+            if (failures > 0) {
+                msg += String.format(" (%d records failed)", failures);
+            }
+            log.info(msg);
+            return msg;
+        }
+
+        void add(T targetObject) {
+            batch.add(targetObject);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (isParallel && !sources.isEmpty()) {
+                mapSources();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            records += batch.size();
+            batches++;
+            if (log.isDebugEnabled()) {
+                log.debug("Pass batch {} ({} records) to record handler.", batches, batch.size());
+            }
+            handler.handleRecord(batch);
+            // the record handler may keep the list.
+            batch = new ArrayList<>(batchSize);
+        }
+    }
 }
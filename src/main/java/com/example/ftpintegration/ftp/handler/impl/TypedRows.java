@@ -0,0 +1,317 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.apache.commons.csv.CSVRecord;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.RowWriter;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
+import com.example.ftpintegration.ftp.handler.TypedRow;
+
+/**
+ * {@link TypedRow} views of the records of {@link CsvFileHandler} and
+ * {@link ExcelFileHandler}, e.g. to read typed columns in an existing
+ * {@link RecordMapper}. {@link CsvRow} is a typed row itself.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+public final class TypedRows {
+
+    private TypedRows() {
+    }
+
+    public static TypedRow of(CSVRecord record) {
+        return new CsvRecordRow(record);
+    }
+
+    /**
+     * Numeric and date cells are read without text conversion; text cells are
+     * parsed.
+     *
+     * @param row
+     * @return
+     */
+    public static TypedRow of(Row row) {
+        return new ExcelRow(row);
+    }
+
+    /**
+     * @return a record mapper passing views of the source objects to the typed
+     *         mapper. {@link RecordMapper#targetToSource(Object)} collects the
+     *         written values.
+     */
+    static <S, T> RecordMapper<S, T> mapper(Function<S, TypedRow> view, TypedRecordMapper<T> mapper) {
+        mapper.getClass();
+        return new RecordMapper<S, T>() {
+            @Override
+            public T sourceToTarget(S source) {
+                return mapper.rowToTarget(view.apply(source));
+            }
+
+            @Override
+            public Object[] targetToSource(T target) {
+                ValuesWriter writer = new ValuesWriter();
+                mapper.targetToRow(target, writer);
+                return writer.values.toArray();
+            }
+        };
+    }
+
+    static IllegalArgumentException noHeader(String name) {
+        return new IllegalArgumentException(String.format("No column '%s': the file has no header row.", name));
+    }
+
+    /**
+     * columns of a parsed csv record.
+     */
+    private static class CsvRecordRow implements TypedRow {
+
+        private final CSVRecord record;
+
+        CsvRecordRow(CSVRecord record) {
+            this.record = record;
+        }
+
+        @Override
+        public int size() {
+            return record.size();
+        }
+
+        @Override
+        public int getColumnIndex(String name) {
+            throw noHeader(name);
+        }
+
+        @Override
+        public boolean isEmpty(int i) {
+            return record.get(i).isEmpty();
+        }
+
+        @Override
+        public String getString(int i) {
+            return record.get(i);
+        }
+
+        @Override
+        public int getInt(int i) {
+            return Integer.parseInt(record.get(i));
+        }
+
+        @Override
+        public long getLong(int i) {
+            return Long.parseLong(record.get(i));
+        }
+
+        @Override
+        public double getDouble(int i) {
+            return Double.parseDouble(record.get(i));
+        }
+
+        @Override
+        public BigDecimal getDecimal(int i) {
+            return new BigDecimal(record.get(i));
+        }
+
+        @Override
+        public LocalDate getDate(int i) {
+            return LocalDate.parse(record.get(i));
+        }
+
+        @Override
+        public LocalDate getDate(int i, DateTimeFormatter formatter) {
+            return LocalDate.parse(record.get(i), formatter);
+        }
+
+        @Override
+        public String toString() {
+            return record.toString();
+        }
+    }
+
+    /**
+     * cells of a row of the first sheet. Formula cells give their cached value.
+     */
+    private static class ExcelRow implements TypedRow {
+
+        private final Row row;
+
+        ExcelRow(Row row) {
+            this.row = row;
+        }
+
+        private static CellType getType(Cell cell) {
+            if (cell == null) {
+                return CellType.BLANK;
+            }
+            CellType type = cell.getCellType();
+            return type == CellType.FORMULA ? cell.getCachedFormulaResultType() : type;
+        }
+
+        private Cell getNonEmptyCell(int i) {
+            if (isEmpty(i)) {
+                throw new NumberFormatException(String.format("Cell %d of row %d is empty.", i, row.getRowNum()));
+            }
+            return row.getCell(i);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, row.getLastCellNum());
+        }
+
+        @Override
+        public int getColumnIndex(String name) {
+            throw noHeader(name);
+        }
+
+        @Override
+        public boolean isEmpty(int i) {
+            Cell cell = row.getCell(i);
+            CellType type = getType(cell);
+            return type == CellType.BLANK || type == CellType.STRING && cell.getStringCellValue().trim().isEmpty();
+        }
+
+        @Override
+        public String getString(int i) {
+            Cell cell = row.getCell(i);
+            switch (getType(cell)) {
+            case NUMERIC:
+                return NumberToTextConverter.toText(cell.getNumericCellValue());
+            case BOOLEAN:
+                return String.valueOf(cell.getBooleanCellValue());
+            case STRING:
+                return cell.getStringCellValue().trim();
+            default:
+                return "";
+            }
+        }
+
+        @Override
+        public int getInt(int i) {
+            Cell cell = getNonEmptyCell(i);
+            if (getType(cell) == CellType.NUMERIC) {
+                double value = cell.getNumericCellValue();
+                if (value != (int) value) {
+                    throw new NumberFormatException(String.format("Cell %d of row %d is not an int: %s", i,
+                            row.getRowNum(), NumberToTextConverter.toText(value)));
+                }
+                return (int) value;
+            }
+            return Integer.parseInt(getString(i));
+        }
+
+        @Override
+        public long getLong(int i) {
+            Cell cell = getNonEmptyCell(i);
+            if (getType(cell) == CellType.NUMERIC) {
+                double value = cell.getNumericCellValue();
+                if (value != (long) value) {
+                    throw new NumberFormatException(String.format("Cell %d of row %d is not a long: %s", i,
+                            row.getRowNum(), NumberToTextConverter.toText(value)));
+                }
+                return (long) value;
+            }
+            return Long.parseLong(getString(i));
+        }
+
+        @Override
+        public double getDouble(int i) {
+            Cell cell = getNonEmptyCell(i);
+            if (getType(cell) == CellType.NUMERIC) {
+                return cell.getNumericCellValue();
+            }
+            return Double.parseDouble(getString(i));
+        }
+
+        @Override
+        public BigDecimal getDecimal(int i) {
+            Cell cell = getNonEmptyCell(i);
+            if (getType(cell) == CellType.NUMERIC) {
+                return BigDecimal.valueOf(cell.getNumericCellValue());
+            }
+            return new BigDecimal(getString(i));
+        }
+
+        @Override
+        public LocalDate getDate(int i) {
+            return getDate(i, DateTimeFormatter.ISO_LOCAL_DATE);
+        }
+
+        @Override
+        public LocalDate getDate(int i, DateTimeFormatter formatter) {
+            Cell cell = getNonEmptyCell(i);
+            if (getType(cell) == CellType.NUMERIC) {
+                // any number is a valid day; only trust the ones formatted as a date.
+                if (!DateUtil.isCellDateFormatted(cell)) {
+                    throw new DateTimeException(String.format("Cell %d of row %d is a number, not a date: %s", i,
+                            row.getRowNum(), NumberToTextConverter.toText(cell.getNumericCellValue())));
+                }
+                // dates are stored in the default time zone.
+                return cell.getDateCellValue().toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            }
+            return LocalDate.parse(getString(i), formatter);
+        }
+
+        @Override
+        public String toString() {
+            return row.toString();
+        }
+    }
+
+    /**
+     * written values as objects.
+     */
+    private static class ValuesWriter implements RowWriter {
+
+        private final List<Object> values = new ArrayList<>();
+
+        @Override
+        public void writeString(String value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeInt(int value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeLong(long value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeDouble(double value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeDecimal(BigDecimal value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeDate(LocalDate value) {
+            values.add(value);
+        }
+
+        @Override
+        public void writeEmpty() {
+            values.add(null);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.apache.poi.hssf.eventusermodel.FormatTrackingHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+
+/**
+ * Read the first sheet of a xls file with {@link HSSFEventFactory} instead of
+ * building the whole workbook.
+ *
+ * Like {@link XlsxEventReader}, each row is rebuilt in a scratch sheet and
+ * removed again once the consumer returns. Rows without cells are passed as
+ * empty rows, the same as the user model does.
+ *
+ * @author Yu-Hua Chang
+ */
+class XlsEventReader {
+
+    private XlsEventReader() {
+    }
+
+    static void read(InputStream inputStream, Consumer<Row> consumer) throws Exception {
+        try (POIFSFileSystem fs = new POIFSFileSystem(inputStream); HSSFWorkbook scratch = new HSSFWorkbook()) {
+            SheetListener listener = new SheetListener(scratch, consumer);
+            FormatTrackingHSSFListener formatListener = new FormatTrackingHSSFListener(listener);
+            listener.formats = formatListener;
+
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(formatListener);
+            new HSSFEventFactory().processWorkbookEvents(request, fs);
+        }
+    }
+
+    private static class SheetListener implements HSSFListener {
+
+        private final HSSFWorkbook scratch;
+        private final HSSFSheet sheet;
+        private final Consumer<Row> consumer;
+        private final Map<String, CellStyle> styleCache = new HashMap<>();
+        private FormatTrackingHSSFListener formats;
+
+        private SSTRecord sst;
+        private int depth;
+        private int worksheets;
+        private boolean isFirstSheet;
+
+        /** rows announced by row records but not passed yet. */
+        private final TreeSet<Integer> pendingRows = new TreeSet<>();
+        private Row row;
+
+        /** formula with a string result, the value follows in a string record. */
+        private Cell formulaCell;
+
+        SheetListener(HSSFWorkbook scratch, Consumer<Row> consumer) {
+            this.scratch = scratch;
+            this.sheet = scratch.createSheet();
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void processRecord(Record record) {
+            switch (record.getSid()) {
+            case BOFRecord.sid:
+                depth++;
+                if (depth == 1 && ((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET) {
+                    worksheets++;
+                    isFirstSheet = worksheets == 1;
+                }
+                return;
+            case EOFRecord.sid:
+                if (depth == 1 && isFirstSheet) {
+                    finish();
+                    isFirstSheet = false;
+                }
+                depth--;
+                return;
+            case SSTRecord.sid:
+                sst = (SSTRecord) record;
+                return;
+            default:
+                break;
+            }
+
+            // only cells of the first worksheet, not of embedded charts.
+            if (!isFirstSheet || depth != 1) {
+                return;
+            }
+
+            switch (record.getSid()) {
+            case RowRecord.sid:
+                pendingRows.add(((RowRecord) record).getRowNumber());
+                break;
+            case NumberRecord.sid:
+                NumberRecord number = (NumberRecord) record;
+                createCell(number).setCellValue(number.getValue());
+                break;
+            case RKRecord.sid:
+                RKRecord rk = (RKRecord) record;
+                createCell(rk).setCellValue(rk.getRKNumber());
+                break;
+            case LabelSSTRecord.sid:
+                LabelSSTRecord label = (LabelSSTRecord) record;
+                createCell(label).setCellValue(sst.getString(label.getSSTIndex()).getString());
+                break;
+            case LabelRecord.sid:
+                LabelRecord oldLabel = (LabelRecord) record;
+                createCell(oldLabel.getRow(), oldLabel.getColumn(), null).setCellValue(oldLabel.getValue());
+                break;
+            case BoolErrRecord.sid:
+                BoolErrRecord boolErr = (BoolErrRecord) record;
+                if (boolErr.isBoolean()) {
+                    createCell(boolErr).setCellValue(boolErr.getBooleanValue());
+                } else {
+                    createCell(boolErr).setCellErrorValue(boolErr.getErrorValue());
+                }
+                break;
+            case BlankRecord.sid:
+                createCell((BlankRecord) record);
+                break;
+            case FormulaRecord.sid:
+                FormulaRecord formula = (FormulaRecord) record;
+                Cell cell = createCell(formula);
+                int resultType = formula.getCachedResultType();
+                if (resultType == CellType.STRING.getCode()) {
+                    if (formula.hasCachedResultString()) {
+                        formulaCell = cell;
+                    } else {
+                        cell.setCellValue("");
+                    }
+                } else if (resultType == CellType.BOOLEAN.getCode()) {
+                    cell.setCellValue(formula.getCachedBooleanValue());
+                } else if (resultType == CellType.ERROR.getCode()) {
+                    cell.setCellErrorValue((byte) formula.getCachedErrorValue());
+                } else {
+                    cell.setCellValue(formula.getValue());
+                }
+                break;
+            case StringRecord.sid:
+                if (formulaCell != null) {
+                    formulaCell.setCellValue(((StringRecord) record).getString());
+                    formulaCell = null;
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+        private Cell createCell(CellValueRecordInterface record) {
+            return createCell(record.getRow(), record.getColumn(), formats.getFormatString(record));
+        }
+
+        private Cell createCell(int rowNum, int colNum, String format) {
+            if (row == null || row.getRowNum() != rowNum) {
+                passRow();
+                passPendingRowsBefore(rowNum);
+                pendingRows.remove(rowNum);
+                row = sheet.createRow(rowNum);
+            }
+            Cell cell = row.createCell(colNum);
+            if (format != null) {
+                cell.setCellStyle(getStyle(format));
+            }
+            return cell;
+        }
+
+        private void passRow() {
+            if (row != null) {
+                consumer.accept(row);
+                sheet.removeRow(row);
+                row = null;
+            }
+        }
+
+        private void passPendingRowsBefore(int rowNum) {
+            while (!pendingRows.isEmpty() && pendingRows.first() < rowNum) {
+                row = sheet.createRow(pendingRows.pollFirst());
+                passRow();
+            }
+        }
+
+        private void finish() {
+            passRow();
+            passPendingRowsBefore(Integer.MAX_VALUE);
+        }
+
+        /**
+         * copy the data format so that date cells are still recognized.
+         */
+        private CellStyle getStyle(String format) {
+            return styleCache.computeIfAbsent(format, f -> {
+                CellStyle style = scratch.createCellStyle();
+                style.setDataFormat(scratch.createDataFormat().getFormat(f));
+                return style;
+            });
+        }
+    }
+}
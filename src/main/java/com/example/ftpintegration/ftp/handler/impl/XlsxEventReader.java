@@ -0,0 +1,181 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.poi.ooxml.util.SAXHelper;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Read the first sheet of a xlsx file with the SAX based event model instead of
+ * building the whole workbook.
+ *
+ * Each row is rebuilt in a scratch sheet so that the mapper still gets a
+ * {@link Row}, and removed again once the consumer returns. The consumer must
+ * not keep the row. Formula cells carry their cached value.
+ *
+ * @author Yu-Hua Chang
+ */
+class XlsxEventReader {
+
+    private XlsxEventReader() {
+    }
+
+    static void read(InputStream inputStream, Consumer<Row> consumer) throws Exception {
+        try (OPCPackage pkg = OPCPackage.open(inputStream); XSSFWorkbook scratch = new XSSFWorkbook()) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable sst = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = SAXHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(sst, styles, scratch, consumer));
+                parser.parse(new InputSource(sheet));
+            }
+        }
+    }
+
+    private static class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sst;
+        private final StylesTable styles;
+        private final XSSFWorkbook scratch;
+        private final XSSFSheet sheet;
+        private final Consumer<Row> consumer;
+        private final Map<Integer, CellStyle> styleCache = new HashMap<>();
+
+        private final StringBuilder value = new StringBuilder();
+        private boolean isValue;
+
+        private Row row;
+        private int rowNum = -1;
+        private int colNum;
+        private String cellType;
+        private String cellStyle;
+
+        SheetHandler(ReadOnlySharedStringsTable sst, StylesTable styles, XSSFWorkbook scratch,
+                Consumer<Row> consumer) {
+            this.sst = sst;
+            this.styles = styles;
+            this.scratch = scratch;
+            this.sheet = scratch.createSheet();
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+            case "row":
+                String r = attributes.getValue("r");
+                rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+                colNum = -1;
+                row = sheet.createRow(rowNum);
+                break;
+            case "c":
+                String ref = attributes.getValue("r");
+                colNum = ref == null ? colNum + 1 : new CellReference(ref).getCol();
+                cellType = attributes.getValue("t");
+                cellStyle = attributes.getValue("s");
+                value.setLength(0);
+                break;
+            case "v":
+            case "t":
+                // <t> of an inline string; the shared strings are read separately.
+                isValue = true;
+                break;
+            default:
+                break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (isValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+            case "v":
+            case "t":
+                isValue = false;
+                break;
+            case "c":
+                createCell();
+                break;
+            case "row":
+                consumer.accept(row);
+                sheet.removeRow(row);
+                row = null;
+                break;
+            default:
+                break;
+            }
+        }
+
+        private void createCell() {
+            Cell cell = row.createCell(colNum);
+            if (cellStyle != null) {
+                cell.setCellStyle(getStyle(Integer.parseInt(cellStyle)));
+            }
+            String v = value.toString();
+            if (v.isEmpty() && !"inlineStr".equals(cellType)) {
+                return;
+            }
+            if (cellType == null || "n".equals(cellType)) {
+                cell.setCellValue(Double.parseDouble(v));
+            } else if ("s".equals(cellType)) {
+                cell.setCellValue(sst.getItemAt(Integer.parseInt(v)).getString());
+            } else if ("b".equals(cellType)) {
+                cell.setCellValue("1".equals(v) || "true".equalsIgnoreCase(v));
+            } else if ("e".equals(cellType)) {
+                try {
+                    cell.setCellErrorValue(FormulaError.forString(v).getCode());
+                } catch (IllegalArgumentException e) {
+                    cell.setCellValue(v);
+                }
+            } else {
+                // str (formula result), inlineStr
+                cell.setCellValue(v);
+            }
+        }
+
+        /**
+         * copy the data format so that date cells are still recognized.
+         */
+        private CellStyle getStyle(int index) {
+            return styleCache.computeIfAbsent(index, i -> {
+                CellStyle style = scratch.createCellStyle();
+                XSSFCellStyle source = styles.getStyleAt(i);
+                if (source != null && source.getDataFormatString() != null) {
+                    style.setDataFormat(scratch.createDataFormat().getFormat(source.getDataFormatString()));
+                }
+                return style;
+            });
+        }
+    }
+}
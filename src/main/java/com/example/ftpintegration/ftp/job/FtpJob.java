@@ -0,0 +1,149 @@
+package com.example.ftpintegration.ftp.job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.ftpintegration.ftp.FtpOperationResult;
+
+/**
+ * A directory operation running in the background, see {@link FtpJobService}.
+ * 
+ * File results are collected while the job runs. Listeners are told about the
+ * progress after every file and once more when the job has finished.
+ * 
+ * @author Yu-Hua Chang
+ */
+public class FtpJob {
+
+    private static final Logger log = LoggerFactory.getLogger(FtpJob.class);
+
+    public enum State {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final List<FtpOperationResult> results = new ArrayList<>();
+    private final List<Consumer<FtpJobProgress>> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.QUEUED;
+    private long startMillis;
+    private long endMillis;
+    private int filesFailed;
+    private long bytes;
+    private String error;
+
+    FtpJob(String id) {
+        this.id = id;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public synchronized FtpJobProgress getProgress() {
+        long elapsed = 0;
+        if (startMillis > 0) {
+            elapsed = (isFinished() ? endMillis : System.currentTimeMillis()) - startMillis;
+        }
+        return new FtpJobProgress(id, state, results.size(), filesFailed, bytes, elapsed, error);
+    }
+
+    /**
+     * @return results of the files processed so far, in processing order.
+     */
+    public synchronized List<FtpOperationResult> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    public synchronized boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED;
+    }
+
+    /**
+     * Be told about the progress. Every listener is called exactly once with the
+     * final progress, also if it is added while or after the job finishes.
+     * 
+     * @param listener
+     *            called on the job thread; must not block.
+     */
+    public void addListener(Consumer<FtpJobProgress> listener) {
+        listeners.add(listener);
+        // finish() may have missed it; whoever removes it sends the final progress.
+        if (isFinished() && listeners.remove(listener)) {
+            notifyListener(listener, getProgress());
+        }
+    }
+
+    public void removeListener(Consumer<FtpJobProgress> listener) {
+        listeners.remove(listener);
+    }
+
+    synchronized void start() {
+        state = State.RUNNING;
+        startMillis = System.currentTimeMillis();
+    }
+
+    void add(FtpOperationResult result) {
+        synchronized (this) {
+            results.add(result);
+            if (!result.isSuccess()) {
+                filesFailed++;
+            }
+            bytes += result.getTimings().getBytes();
+        }
+        notifyListeners();
+    }
+
+    /**
+     * @param sessionResult
+     *            the job failed if it has an error, e.g. it could not log in.
+     */
+    void finish(FtpOperationResult sessionResult) {
+        synchronized (this) {
+            endMillis = System.currentTimeMillis();
+            if (sessionResult.getError() != null) {
+                state = State.FAILED;
+                error = sessionResult.getMessage();
+            } else {
+                state = State.COMPLETED;
+            }
+        }
+        FtpJobProgress progress = getProgress();
+        for (Consumer<FtpJobProgress> listener : listeners) {
+            // one by one, as addListener may be removing the same one.
+            if (listeners.remove(listener)) {
+                notifyListener(listener, progress);
+            }
+        }
+    }
+
+    private void notifyListeners() {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        FtpJobProgress progress = getProgress();
+        for (Consumer<FtpJobProgress> listener : listeners) {
+            if (!notifyListener(listener, progress)) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    /**
+     * @return false if the listener failed.
+     */
+    private static boolean notifyListener(Consumer<FtpJobProgress> listener, FtpJobProgress progress) {
+        try {
+            listener.accept(progress);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Job listener failed. Remove it.", e);
+            return false;
+        }
+    }
+}
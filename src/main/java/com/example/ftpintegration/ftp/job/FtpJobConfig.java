@@ -0,0 +1,49 @@
+package com.example.ftpintegration.ftp.job;
+
+/**
+ * Settings of {@link FtpJobService}.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpJobConfig {
+
+    /**
+     * jobs running at the same time, each on one ftp session.
+     */
+    private int threads = 4;
+
+    /**
+     * jobs waiting to run. Further submits are rejected.
+     */
+    private int queueSize = 16;
+
+    /**
+     * finished jobs kept for polling; the oldest are forgotten first.
+     */
+    private int retainedJobs = 100;
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public int getRetainedJobs() {
+        return retainedJobs;
+    }
+
+    public void setRetainedJobs(int retainedJobs) {
+        this.retainedJobs = retainedJobs;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.ftpintegration.ftp.job;
+
+/**
+ * Point-in-time snapshot of the progress of a {@link FtpJob}.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpJobProgress {
+
+    private final String id;
+    private final FtpJob.State state;
+    private final int filesDone;
+    private final int filesFailed;
+    private final long bytes;
+    private final long elapsedMillis;
+    private final String error;
+
+    public FtpJobProgress(String id, FtpJob.State state, int filesDone, int filesFailed, long bytes,
+            long elapsedMillis, String error) {
+        this.id = id;
+        this.state = state;
+        this.filesDone = filesDone;
+        this.filesFailed = filesFailed;
+        this.bytes = bytes;
+        this.elapsedMillis = elapsedMillis;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public FtpJob.State getState() {
+        return state;
+    }
+
+    /**
+     * @return files processed so far, including failed ones.
+     */
+    public int getFilesDone() {
+        return filesDone;
+    }
+
+    public int getFilesFailed() {
+        return filesFailed;
+    }
+
+    /**
+     * @return bytes downloaded so far.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return milliseconds since the job started, 0 while queued.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return bytes per second since the job started.
+     */
+    public double getBytesPerSecond() {
+        return elapsedMillis == 0 ? 0 : bytes * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * @return why the job failed, e.g. login error; null unless failed.
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "FtpJobProgress [id=" + id + ", state=" + state + ", filesDone=" + filesDone + ", filesFailed="
+                + filesFailed + ", bytes=" + bytes + ", elapsedMillis=" + elapsedMillis + ", error=" + error + "]";
+    }
+}
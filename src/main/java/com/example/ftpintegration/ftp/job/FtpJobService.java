@@ -0,0 +1,122 @@
+package com.example.ftpintegration.ftp.job;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.ftpintegration.ftp.FtpOperationResult;
+import com.example.ftpintegration.ftp.FtpServer;
+import com.example.ftpintegration.ftp.FtpTemplate;
+import com.example.ftpintegration.ftp.FtpThreads;
+import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
+
+/**
+ * Run directory operations in the background and keep track of them by job id.
+ *
+ * Jobs run on a fixed number of threads with a bounded queue, so a burst of
+ * submits cannot open more sessions than configured; once the queue is full,
+ * submits fail with a {@link RejectedExecutionException}. Finished jobs are
+ * kept for polling up to {@link FtpJobConfig#getRetainedJobs()}.
+ *
+ * @author Yu-Hua Chang
+ */
+public class FtpJobService implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FtpJobService.class);
+
+    private final FtpSessionPool pool;
+    private final int retainedJobs;
+    private final ExecutorService executor;
+    private final Map<String, FtpJob> jobs = new LinkedHashMap<>();
+
+    /**
+     * @param pool
+     *            session pool; null to connect per job.
+     * @param config
+     */
+    public FtpJobService(FtpSessionPool pool, FtpJobConfig config) {
+        this.pool = pool;
+        this.retainedJobs = config.getRetainedJobs();
+        this.executor = FtpThreads.newBoundedExecutor("ftp-job-", config.getThreads(), config.getQueueSize(), false);
+    }
+
+    /**
+     * Submit {@link FtpTemplate#retrieveThenMoveAll(String, String, FileHandler)}
+     * as a job.
+     *
+     * @param server
+     * @param inputDirectory
+     * @param archiveDirectory
+     * @param handler
+     * @return the queued job.
+     * @throws RejectedExecutionException
+     *             if too many jobs are waiting already.
+     */
+    public FtpJob submitMoveAll(FtpServer server, String inputDirectory, String archiveDirectory,
+            FileHandler handler) {
+        FtpJob job = new FtpJob(UUID.randomUUID().toString());
+        FtpTemplate template = new FtpTemplate(server, pool);
+        synchronized (jobs) {
+            executor.execute(() -> {
+                log.info("Start job {}: move all files from {} to {}", job.getId(), inputDirectory, archiveDirectory);
+                job.start();
+                FtpOperationResult sessionResult = new FtpOperationResult();
+                try {
+                    sessionResult = template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler,
+                            job::add);
+                } catch (RuntimeException | Error e) {
+                    sessionResult.setError(e);
+                    throw e;
+                } finally {
+                    job.finish(sessionResult);
+                    log.info("Finish job {}: {}", job.getId(), job.getProgress());
+                }
+            });
+            jobs.put(job.getId(), job);
+            forgetFinishedJobs();
+        }
+        return job;
+    }
+
+    /**
+     * @param id
+     * @return the job, or null if unknown or forgotten.
+     */
+    public FtpJob getJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    private void forgetFinishedJobs() {
+        int finished = 0;
+        for (FtpJob job : jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+        Iterator<FtpJob> it = jobs.values().iterator();
+        while (finished > retainedJobs && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+    /**
+     * Stop running jobs and reject new ones.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ftpintegration.ftp.pool;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.example.ftpintegration.ftp.FtpAgent;
+
+/**
+ * A connected and logged-in {@link FtpAgent} owned by {@link FtpSessionPool}.
+ * A session is used by one thread at a time, between
+ * {@link FtpSessionPool#borrow} and {@link FtpSessionPool#release} (or
+ * {@link FtpSessionPool#invalidate}).
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpSession {
+
+    private final FtpSessionKey key;
+    private final FtpAgent agent;
+    private final long createdAt;
+    private final AtomicBoolean isBorrowed = new AtomicBoolean();
+    private volatile long lastUsedAt;
+
+    FtpSession(FtpSessionKey key, FtpAgent agent) {
+        this.key = key;
+        this.agent = agent;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    FtpSessionKey getKey() {
+        return key;
+    }
+
+    public FtpAgent getFtpAgent() {
+        return agent;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void touch() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    boolean markBorrowed() {
+        return isBorrowed.compareAndSet(false, true);
+    }
+
+    boolean markReturned() {
+        return isBorrowed.compareAndSet(true, false);
+    }
+
+    @Override
+    public String toString() {
+        return "FtpSession[" + key + "]";
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.ftpintegration.ftp.pool;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+
+import com.example.ftpintegration.ftp.FtpServer;
+
+/**
+ * Identity of a pooled session. Sessions are only shared between servers with
+ * the same host, port, user, password, transfer mode and timeout, so a server
+ * with a wrong password never gets a session logged in by another one.
+ *
+ * The password is kept as a SHA-256 hash and is not part of
+ * {@link #toString()}.
+ *
+ * @author Yu-Hua Chang
+ *
+ */
+final class FtpSessionKey {
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final byte[] passwordHash;
+    private final boolean isPassiveMode;
+    private final int timeout;
+
+    FtpSessionKey(FtpServer server) {
+        this.host = server.getHost();
+        this.port = server.getPort();
+        this.username = server.getUsername();
+        this.passwordHash = hash(server.getPassword());
+        this.isPassiveMode = server.isPassiveMode();
+        this.timeout = server.getTimeout();
+    }
+
+    private static byte[] hash(String password) {
+        if (password == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every JRE has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port, username, Arrays.hashCode(passwordHash), isPassiveMode, timeout);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        FtpSessionKey other = (FtpSessionKey) obj;
+        return port == other.port && isPassiveMode == other.isPassiveMode && timeout == other.timeout
+                && Objects.equals(host, other.host) && Objects.equals(username, other.username)
+                && MessageDigest.isEqual(passwordHash, other.passwordHash);
+    }
+
+    @Override
+    public String toString() {
+        return username + "@" + host + ":" + port + " PassiveMode=" + isPassiveMode + " Timeout=" + timeout;
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.ftpintegration.ftp.pool;
+
+import java.io.Closeable;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.example.ftpintegration.ftp.FtpAgent;
+import com.example.ftpintegration.ftp.FtpServer;
+import com.example.ftpintegration.ftp.exception.FtpConnectionException;
+import com.example.ftpintegration.ftp.exception.FtpException;
+import com.example.ftpintegration.ftp.exception.FtpPoolExhaustedException;
+
+/**
+ * Bounded pool of logged-in ftp sessions so that repeated operations on the
+ * same server skip the connect, login and mode switch handshake.
+ *
+ * Sessions are grouped by host, port, user, password, transfer mode and
+ * timeout, so they are never shared between servers with different
+ * credentials. Each group holds at most
+ * {@link FtpSessionPoolConfig#getMaxPerHost()} sessions; further borrows wait
+ * up to the borrow timeout. Idle sessions are validated with NOOP on borrow and
+ * closed once they have been idle for too long.
+ *
+ * @author Yu-Hua Chang
+ */
+public class FtpSessionPool implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FtpSessionPool.class);
+
+    private final FtpSessionPoolConfig config;
+    private final ConcurrentMap<FtpSessionKey, HostPool> pools = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean isClosed;
+
+    public FtpSessionPool() {
+        this(new FtpSessionPoolConfig());
+    }
+
+    public FtpSessionPool(FtpSessionPoolConfig config) {
+        config.getClass();
+        this.config = config;
+
+        long interval = config.getEvictionIntervalMillis();
+        if (interval > 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ftp-session-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+
+    public FtpSessionPoolConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Get a logged-in session for the server, reusing an idle one when possible.
+     * The caller must give it back with {@link #release(FtpSession)} or
+     * {@link #invalidate(FtpSession)}.
+     *
+     * @param server
+     * @return
+     * @throws FtpException
+     *             the same connection, login and mode switch exceptions as a
+     *             direct login, or {@link FtpPoolExhaustedException} if the
+     *             host limit is reached for longer than the borrow timeout.
+     */
+    public FtpSession borrow(FtpServer server) throws FtpException {
+        if (isClosed) {
+            throw new FtpConnectionException("Session pool is closed.");
+        }
+        HostPool pool = pools.computeIfAbsent(new FtpSessionKey(server), HostPool::new);
+        return pool.borrow(server);
+    }
+
+    /**
+     * Return a healthy session to the pool.
+     *
+     * @param session
+     */
+    public void release(FtpSession session) {
+        HostPool pool = pools.get(session.getKey());
+        if (pool == null || !session.markReturned()) {
+            log.warn("Ignore release of a session not borrowed from this pool: {}", session);
+            return;
+        }
+        pool.release(session);
+    }
+
+    /**
+     * Close a session that should not be reused, e.g. after a transfer error
+     * left the control connection in an unknown state.
+     *
+     * @param session
+     */
+    public void invalidate(FtpSession session) {
+        HostPool pool = pools.get(session.getKey());
+        if (pool == null || !session.markReturned()) {
+            log.warn("Ignore invalidation of a session not borrowed from this pool: {}", session);
+            return;
+        }
+        pool.invalidate(session);
+    }
+
+    /**
+     * Close idle sessions exceeding the max idle time. Called periodically by
+     * the evictor thread if enabled.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (HostPool pool : pools.values()) {
+            try {
+                pool.evictIdle(now);
+            } catch (RuntimeException e) {
+                log.warn("Evict idle sessions of " + pool.key + " failed.", e);
+            }
+        }
+    }
+
+    /**
+     * @return counters of the whole pool.
+     */
+    public FtpSessionPoolMetrics getMetrics() {
+        int active = 0;
+        int idle = 0;
+        long created = 0;
+        long destroyed = 0;
+        long borrowed = 0;
+        long evicted = 0;
+        long validationFailures = 0;
+        long borrowTimeouts = 0;
+        for (HostPool pool : pools.values()) {
+            active += pool.active.get();
+            idle += pool.idle.size();
+            created += pool.created.get();
+            destroyed += pool.destroyed.get();
+            borrowed += pool.borrowed.get();
+            evicted += pool.evicted.get();
+            validationFailures += pool.validationFailures.get();
+            borrowTimeouts += pool.borrowTimeouts.get();
+        }
+        return new FtpSessionPoolMetrics(active, idle, created, destroyed, borrowed, evicted, validationFailures,
+                borrowTimeouts);
+    }
+
+    /**
+     * @param server
+     * @return counters of sessions for the given server.
+     */
+    public FtpSessionPoolMetrics getMetrics(FtpServer server) {
+        HostPool pool = pools.get(new FtpSessionKey(server));
+        if (pool == null) {
+            return new FtpSessionPoolMetrics(0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        return pool.getMetrics();
+    }
+
+    /**
+     * Close all idle sessions. Borrowed sessions are closed when they are
+     * released.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        for (HostPool pool : pools.values()) {
+            pool.clear();
+        }
+    }
+
+    /**
+     * sessions of one host/port/user/password/mode/timeout, see {@link FtpSessionKey}.
+     */
+    private class HostPool {
+
+        private final FtpSessionKey key;
+        private final Semaphore permits;
+        private final Deque<FtpSession> idle = new ConcurrentLinkedDeque<>();
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong destroyed = new AtomicLong();
+        private final AtomicLong borrowed = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+        private final AtomicLong validationFailures = new AtomicLong();
+        private final AtomicLong borrowTimeouts = new AtomicLong();
+
+        HostPool(FtpSessionKey key) {
+            this.key = key;
+            this.permits = new Semaphore(Math.max(1, config.getMaxPerHost()), true);
+        }
+
+        FtpSession borrow(FtpServer server) throws FtpException {
+            long timeout = config.getBorrowTimeoutMillis();
+            try {
+                if (!permits.tryAcquire(Math.max(0, timeout), TimeUnit.MILLISECONDS)) {
+                    borrowTimeouts.incrementAndGet();
+                    String msg = String.format("No ftp session available for %s within %d ms.", key, timeout);
+                    log.warn(msg);
+                    throw new FtpPoolExhaustedException(msg);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FtpPoolExhaustedException(e);
+            }
+
+            try {
+                FtpSession session = pollIdle();
+                if (session == null) {
+                    session = create(server);
+                }
+                session.markBorrowed();
+                borrowed.incrementAndGet();
+                active.incrementAndGet();
+                return session;
+            } catch (FtpException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private FtpSession pollIdle() {
+            long now = System.currentTimeMillis();
+            FtpSession session;
+            while ((session = idle.pollFirst()) != null) {
+                if (isExpired(session, now)) {
+                    evicted.incrementAndGet();
+                    destroy(session);
+                } else if (config.isValidateOnBorrow() && !session.getFtpAgent().sendNoOp()) {
+                    validationFailures.incrementAndGet();
+                    destroy(session);
+                } else {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Reuse {}", session);
+                    }
+                    return session;
+                }
+            }
+            return null;
+        }
+
+        private FtpSession create(FtpServer server) throws FtpException {
+            FtpAgent agent = server.createFtpAgent();
+            try {
+                agent.connect(server.getHost(), server.getPort());
+                agent.login(server.getUsername(), server.getPassword());
+                if (server.isPassiveMode()) {
+                    agent.enterPassiveMode();
+                }
+            } catch (FtpException | RuntimeException e) {
+                agent.disconnect();
+                throw e;
+            }
+            created.incrementAndGet();
+            FtpSession session = new FtpSession(key, agent);
+            log.info("Open {}", session);
+            return session;
+        }
+
+        void release(FtpSession session) {
+            active.decrementAndGet();
+            if (isClosed) {
+                destroy(session);
+            } else {
+                session.touch();
+                // LIFO, so that the least recently used sessions age out.
+                idle.offerFirst(session);
+            }
+            permits.release();
+        }
+
+        void invalidate(FtpSession session) {
+            active.decrementAndGet();
+            destroy(session);
+            permits.release();
+        }
+
+        void evictIdle(long now) {
+            for (FtpSession session : idle) {
+                if (isExpired(session, now) && idle.remove(session)) {
+                    evicted.incrementAndGet();
+                    destroy(session);
+                }
+            }
+        }
+
+        void clear() {
+            FtpSession session;
+            while ((session = idle.pollFirst()) != null) {
+                destroy(session);
+            }
+        }
+
+        private boolean isExpired(FtpSession session, long now) {
+            long maxIdleTime = config.getMaxIdleTimeMillis();
+            return maxIdleTime > 0 && now - session.getLastUsedAt() > maxIdleTime;
+        }
+
+        private void destroy(FtpSession session) {
+            log.info("Close {}", session);
+            FtpAgent agent = session.getFtpAgent();
+            if (agent.isConnected()) {
+                agent.logout();
+            }
+            agent.disconnect();
+            destroyed.incrementAndGet();
+        }
+
+        FtpSessionPoolMetrics getMetrics() {
+            return new FtpSessionPoolMetrics(active.get(), idle.size(), created.get(), destroyed.get(),
+                    borrowed.get(), evicted.get(), validationFailures.get(), borrowTimeouts.get());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.ftpintegration.ftp.pool;
+
+/**
+ * Settings of {@link FtpSessionPool}. Times are in milliseconds; a value of
+ * zero or less disables the related feature.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpSessionPoolConfig {
+
+    /**
+     * max sessions (idle + borrowed) per host/port/user/mode.
+     */
+    private int maxPerHost = 8;
+
+    /**
+     * how long a caller waits for a session when the host limit is reached.
+     */
+    private long borrowTimeoutMillis = 30000;
+
+    /**
+     * idle sessions older than this are closed instead of reused.
+     */
+    private long maxIdleTimeMillis = 60000;
+
+    /**
+     * how often the background evictor looks for expired idle sessions.
+     */
+    private long evictionIntervalMillis = 30000;
+
+    /**
+     * send NOOP before handing out an idle session.
+     */
+    private boolean validateOnBorrow = true;
+
+    public int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    public void setMaxPerHost(int maxPerHost) {
+        this.maxPerHost = maxPerHost;
+    }
+
+    public long getBorrowTimeoutMillis() {
+        return borrowTimeoutMillis;
+    }
+
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    public long getMaxIdleTimeMillis() {
+        return maxIdleTimeMillis;
+    }
+
+    public void setMaxIdleTimeMillis(long maxIdleTimeMillis) {
+        this.maxIdleTimeMillis = maxIdleTimeMillis;
+    }
+
+    public long getEvictionIntervalMillis() {
+        return evictionIntervalMillis;
+    }
+
+    public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+        this.evictionIntervalMillis = evictionIntervalMillis;
+    }
+
+    public boolean isValidateOnBorrow() {
+        return validateOnBorrow;
+    }
+
+    public void setValidateOnBorrow(boolean validateOnBorrow) {
+        this.validateOnBorrow = validateOnBorrow;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.ftpintegration.ftp.pool;
+
+/**
+ * Point-in-time snapshot of {@link FtpSessionPool} counters, either for the
+ * whole pool or for one host.
+ * 
+ * @author Yu-Hua Chang
+ *
+ */
+public class FtpSessionPoolMetrics {
+
+    private final int active;
+    private final int idle;
+    private final long created;
+    private final long destroyed;
+    private final long borrowed;
+    private final long evicted;
+    private final long validationFailures;
+    private final long borrowTimeouts;
+
+    public FtpSessionPoolMetrics(int active, int idle, long created, long destroyed, long borrowed, long evicted,
+            long validationFailures, long borrowTimeouts) {
+        this.active = active;
+        this.idle = idle;
+        this.created = created;
+        this.destroyed = destroyed;
+        this.borrowed = borrowed;
+        this.evicted = evicted;
+        this.validationFailures = validationFailures;
+        this.borrowTimeouts = borrowTimeouts;
+    }
+
+    /**
+     * @return sessions currently borrowed.
+     */
+    public int getActive() {
+        return active;
+    }
+
+    /**
+     * @return sessions currently waiting in the pool.
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * @return sessions opened (connect + login) so far.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return sessions closed so far, for whatever reason.
+     */
+    public long getDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * @return successful borrows so far; borrowed - created is the number of
+     *         handshakes saved by the pool.
+     */
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    /**
+     * @return idle sessions closed because they exceeded the max idle time.
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * @return idle sessions closed because NOOP failed on borrow.
+     */
+    public long getValidationFailures() {
+        return validationFailures;
+    }
+
+    /**
+     * @return borrows that gave up because the host limit was reached.
+     */
+    public long getBorrowTimeouts() {
+        return borrowTimeouts;
+    }
+
+    @Override
+    public String toString() {
+        return "FtpSessionPoolMetrics [active=" + active + ", idle=" + idle + ", created=" + created + ", destroyed="
+                + destroyed + ", borrowed=" + borrowed + ", evicted=" + evicted + ", validationFailures="
+                + validationFailures + ", borrowTimeouts=" + borrowTimeouts + "]";
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.ftpintegration.ftp;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.handler.FileHandler;
+
+public class AsyncFtpTemplateTest {
+
+    private FtpTemplate template;
+    private ExecutorService executor;
+    private AsyncFtpTemplate asyncTemplate;
+
+    @Before
+    public void before() {
+        template = mock(FtpTemplate.class);
+        FtpAsyncConfig config = new FtpAsyncConfig();
+        config.setThreads(1);
+        config.setQueueSize(1);
+        executor = AsyncFtpTemplate.newExecutor(config);
+        asyncTemplate = new AsyncFtpTemplate(template, executor);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void retrieveFile() throws Exception {
+        FileHandler handler = mock(FileHandler.class);
+        FtpOperationResult result = new FtpOperationResult();
+        when(template.retrieveFile("fileName", handler)).thenAnswer(invocation -> {
+            assertTrue(Thread.currentThread().getName().startsWith("ftp-async-"));
+            return result;
+        });
+
+        assertSame(result, asyncTemplate.retrieveFile("fileName", handler).get());
+    }
+
+    @Test
+    public void rejectedWhenSaturated() throws Exception {
+        FileHandler handler = mock(FileHandler.class);
+        CountDownLatch latch = new CountDownLatch(1);
+        when(template.retrieveFile("fileName", handler)).thenAnswer(invocation -> {
+            latch.await();
+            return new FtpOperationResult();
+        });
+
+        // one running, one queued, the third is rejected.
+        CompletableFuture<FtpOperationResult> running = asyncTemplate.retrieveFile("fileName", handler);
+        CompletableFuture<FtpOperationResult> queued = asyncTemplate.retrieveFile("fileName", handler);
+        CompletableFuture<FtpOperationResult> rejected = asyncTemplate.retrieveFile("fileName", handler);
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(RejectedExecutionException.class, e.getCause().getClass());
+        }
+
+        latch.countDown();
+        assertNotNull(running.get());
+        assertNotNull(queued.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void retrieveThenMoveAll() {
+        FileHandler handler = mock(FileHandler.class);
+        FtpOperationResult r1 = new FtpOperationResult();
+        FtpOperationResult r2 = new FtpOperationResult();
+        when(template.retrieveThenMoveAll(eq("input"), eq("archive"), eq(handler), any(Consumer.class)))
+                .thenAnswer(invocation -> {
+                    Consumer<FtpOperationResult> consumer = invocation.getArgument(3);
+                    consumer.accept(r1);
+                    consumer.accept(r2);
+                    return new FtpOperationResult();
+                });
+
+        List<FtpOperationResult> results = asyncTemplate.retrieveThenMoveAll("input", "archive", handler)
+                .collectList().block();
+        assertEquals(Arrays.asList(r1, r2), results);
+    }
+
+    @Test
+    public void nothingRunsUntilSubscribed() {
+        FileHandler handler = mock(FileHandler.class);
+        FtpParallelConfig config = new FtpParallelConfig();
+        FtpOperationResult r1 = new FtpOperationResult();
+        when(template.retrieveThenDeleteAll("input", handler, config)).thenReturn(Arrays.asList(r1));
+
+        asyncTemplate.retrieveThenDeleteAll("input", handler, config);
+        verifyNoMoreInteractions(template);
+
+        assertEquals(Arrays.asList(r1),
+                asyncTemplate.retrieveThenDeleteAll("input", handler, config).collectList().block());
+    }
+}
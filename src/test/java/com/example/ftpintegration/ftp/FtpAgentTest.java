@@ -3,6 +3,8 @@ package com.example.ftpintegration.ftp;
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import org.apache.commons.net.ProtocolCommandEvent;
+import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
 import org.junit.Before;
@@ -11,17 +13,25 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mockito.InOrder;
 
 import com.example.ftpintegration.ftp.exception.FtpConnectionException;
 import com.example.ftpintegration.ftp.exception.FtpDeleteFileException;
 import com.example.ftpintegration.ftp.exception.FtpListFilesException;
 import com.example.ftpintegration.ftp.exception.FtpLoginException;
 import com.example.ftpintegration.ftp.exception.FtpModeSwitchException;
+import com.example.ftpintegration.ftp.exception.FtpRenameFileException;
 import com.example.ftpintegration.ftp.exception.FtpRetrieveFileException;
 import com.example.ftpintegration.ftp.exception.FtpStoreFileException;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -385,4 +395,286 @@ public class FtpAgentTest {
         verify(client, times(1)).getReplyString();
         verifyNoMoreInteractions(client);
     }
+
+    @Test
+    public void retrieveFileStreamError() throws IOException {
+        String fileName = "fileName";
+        doThrow(IOException.class).when(client).retrieveFileStream(eq(fileName));
+
+        FtpAgent agent = new FtpAgent(client);
+        assertThrows(FtpRetrieveFileException.class, () -> {
+            agent.retrieveFileStream(fileName);
+        });
+
+        verify(client, times(1)).retrieveFileStream(eq(fileName));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void retrieveFileStreamFail() throws IOException {
+        String fileName = "fileName";
+        when(client.retrieveFileStream(eq(fileName))).thenReturn(null);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertThrows(FtpRetrieveFileException.class, () -> {
+            agent.retrieveFileStream(fileName);
+        });
+
+        verify(client, times(1)).retrieveFileStream(eq(fileName));
+        verify(client, times(1)).getReplyCode();
+        verify(client, times(1)).getReplyString();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void retrieveFileStreamSuccess() throws IOException, FtpRetrieveFileException {
+        String fileName = "fileName";
+        when(client.retrieveFileStream(eq(fileName))).thenReturn(new ByteArrayInputStream(new byte[] { 0x11 }));
+        when(client.completePendingCommand()).thenReturn(true);
+
+        FtpAgent agent = new FtpAgent(client);
+        InputStream inputStream = agent.retrieveFileStream(fileName);
+        assertEquals(0x11, inputStream.read());
+        assertEquals(-1, inputStream.read());
+        inputStream.close();
+        // closing twice completes the transfer only once.
+        inputStream.close();
+
+        verify(client, times(1)).retrieveFileStream(eq(fileName));
+        verify(client, times(1)).completePendingCommand();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void retrieveFileStreamIncomplete() throws IOException, FtpRetrieveFileException {
+        String fileName = "fileName";
+        when(client.retrieveFileStream(eq(fileName))).thenReturn(new ByteArrayInputStream(new byte[] {}));
+        when(client.completePendingCommand()).thenReturn(false);
+
+        FtpAgent agent = new FtpAgent(client);
+        InputStream inputStream = agent.retrieveFileStream(fileName);
+        assertThrows(IOException.class, () -> {
+            inputStream.close();
+        });
+
+        verify(client, times(1)).retrieveFileStream(eq(fileName));
+        verify(client, times(1)).completePendingCommand();
+        verify(client, times(1)).getReplyCode();
+        verify(client, times(1)).getReplyString();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void storeFileStreamFail() throws IOException {
+        String fileName = "fileName";
+        when(client.storeFileStream(eq(fileName))).thenReturn(null);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertThrows(FtpStoreFileException.class, () -> {
+            agent.storeFileStream(fileName);
+        });
+
+        verify(client, times(1)).storeFileStream(eq(fileName));
+        verify(client, times(1)).getReplyCode();
+        verify(client, times(1)).getReplyString();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void storeFileStreamSuccess() throws IOException, FtpStoreFileException {
+        String fileName = "fileName";
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        when(client.storeFileStream(eq(fileName))).thenReturn(data);
+        when(client.completePendingCommand()).thenReturn(true);
+
+        FtpAgent agent = new FtpAgent(client);
+        OutputStream outputStream = agent.storeFileStream(fileName);
+        outputStream.write(new byte[] { 0x11, 0x12 });
+        outputStream.close();
+        outputStream.close();
+        assertArrayEquals(new byte[] { 0x11, 0x12 }, data.toByteArray());
+
+        verify(client, times(1)).storeFileStream(eq(fileName));
+        verify(client, times(1)).completePendingCommand();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void storeFileStreamIncomplete() throws IOException, FtpStoreFileException {
+        String fileName = "fileName";
+        when(client.storeFileStream(eq(fileName))).thenReturn(new ByteArrayOutputStream());
+        when(client.completePendingCommand()).thenReturn(false);
+
+        FtpAgent agent = new FtpAgent(client);
+        OutputStream outputStream = agent.storeFileStream(fileName);
+        assertThrows(IOException.class, () -> {
+            outputStream.close();
+        });
+
+        verify(client, times(1)).storeFileStream(eq(fileName));
+        verify(client, times(1)).completePendingCommand();
+        verify(client, times(1)).getReplyCode();
+        verify(client, times(1)).getReplyString();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void renameFileError() throws IOException {
+        doThrow(IOException.class).when(client).rename(eq("from"), eq("to"));
+
+        FtpAgent agent = new FtpAgent(client);
+        assertThrows(FtpRenameFileException.class, () -> {
+            agent.renameFile("from", "to");
+        });
+
+        verify(client, times(1)).rename(eq("from"), eq("to"));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void renameFileRefused() throws IOException, FtpRenameFileException {
+        when(client.rename(eq("from"), eq("to"))).thenReturn(false);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertFalse(agent.renameFile("from", "to"));
+
+        verify(client, times(1)).rename(eq("from"), eq("to"));
+        verify(client, times(1)).getReplyCode();
+        verify(client, times(1)).getReplyString();
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void renameFileSuccess() throws IOException, FtpRenameFileException {
+        when(client.rename(eq("from"), eq("to"))).thenReturn(true);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertTrue(agent.renameFile("from", "to"));
+
+        verify(client, times(1)).rename(eq("from"), eq("to"));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void retrieveFileMetrics() throws IOException, FtpRetrieveFileException {
+        String fileName = "fileName";
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FtpAgentMetrics metrics = new FtpAgentMetrics(registry, "host");
+        when(client.retrieveFile(eq(fileName), any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[10]);
+            metrics.protocolReplyReceived(new ProtocolCommandEvent(client, 226, "226 Transfer complete"));
+            return true;
+        });
+
+        FtpAgent agent = new FtpAgent(client, metrics);
+        agent.retrieveFile(fileName);
+
+        Timer timer = registry.get(FtpAgentMetrics.TIMER).tags("host", "host", "operation", "retrieveFile",
+                "outcome", "success", "reply", "226").timer();
+        assertEquals(1, timer.count());
+        assertEquals(10, registry.get(FtpAgentMetrics.BYTES).tags("operation", "retrieveFile").counter().count(),
+                0);
+        assertNull(registry.find(FtpAgentMetrics.ERRORS).counter());
+
+        verify(client, times(1)).retrieveFile(eq(fileName), any(OutputStream.class));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void storeFileMetrics() throws IOException {
+        String fileName = "fileName";
+        MeterRegistry registry = new SimpleMeterRegistry();
+        FtpAgentMetrics metrics = new FtpAgentMetrics(registry, "host");
+        when(client.storeFile(eq(fileName), any(InputStream.class))).thenAnswer(invocation -> {
+            metrics.protocolReplyReceived(new ProtocolCommandEvent(client, 553, "553 Not allowed"));
+            return false;
+        });
+
+        FtpAgent agent = new FtpAgent(client, metrics);
+        assertThrows(FtpStoreFileException.class, () -> {
+            agent.storeFile(fileName, new byte[10]);
+        });
+
+        assertEquals(1, registry.get(FtpAgentMetrics.TIMER).tags("operation", "storeFile", "outcome", "error")
+                .timer().count());
+        assertEquals(1, registry.get(FtpAgentMetrics.ERRORS).tags("operation", "storeFile", "reply", "553")
+                .counter().count(), 0);
+        assertNull(registry.find(FtpAgentMetrics.BYTES).counter());
+    }
+
+    @Test
+    public void getFileSize() throws Throwable {
+        when(client.sendCommand(eq("SIZE"), eq("fileName"))).thenReturn(213);
+        when(client.getReplyString()).thenReturn("213 12345\r\n");
+
+        FtpAgent agent = new FtpAgent(client);
+        assertEquals(12345, agent.getFileSize("fileName"));
+    }
+
+    @Test
+    public void getFileSizeNotFound() throws Throwable {
+        when(client.sendCommand(eq("SIZE"), eq("fileName"))).thenReturn(550);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertEquals(-1, agent.getFileSize("fileName"));
+    }
+
+    @Test
+    public void retrieveFileFromOffset() throws Throwable {
+        when(client.retrieveFile(eq("fileName"), any(OutputStream.class))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[] { 3, 4, 5 });
+            return true;
+        });
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        FtpAgent agent = new FtpAgent(client);
+        assertEquals(3, agent.retrieveFile("fileName", outputStream, 2));
+        assertArrayEquals(new byte[] { 3, 4, 5 }, outputStream.toByteArray());
+
+        verify(client, times(1)).setRestartOffset(2);
+        verify(client, times(1)).retrieveFile(eq("fileName"), any(OutputStream.class));
+        verify(client, times(1)).setRestartOffset(0);
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void storeFileFromOffset() throws Throwable {
+        when(client.appendFile(eq("fileName"), any(InputStream.class))).thenAnswer(invocation -> {
+            InputStream inputStream = invocation.getArgument(1);
+            assertEquals(3, inputStream.read());
+            assertEquals(4, inputStream.read());
+            assertEquals(-1, inputStream.read());
+            return true;
+        });
+
+        FtpAgent agent = new FtpAgent(client);
+        agent.storeFile("fileName", new byte[] { 1, 2, 3, 4 }, 2);
+
+        verify(client, times(1)).appendFile(eq("fileName"), any(InputStream.class));
+        verifyNoMoreInteractions(client);
+    }
+
+    @Test
+    public void enterBinaryModeError() throws Throwable {
+        when(client.setFileType(anyInt())).thenReturn(false);
+
+        FtpAgent agent = new FtpAgent(client);
+        assertThrows(FtpModeSwitchException.class, () -> {
+            agent.enterBinaryMode();
+        });
+    }
+
+    @Test
+    public void enterAsciiMode() throws Throwable {
+        when(client.setFileType(anyInt())).thenReturn(true);
+
+        FtpAgent agent = new FtpAgent(client);
+        agent.enterBinaryMode();
+        agent.enterAsciiMode();
+
+        InOrder inOrder = inOrder(client);
+        inOrder.verify(client, times(1)).setFileType(eq(FTP.BINARY_FILE_TYPE));
+        inOrder.verify(client, times(1)).setFileType(eq(FTP.ASCII_FILE_TYPE));
+        verifyNoMoreInteractions(client);
+    }
 }
@@ -0,0 +1,39 @@
+package com.example.ftpintegration.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class FtpServerTest {
+
+    private FtpServer server = new FtpServer("localhost", 21, "user", "password", true, 1000);
+
+    @Test
+    public void sameAgentOnSameThread() {
+        assertSame(server.getFtpAgent(), server.getFtpAgent());
+    }
+
+    @Test
+    public void separateAgentPerThread() throws Exception {
+        FtpAgent agent = server.getFtpAgent();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<FtpAgent> other = executor.submit(() -> server.getFtpAgent());
+            assertNotNull(other.get());
+            assertNotSame(agent, other.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void createFtpAgentAlwaysNew() {
+        assertNotSame(server.createFtpAgent(), server.createFtpAgent());
+        assertNotSame(server.getFtpAgent(), server.createFtpAgent());
+    }
+}
@@ -6,18 +6,33 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.apache.commons.net.ftp.FTPFile;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 
+import com.example.ftpintegration.ftp.FtpOperationTimings.Phase;
 import com.example.ftpintegration.ftp.exception.FtpConnectionException;
 import com.example.ftpintegration.ftp.exception.FtpLoginException;
 import com.example.ftpintegration.ftp.exception.FtpModeSwitchException;
 import com.example.ftpintegration.ftp.exception.FtpRetrieveFileException;
 import com.example.ftpintegration.ftp.exception.FtpStoreFileException;
+import com.example.ftpintegration.ftp.handler.FileGenerator;
 import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.handler.SpooledFileHandler;
+import com.example.ftpintegration.ftp.handler.StreamingFileHandler;
+import com.example.ftpintegration.ftp.pool.FtpSession;
+import com.example.ftpintegration.ftp.pool.FtpSessionPool;
 
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class FtpTemplateTest {
@@ -425,6 +440,8 @@ public class FtpTemplateTest {
         FileHandler handler = mock(FileHandler.class);
         when(handler.handleFile(any(byte[].class))).thenReturn(message);
 
+        // rename is refused, fall back to upload.
+        when(agent.renameFile(eq(inputFileName), eq(archiveFileName))).thenReturn(false);
         doThrow(FtpStoreFileException.class).when(agent).storeFile(eq(archiveFileName), any(byte[].class));
 
         FtpOperationResult result = template.retrieveThenMove(inputFileName, archiveFileName, handler);
@@ -435,6 +452,7 @@ public class FtpTemplateTest {
         verify(agent, times(1)).connect(eq(host), eq(port));
         verify(agent, times(1)).login(eq(username), eq(password));
         verify(agent, times(1)).retrieveFile(eq(inputFileName));
+        verify(agent, times(1)).renameFile(eq(inputFileName), eq(archiveFileName));
         verify(agent, times(1)).storeFile(eq(archiveFileName), any(byte[].class));
         // agent.deleteFile(...) should not be not called.
         verify(agent, times(1)).logout();
@@ -454,6 +472,7 @@ public class FtpTemplateTest {
         when(agent.retrieveFile(eq(inputFileName))).thenReturn(bytes);
         FileHandler handler = mock(FileHandler.class);
         when(handler.handleFile(any(byte[].class))).thenReturn(message);
+        when(agent.renameFile(eq(inputFileName), eq(archiveFileName))).thenReturn(true);
 
         FtpOperationResult result = template.retrieveThenMove(inputFileName, archiveFileName, handler);
         assertTrue(result.isSuccess());
@@ -463,6 +482,35 @@ public class FtpTemplateTest {
         verify(agent, times(1)).connect(eq(host), eq(port));
         verify(agent, times(1)).login(eq(username), eq(password));
         verify(agent, times(1)).retrieveFile(eq(inputFileName));
+        verify(agent, times(1)).renameFile(eq(inputFileName), eq(archiveFileName));
+        // moved on the server, no upload and no delete.
+        verify(agent, times(1)).logout();
+        verify(agent, times(1)).disconnect();
+        verifyNoMoreInteractions(agent);
+
+        verify(handler, times(1)).handleFile(any(byte[].class));
+        verifyNoMoreInteractions(handler);
+    }
+
+    @Test
+    public void retrieveThenMoveRenameRefused() throws Throwable {
+        String inputFileName = "inputFileName";
+        String archiveFileName = "archiveFileName";
+        String message = "message";
+        byte[] bytes = new byte[] { 0x11, 0x12 };
+        when(agent.retrieveFile(eq(inputFileName))).thenReturn(bytes);
+        FileHandler handler = mock(FileHandler.class);
+        when(handler.handleFile(any(byte[].class))).thenReturn(message);
+
+        FtpOperationResult result = template.retrieveThenMove(inputFileName, archiveFileName, handler);
+        assertTrue(result.isSuccess());
+        assertEquals(message, result.getMessage());
+        assertNull(result.getError());
+
+        verify(agent, times(1)).connect(eq(host), eq(port));
+        verify(agent, times(1)).login(eq(username), eq(password));
+        verify(agent, times(1)).retrieveFile(eq(inputFileName));
+        verify(agent, times(1)).renameFile(eq(inputFileName), eq(archiveFileName));
         verify(agent, times(1)).storeFile(eq(archiveFileName), any(byte[].class));
         verify(agent, times(1)).deleteFile(eq(inputFileName));
         verify(agent, times(1)).logout();
@@ -624,6 +672,8 @@ public class FtpTemplateTest {
         verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName3));
         // agent.storeFile(archiveDirectory + "/" + fileName2) should not be
         // called.
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName3),
+                eq(archiveDirectory + "/" + fileName3));
         verify(agent, times(1)).storeFile(eq(archiveDirectory + "/" + fileName3), any(byte[].class));
         // agent.deleteFile(inputDirectory + "/" + fileName2) should not be
         // called.
@@ -681,7 +731,11 @@ public class FtpTemplateTest {
         verify(agent, times(1)).listFiles(eq(inputDirectory));
         verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName2));
         verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName3));
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName2),
+                eq(archiveDirectory + "/" + fileName2));
         verify(agent, times(1)).storeFile(eq(archiveDirectory + "/" + fileName2), any(byte[].class));
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName3),
+                eq(archiveDirectory + "/" + fileName3));
         verify(agent, times(1)).storeFile(eq(archiveDirectory + "/" + fileName3), any(byte[].class));
         // agent.deleteFile(inputDirectory + "/" + fileName2) should not run
         verify(agent, times(1)).deleteFile(eq(inputDirectory + "/" + fileName3));
@@ -736,7 +790,11 @@ public class FtpTemplateTest {
         verify(agent, times(1)).listFiles(eq(inputDirectory));
         verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName2));
         verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName3));
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName2),
+                eq(archiveDirectory + "/" + fileName2));
         verify(agent, times(1)).storeFile(eq(archiveDirectory + "/" + fileName2), any(byte[].class));
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName3),
+                eq(archiveDirectory + "/" + fileName3));
         verify(agent, times(1)).storeFile(eq(archiveDirectory + "/" + fileName3), any(byte[].class));
         verify(agent, times(1)).deleteFile(eq(inputDirectory + "/" + fileName2));
         verify(agent, times(1)).deleteFile(eq(inputDirectory + "/" + fileName3));
@@ -783,4 +841,653 @@ public class FtpTemplateTest {
         verify(agent, times(1)).disconnect();
         verifyNoMoreInteractions(agent);
     }
+
+    @Test
+    public void pooledRetrieveFileSuccess() throws Throwable {
+        String fileName = "fileName";
+        byte[] bytes = new byte[] { 0x11, 0x12 };
+        FtpAgent pooledAgent = mock(FtpAgent.class);
+        FtpSession session = mock(FtpSession.class);
+        when(session.getFtpAgent()).thenReturn(pooledAgent);
+        FtpSessionPool pool = mock(FtpSessionPool.class);
+        when(pool.borrow(server)).thenReturn(session);
+        when(pooledAgent.retrieveFile(eq(fileName))).thenReturn(bytes);
+        FileHandler handler = mock(FileHandler.class);
+
+        FtpOperationResult result = new FtpTemplate(server, pool).retrieveFile(fileName, handler);
+        assertTrue(result.isSuccess());
+
+        verify(pool, times(1)).borrow(server);
+        verify(pool, times(1)).release(session);
+        verifyNoMoreInteractions(pool);
+        verify(pooledAgent, times(1)).retrieveFile(eq(fileName));
+        verifyNoMoreInteractions(pooledAgent);
+        verifyNoMoreInteractions(agent);
+    }
+
+    @Test
+    public void pooledRetrieveFileError() throws Throwable {
+        String fileName = "fileName";
+        FtpAgent pooledAgent = mock(FtpAgent.class);
+        FtpSession session = mock(FtpSession.class);
+        when(session.getFtpAgent()).thenReturn(pooledAgent);
+        FtpSessionPool pool = mock(FtpSessionPool.class);
+        when(pool.borrow(server)).thenReturn(session);
+        doThrow(FtpRetrieveFileException.class).when(pooledAgent).retrieveFile(eq(fileName));
+        FileHandler handler = mock(FileHandler.class);
+
+        FtpOperationResult result = new FtpTemplate(server, pool).retrieveFile(fileName, handler);
+        assertFalse(result.isSuccess());
+        assertEquals(FtpRetrieveFileException.class, result.getError().getClass());
+
+        // a failed transfer may leave the session unusable.
+        verify(pool, times(1)).borrow(server);
+        verify(pool, times(1)).invalidate(session);
+        verifyNoMoreInteractions(pool);
+        verifyNoMoreInteractions(handler);
+        verifyNoMoreInteractions(agent);
+    }
+
+    @Test
+    public void pooledHandlingErrorKeepsSession() throws Throwable {
+        String fileName = "fileName";
+        FtpAgent pooledAgent = mock(FtpAgent.class);
+        FtpSession session = mock(FtpSession.class);
+        when(session.getFtpAgent()).thenReturn(pooledAgent);
+        FtpSessionPool pool = mock(FtpSessionPool.class);
+        when(pool.borrow(server)).thenReturn(session);
+        FileHandler handler = mock(FileHandler.class);
+        doThrow(IllegalStateException.class).when(handler).handleFile(any());
+
+        FtpOperationResult result = new FtpTemplate(server, pool).retrieveFile(fileName, handler);
+        assertFalse(result.isSuccess());
+        assertEquals(IllegalStateException.class, result.getError().getClass());
+
+        verify(pool, times(1)).borrow(server);
+        verify(pool, times(1)).release(session);
+        verifyNoMoreInteractions(pool);
+    }
+
+    @Test
+    public void pooledLoginError() throws Throwable {
+        FtpSessionPool pool = mock(FtpSessionPool.class);
+        doThrow(FtpLoginException.class).when(pool).borrow(server);
+
+        FtpOperationResult result = new FtpTemplate(server, pool).storeFile("fileName", new byte[] {});
+        assertFalse(result.isSuccess());
+        assertEquals(FtpLoginException.class, result.getError().getClass());
+
+        verify(pool, times(1)).borrow(server);
+        verifyNoMoreInteractions(pool);
+        verifyNoMoreInteractions(agent);
+    }
+
+    @Test
+    public void parallelRetrieveThenDeleteAll() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        String message = "messsage";
+
+        byte[] bytes = new byte[] { 0x11, 0x12 };
+        when(agent.retrieveFile(anyString())).thenReturn(bytes);
+        doThrow(FtpRetrieveFileException.class).when(agent).retrieveFile(eq(inputDirectory + "/fileName3"));
+        FileHandler handler = mock(FileHandler.class);
+        when(handler.handleFile(any(byte[].class))).thenReturn(message);
+
+        FTPFile directory = mock(FTPFile.class);
+        when(directory.isDirectory()).thenReturn(true);
+        FTPFile[] files = new FTPFile[6];
+        files[0] = directory;
+        for (int i = 1; i < files.length; i++) {
+            files[i] = mock(FTPFile.class);
+            when(files[i].getName()).thenReturn("fileName" + i);
+        }
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(files);
+
+        FtpParallelConfig config = new FtpParallelConfig();
+        config.setSessions(2);
+        config.setHandlerThreads(2);
+        config.setHandlerQueueSize(1);
+        List<FtpOperationResult> results = template.retrieveThenDeleteAll(inputDirectory, handler, config);
+
+        // results follow the listing order.
+        assertEquals(5, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            if (i == 2) {
+                assertFalse(results.get(i).isSuccess());
+                assertEquals(FtpRetrieveFileException.class, results.get(i).getError().getClass());
+            } else {
+                assertTrue(results.get(i).isSuccess());
+                assertEquals(message, results.get(i).getMessage());
+            }
+        }
+
+        // one session for listing and two for processing.
+        verify(agent, times(3)).connect(eq(host), eq(port));
+        verify(agent, times(3)).login(eq(username), eq(password));
+        verify(agent, times(1)).listFiles(eq(inputDirectory));
+        verify(agent, times(5)).retrieveFile(anyString());
+        verify(agent, times(4)).deleteFile(anyString());
+        verify(agent, never()).deleteFile(eq(inputDirectory + "/fileName3"));
+        verify(agent, times(3)).logout();
+        verify(agent, times(3)).disconnect();
+        verifyNoMoreInteractions(agent);
+
+        verify(handler, times(4)).handleFile(any(byte[].class));
+        verifyNoMoreInteractions(handler);
+    }
+
+    @Test
+    public void parallelRetrieveThenMoveAllHandlingError() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        String archiveDirectory = "archiveDirectory";
+
+        byte[] bytes = new byte[] { 0x11, 0x12 };
+        when(agent.retrieveFile(anyString())).thenReturn(bytes);
+        FileHandler handler = mock(FileHandler.class);
+        when(handler.handleFile(any(byte[].class))).thenReturn(null).thenThrow(IOException.class);
+
+        FTPFile file1 = mock(FTPFile.class);
+        when(file1.getName()).thenReturn("fileName1");
+        FTPFile file2 = mock(FTPFile.class);
+        when(file2.getName()).thenReturn("fileName2");
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(new FTPFile[] { file1, file2 });
+
+        FtpParallelConfig config = new FtpParallelConfig();
+        config.setSessions(1);
+        List<FtpOperationResult> results = template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler,
+                config);
+        assertEquals(2, results.size());
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("Process file inputDirectory/fileName1 success.", results.get(0).getMessage());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(IOException.class, results.get(1).getError().getClass());
+
+        verify(agent, times(1)).storeFile(eq(archiveDirectory + "/fileName1"), any(byte[].class));
+        verify(agent, times(1)).deleteFile(eq(inputDirectory + "/fileName1"));
+        verify(agent, never()).storeFile(eq(archiveDirectory + "/fileName2"), any(byte[].class));
+        verify(agent, never()).deleteFile(eq(inputDirectory + "/fileName2"));
+    }
+
+    @Test
+    public void parallelRetrieveThenDeleteAllLoginError() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        FTPFile file1 = mock(FTPFile.class);
+        when(file1.getName()).thenReturn("fileName1");
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(new FTPFile[] { file1 });
+        // listing works, the processing session cannot login.
+        doNothing().doThrow(FtpLoginException.class).when(agent).login(eq(username), eq(password));
+        FileHandler handler = mock(FileHandler.class);
+
+        List<FtpOperationResult> results = template.retrieveThenDeleteAll(inputDirectory, handler,
+                new FtpParallelConfig());
+        assertEquals(1, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(FtpLoginException.class, results.get(0).getError().getClass());
+        verifyNoMoreInteractions(handler);
+    }
+
+    @Test
+    public void retrieveFileStreamSuccess() throws Throwable {
+        String fileName = "fileName";
+        String message = "messsage";
+        InputStream inputStream = mock(InputStream.class);
+        when(agent.retrieveFileStream(eq(fileName))).thenReturn(inputStream);
+        when(inputStream.read(any(byte[].class), anyInt(), anyInt())).thenReturn(3, -1);
+        StreamingFileHandler handler = mock(StreamingFileHandler.class);
+        when(handler.handleStream(any(InputStream.class))).thenAnswer(invocation -> {
+            InputStream in = invocation.getArgument(0);
+            while (in.read(new byte[8]) != -1) {
+            }
+            return message;
+        });
+
+        FtpOperationResult result = template.retrieveFileStream(fileName, handler);
+        assertTrue(result.isSuccess());
+        assertEquals(message, result.getMessage());
+        assertEquals(3, result.getTimings().getBytes());
+
+        verify(agent, times(1)).connect(eq(host), eq(port));
+        verify(agent, times(1)).login(eq(username), eq(password));
+        verify(agent, times(1)).retrieveFileStream(eq(fileName));
+        verify(agent, times(1)).logout();
+        verify(agent, times(1)).disconnect();
+        verifyNoMoreInteractions(agent);
+
+        verify(handler, times(1)).handleStream(any(InputStream.class));
+        verify(inputStream, times(1)).close();
+    }
+
+    @Test
+    public void retrieveThenDeleteStreamTransferError() throws Throwable {
+        String fileName = "fileName";
+        InputStream inputStream = mock(InputStream.class);
+        // the server reports the transfer as failed when the stream is closed.
+        doThrow(IOException.class).when(inputStream).close();
+        when(agent.retrieveFileStream(eq(fileName))).thenReturn(inputStream);
+        StreamingFileHandler handler = mock(StreamingFileHandler.class);
+
+        FtpOperationResult result = template.retrieveThenDeleteStream(fileName, handler);
+        assertFalse(result.isSuccess());
+        assertEquals(IOException.class, result.getError().getClass());
+
+        verify(agent, times(1)).retrieveFileStream(eq(fileName));
+        verify(agent, never()).deleteFile(anyString());
+        verify(handler, times(1)).handleStream(any(InputStream.class));
+    }
+
+    @Test
+    public void retrieveThenDeleteStreamSuccess() throws Throwable {
+        String fileName = "fileName";
+        InputStream inputStream = mock(InputStream.class);
+        when(agent.retrieveFileStream(eq(fileName))).thenReturn(inputStream);
+        StreamingFileHandler handler = mock(StreamingFileHandler.class);
+
+        FtpOperationResult result = template.retrieveThenDeleteStream(fileName, handler);
+        assertTrue(result.isSuccess());
+        assertEquals("Process file fileName success.", result.getMessage());
+
+        verify(agent, times(1)).retrieveFileStream(eq(fileName));
+        verify(agent, times(1)).deleteFile(eq(fileName));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void storeFileStreamSuccess() throws Throwable {
+        String fileName = "fileName";
+        List<String> records = Arrays.asList("a", "b");
+        OutputStream outputStream = mock(OutputStream.class);
+        when(agent.storeFileStream(eq(fileName))).thenReturn(outputStream);
+        FileGenerator<String> generator = mock(FileGenerator.class);
+        doAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[] { 'a', '\n', 'b', '\n' });
+            return null;
+        }).when(generator).writeFileContent(eq(records), any(OutputStream.class));
+
+        FtpOperationResult result = template.storeFileStream(fileName, records, generator);
+        assertTrue(result.isSuccess());
+        assertNull(result.getError());
+        assertEquals(4, result.getTimings().getBytes());
+
+        verify(agent, times(1)).connect(eq(host), eq(port));
+        verify(agent, times(1)).login(eq(username), eq(password));
+        verify(agent, times(1)).storeFileStream(eq(fileName));
+        verify(agent, times(1)).logout();
+        verify(agent, times(1)).disconnect();
+        verifyNoMoreInteractions(agent);
+
+        verify(generator, times(1)).writeFileContent(eq(records), any(OutputStream.class));
+        verify(outputStream, times(1)).write(aryEq(new byte[] { 'a', '\n', 'b', '\n' }));
+        verify(outputStream, times(1)).close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void storeFileStreamGeneratorError() throws Throwable {
+        String fileName = "fileName";
+        List<String> records = Arrays.asList("a", "b");
+        OutputStream outputStream = mock(OutputStream.class);
+        when(agent.storeFileStream(eq(fileName))).thenReturn(outputStream);
+        FileGenerator<String> generator = mock(FileGenerator.class);
+        doThrow(IOException.class).when(generator).writeFileContent(eq(records), any(OutputStream.class));
+
+        FtpOperationResult result = template.storeFileStream(fileName, records, generator);
+        assertFalse(result.isSuccess());
+        assertEquals(IOException.class, result.getError().getClass());
+
+        // the data connection is closed even if generating failed.
+        verify(outputStream, times(1)).close();
+        verify(agent, times(1)).deleteFile(eq(fileName));
+    }
+
+    /**
+     * A generator failing after some records were uploaded does not leave a
+     * truncated file on the server.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void storeFileStreamGeneratorErrorPartway() throws Throwable {
+        String fileName = "fileName";
+        List<String> records = Arrays.asList("a", "b", "c");
+        OutputStream outputStream = mock(OutputStream.class);
+        when(agent.storeFileStream(eq(fileName))).thenReturn(outputStream);
+        FileGenerator<String> generator = new FileGenerator<String>() {
+            @Override
+            public byte[] createFileContent(List<String> list) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void writeFileContent(Iterable<String> list, OutputStream out) throws IOException {
+                for (String record : list) {
+                    if (record.equals("c")) {
+                        throw new IOException("mock");
+                    }
+                    out.write(record.getBytes());
+                }
+            }
+        };
+
+        FtpOperationResult result = template.storeFileStream(fileName, records, generator);
+        assertFalse(result.isSuccess());
+        assertEquals("mock", result.getError().getMessage());
+
+        InOrder inOrder = inOrder(outputStream, agent);
+        inOrder.verify(outputStream, times(1)).write(aryEq("a".getBytes()));
+        inOrder.verify(outputStream, times(1)).write(aryEq("b".getBytes()));
+        inOrder.verify(outputStream, times(1)).close();
+        inOrder.verify(agent, times(1)).deleteFile(eq(fileName));
+    }
+
+    @Test
+    public void retrieveThenMoveAllRenamed() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        String archiveDirectory = "archiveDirectory";
+        String fileName1 = "fileName1";
+
+        byte[] bytes = new byte[] { 0x11, 0x12 };
+        when(agent.retrieveFile(anyString())).thenReturn(bytes);
+        when(agent.renameFile(anyString(), anyString())).thenReturn(true);
+        FileHandler handler = mock(FileHandler.class);
+
+        FTPFile file1 = mock(FTPFile.class);
+        when(file1.getName()).thenReturn(fileName1);
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(new FTPFile[] { file1 });
+
+        List<FtpOperationResult> results = template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler);
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).isSuccess());
+
+        verify(agent, times(1)).connect(eq(host), eq(port));
+        verify(agent, times(1)).login(eq(username), eq(password));
+        verify(agent, times(1)).listFiles(eq(inputDirectory));
+        verify(agent, times(1)).retrieveFile(eq(inputDirectory + "/" + fileName1));
+        verify(agent, times(1)).renameFile(eq(inputDirectory + "/" + fileName1),
+                eq(archiveDirectory + "/" + fileName1));
+        // the downloaded bytes are not uploaded again.
+        verify(agent, times(1)).logout();
+        verify(agent, times(1)).disconnect();
+        verifyNoMoreInteractions(agent);
+    }
+
+    @Test
+    public void retrieveThenMoveTimings() throws Throwable {
+        String inputFileName = "inputFileName";
+        String archiveFileName = "archiveFileName";
+        when(agent.retrieveFile(eq(inputFileName))).thenReturn(new byte[] { 0x11, 0x12 });
+        FileHandler handler = mock(FileHandler.class);
+
+        FtpOperationResult result = template.retrieveThenMove(inputFileName, archiveFileName, handler);
+        assertTrue(result.isSuccess());
+
+        FtpOperationTimings timings = result.getTimings();
+        assertEquals(Arrays.asList(Phase.CONNECT, Phase.LOGIN, Phase.TRANSFER, Phase.HANDLER, Phase.ARCHIVE,
+                Phase.DELETE, Phase.LOGOUT), new ArrayList<>(timings.getPhases().keySet()));
+        assertEquals(2, timings.getBytes());
+    }
+
+    @Test
+    public void retrieveThenMoveAllTimings() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        String archiveDirectory = "archiveDirectory";
+        when(agent.retrieveFile(anyString())).thenReturn(new byte[] { 0x11, 0x12 });
+        when(agent.renameFile(anyString(), anyString())).thenReturn(true);
+        FileHandler handler = mock(FileHandler.class);
+
+        FTPFile file1 = mock(FTPFile.class);
+        when(file1.getName()).thenReturn("fileName1");
+        FTPFile file2 = mock(FTPFile.class);
+        when(file2.getName()).thenReturn("fileName2");
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(new FTPFile[] { file1, file2 });
+
+        List<FtpOperationResult> results = template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler);
+        assertEquals(2, results.size());
+
+        // the session phases go to the first file.
+        assertTrue(results.get(0).getTimings().getPhases().containsKey(Phase.LIST));
+        assertEquals(Arrays.asList(Phase.TRANSFER, Phase.HANDLER, Phase.ARCHIVE),
+                new ArrayList<>(results.get(1).getTimings().getPhases().keySet()));
+
+        FtpOperationTimings total = FtpOperationTimings.aggregate(results);
+        assertEquals(Arrays.asList(Phase.CONNECT, Phase.LOGIN, Phase.LIST, Phase.TRANSFER, Phase.HANDLER,
+                Phase.ARCHIVE, Phase.LOGOUT), new ArrayList<>(total.getPhases().keySet()));
+        assertEquals(4, total.getBytes());
+    }
+
+    @Test
+    public void pipelinedRetrieveThenMoveAll() throws Throwable {
+        String inputDirectory = "inputDirectory";
+        String archiveDirectory = "archiveDirectory";
+
+        when(agent.retrieveFile(anyString())).thenReturn(new byte[2048]);
+        doThrow(FtpRetrieveFileException.class).when(agent).retrieveFile(eq(inputDirectory + "/fileName3"));
+        when(agent.renameFile(anyString(), anyString())).thenReturn(true);
+        FileHandler handler = mock(FileHandler.class);
+        doThrow(IllegalStateException.class).when(handler).handleFile(any(byte[].class));
+        doReturn("message").when(handler).handleFile(argThat(bytes -> bytes != null && bytes.length == 2048));
+        when(agent.retrieveFile(eq(inputDirectory + "/fileName4"))).thenReturn(new byte[1]);
+
+        FTPFile[] files = new FTPFile[5];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = mock(FTPFile.class);
+            when(files[i].getName()).thenReturn("fileName" + i);
+            when(files[i].getSize()).thenReturn(2048L);
+        }
+        when(agent.listFiles(eq(inputDirectory))).thenReturn(files);
+
+        // room for one file at a time.
+        FtpPipelineConfig config = new FtpPipelineConfig();
+        config.setHandlerThreads(2);
+        config.setMaxBufferedBytes(2048);
+        List<FtpOperationResult> results = template.retrieveThenMoveAll(inputDirectory, archiveDirectory, handler,
+                config);
+
+        // results follow the listing order.
+        assertEquals(5, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            FtpOperationResult r = results.get(i);
+            if (i == 3) {
+                assertEquals(FtpRetrieveFileException.class, r.getError().getClass());
+            } else if (i == 4) {
+                assertEquals(IllegalStateException.class, r.getError().getClass());
+            } else {
+                assertTrue(r.isSuccess());
+                assertEquals("message", r.getMessage());
+            }
+        }
+
+        // one session for everything.
+        verify(agent, times(1)).connect(eq(host), eq(port));
+        verify(agent, times(1)).listFiles(eq(inputDirectory));
+        verify(agent, times(5)).retrieveFile(anyString());
+        for (int i = 0; i < 3; i++) {
+            verify(agent, times(1)).renameFile(eq(inputDirectory + "/fileName" + i),
+                    eq(archiveDirectory + "/fileName" + i));
+        }
+        verify(agent, never()).renameFile(eq(inputDirectory + "/fileName3"), anyString());
+        verify(agent, never()).renameFile(eq(inputDirectory + "/fileName4"), anyString());
+        verify(agent, times(1)).logout();
+    }
+
+    private FtpResumeConfig resumeConfig() throws IOException {
+        FtpResumeConfig config = new FtpResumeConfig();
+        config.setMaxAttempts(3);
+        config.setBackoffMillis(1);
+        config.setSpoolDirectory(Files.createTempDirectory("spool").toString());
+        return config;
+    }
+
+    @Test
+    public void resumableRetrieveFile() throws Throwable {
+        String fileName = "/dir/fileName";
+        FtpResumeConfig config = resumeConfig();
+
+        // the first attempt breaks after 2 bytes, the second continues from there.
+        when(agent.getFileSize(eq(fileName))).thenReturn(5L);
+        when(agent.retrieveFile(eq(fileName), any(OutputStream.class), anyLong())).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[] { 1, 2 });
+            throw new FtpRetrieveFileException("timeout");
+        }).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[] { 3, 4, 5 });
+            return 3L;
+        });
+        FileHandler handler = mock(FileHandler.class);
+
+        FtpOperationResult result = template.retrieveFile(fileName, handler, config);
+        assertTrue(result.isSuccess());
+        assertEquals(3, result.getTimings().getBytes());
+
+        verify(agent, times(2)).connect(eq(host), eq(port));
+        verify(agent, times(1)).retrieveFile(eq(fileName), any(OutputStream.class), eq(0L));
+        verify(agent, times(1)).retrieveFile(eq(fileName), any(OutputStream.class), eq(2L));
+        verify(handler, times(1)).handleFile(eq(new byte[] { 1, 2, 3, 4, 5 }));
+        assertEquals(0, new File(config.getSpoolDirectory()).list().length);
+
+        // switched back after the failed attempt too, as sessions may be pooled.
+        verify(agent, times(2)).enterBinaryMode();
+        verify(agent, times(2)).enterAsciiMode();
+    }
+
+    @Test
+    public void resumableRetrieveFileGivesUp() throws Throwable {
+        String fileName = "fileName";
+        FtpResumeConfig config = resumeConfig();
+
+        when(agent.getFileSize(eq(fileName))).thenReturn(5L);
+        when(agent.retrieveFile(eq(fileName), any(OutputStream.class), anyLong())).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(1);
+            throw new FtpRetrieveFileException("timeout");
+        });
+        FileHandler handler = mock(FileHandler.class);
+
+        FtpOperationResult result = template.retrieveFile(fileName, handler, config);
+        assertFalse(result.isSuccess());
+        assertEquals(FtpRetrieveFileException.class, result.getError().getClass());
+
+        verify(agent, times(3)).connect(eq(host), eq(port));
+        verify(agent, times(1)).retrieveFile(eq(fileName), any(OutputStream.class), eq(2L));
+        verify(handler, never()).handleFile(any());
+
+        // kept for the next call.
+        File[] spool = new File(config.getSpoolDirectory()).listFiles();
+        assertEquals(1, spool.length);
+        assertEquals(3, spool[0].length());
+    }
+
+    @Test
+    public void resumableRetrieveFileLoginErrorNotRetried() throws Throwable {
+        doThrow(FtpLoginException.class).when(agent).login(eq(username), eq(password));
+
+        FtpOperationResult result = template.retrieveFile("fileName", mock(FileHandler.class), resumeConfig());
+        assertEquals(FtpLoginException.class, result.getError().getClass());
+        verify(agent, times(1)).connect(eq(host), eq(port));
+    }
+
+    @Test
+    public void resumableStoreFile() throws Throwable {
+        String fileName = "fileName";
+        byte[] bytes = new byte[] { 1, 2, 3, 4, 5 };
+
+        // the first attempt breaks after 2 bytes, the second appends the rest.
+        doThrow(FtpStoreFileException.class).when(agent).storeFile(eq(fileName), any(byte[].class), eq(0));
+        when(agent.getFileSize(eq(fileName))).thenReturn(2L, 5L);
+
+        FtpOperationResult result = template.storeFile(fileName, bytes, resumeConfig());
+        assertTrue(result.isSuccess());
+        assertEquals(3, result.getTimings().getBytes());
+
+        verify(agent, times(2)).connect(eq(host), eq(port));
+        verify(agent, times(1)).storeFile(eq(fileName), eq(bytes), eq(0));
+        verify(agent, times(1)).storeFile(eq(fileName), eq(bytes), eq(2));
+        verify(agent, times(2)).getFileSize(eq(fileName));
+        verify(agent, times(2)).enterBinaryMode();
+        verify(agent, times(2)).enterAsciiMode();
+    }
+
+    @Test
+    public void resumableStoreFileSizeMismatch() throws Throwable {
+        String fileName = "fileName";
+        byte[] bytes = new byte[] { 1, 2, 3, 4, 5 };
+
+        // always truncated by the server.
+        when(agent.getFileSize(eq(fileName))).thenReturn(4L);
+
+        FtpOperationResult result = template.storeFile(fileName, bytes, resumeConfig());
+        assertFalse(result.isSuccess());
+        assertEquals(FtpStoreFileException.class, result.getError().getClass());
+
+        verify(agent, times(1)).storeFile(eq(fileName), eq(bytes), eq(0));
+        verify(agent, times(2)).storeFile(eq(fileName), eq(bytes), eq(4));
+    }
+
+    private FtpSpoolConfig spoolConfig() throws IOException {
+        FtpSpoolConfig config = new FtpSpoolConfig();
+        config.setHeapThreshold(4);
+        config.setSpoolDirectory(Files.createTempDirectory("spool").toString());
+        return config;
+    }
+
+    @Test
+    public void spooledRetrieveFileOnHeap() throws Throwable {
+        String fileName = "fileName";
+        when(agent.getFileSize(eq(fileName))).thenReturn(2L);
+        when(agent.retrieveFile(eq(fileName))).thenReturn(new byte[] { 0x11, 0x12 });
+
+        SpooledFileHandler handler = content -> {
+            assertFalse(content.isSpooled());
+            assertEquals(ByteBuffer.wrap(new byte[] { 0x11, 0x12 }), content.getBuffer());
+            return "message";
+        };
+        FtpOperationResult result = template.retrieveFileSpooled(fileName, handler, spoolConfig());
+        assertTrue(result.isSuccess());
+        assertEquals("message", result.getMessage());
+
+        verify(agent, times(1)).retrieveFile(eq(fileName));
+        verify(agent, never()).retrieveFile(eq(fileName), any(OutputStream.class), anyLong());
+    }
+
+    @Test
+    public void spooledRetrieveThenDelete() throws Throwable {
+        String fileName = "fileName";
+        FtpSpoolConfig config = spoolConfig();
+        when(agent.getFileSize(eq(fileName))).thenReturn(5L);
+        when(agent.retrieveFile(eq(fileName), any(OutputStream.class), eq(0L))).thenAnswer(invocation -> {
+            ((OutputStream) invocation.getArgument(1)).write(new byte[] { 1, 2, 3, 4, 5 });
+            return 5L;
+        });
+
+        SpooledFileHandler handler = content -> {
+            assertTrue(content.isSpooled());
+            assertTrue(content.getPath().startsWith(config.getSpoolDirectory()));
+            assertEquals(ByteBuffer.wrap(new byte[] { 3, 4 }), content.map(2, 2));
+            return null;
+        };
+        FtpOperationResult result = template.retrieveThenDeleteSpooled(fileName, handler, config);
+        assertTrue(result.isSuccess());
+        assertEquals(5, result.getTimings().getBytes());
+
+        verify(agent, never()).retrieveFile(eq(fileName));
+        verify(agent, times(1)).deleteFile(eq(fileName));
+        assertEquals(0, new File(config.getSpoolDirectory()).list().length);
+    }
+
+    @Test
+    public void spooledRetrieveThenDeleteHandlingError() throws Throwable {
+        String fileName = "fileName";
+        FtpSpoolConfig config = spoolConfig();
+        // unknown size is spooled.
+        when(agent.getFileSize(eq(fileName))).thenReturn(-1L);
+
+        SpooledFileHandler handler = content -> {
+            throw new IllegalStateException();
+        };
+        FtpOperationResult result = template.retrieveThenDeleteSpooled(fileName, handler, config);
+        assertFalse(result.isSuccess());
+        assertEquals(IllegalStateException.class, result.getError().getClass());
+
+        verify(agent, times(1)).retrieveFile(eq(fileName), any(OutputStream.class), eq(0L));
+        verify(agent, never()).deleteFile(eq(fileName));
+        assertEquals(0, new File(config.getSpoolDirectory()).list().length);
+    }
 }
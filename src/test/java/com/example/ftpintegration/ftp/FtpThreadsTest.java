@@ -0,0 +1,35 @@
+package com.example.ftpintegration.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class FtpThreadsTest {
+
+    @Test
+    public void platformThreads() {
+        ThreadFactory factory = FtpThreads.threadFactory("test-", false);
+        Thread thread = factory.newThread(() -> {
+        });
+        assertEquals("test-1", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+
+    @Test
+    public void virtualThreadsOrFallback() throws Exception {
+        ThreadFactory factory = FtpThreads.threadFactory("test-", true);
+        AtomicBoolean isRun = new AtomicBoolean();
+        Thread thread = factory.newThread(() -> isRun.set(true));
+        thread.start();
+        thread.join();
+        assertTrue(isRun.get());
+        assertTrue(thread.getName().startsWith("test-"));
+
+        boolean isVirtual = FtpThreads.isVirtualThreadSupported()
+                && (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        assertEquals(FtpThreads.isVirtualThreadSupported(), isVirtual);
+    }
+}
@@ -1,8 +1,15 @@
 package com.example.ftpintegration.ftp.handler;
 
 import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -11,6 +18,10 @@ import com.example.ftpintegration.ftp.handler.CharsetDetectionUtils;
 
 public class CharsetDetectionUtilsTest {
 
+    private static final Charset BIG5 = Charset.forName("Big5");
+
+    private static final String TEXT = "ORD001|王小明|台北市信義區\nORD002|陳大文|新北市板橋區\nORD003|林美麗|高雄市前金區\n";
+
     @BeforeClass
     public static void beforeClass() {
         // System.setProperty("java.util.logging.config.file",
@@ -53,4 +64,65 @@ public class CharsetDetectionUtilsTest {
         String cs = CharsetDetectionUtils.detect(content);
         System.out.println(new String(content, "BIG5") + " " + cs);
     }
+
+    private String repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void detectByteOrderMark() throws Throwable {
+        byte[] utf8 = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a' };
+        byte[] utf16le = { (byte) 0xFF, (byte) 0xFE, 'a', 0 };
+
+        assertEquals("UTF-8", CharsetDetectionUtils.detect(StandardCharsets.ISO_8859_1, utf8));
+        assertEquals("UTF-16LE", CharsetDetectionUtils.detect(StandardCharsets.UTF_8, utf16le));
+        assertEquals("UTF-8",
+                CharsetDetectionUtils.detect(StandardCharsets.ISO_8859_1, new ByteArrayInputStream(utf8)));
+    }
+
+    /**
+     * Only the prefix is examined unless windows are requested.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void detectSample() throws Throwable {
+        byte[] content = (repeat("ORD001|John|Taipei\n", 100) + repeat(TEXT, 100)).getBytes(BIG5);
+
+        // the prefix is plain ascii.
+        assertNotEquals("Big5", CharsetDetectionUtils.detect(StandardCharsets.UTF_8, content, 1024, 0));
+        assertEquals("Big5", CharsetDetectionUtils.detect(StandardCharsets.UTF_8, content, 1024, 3));
+        assertEquals("Big5", CharsetDetectionUtils.detect(StandardCharsets.UTF_8, content, 0, 0));
+    }
+
+    /**
+     * The stream is reset so that the content can be read from the start.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void detectStream() throws Throwable {
+        byte[] content = repeat(TEXT, 1000).getBytes(BIG5);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(content));
+
+        assertEquals("Big5", CharsetDetectionUtils.detect(StandardCharsets.UTF_8, in, 4096));
+        assertEquals('O', in.read());
+    }
+
+    @Test
+    public void detectCached() throws Throwable {
+        String key = "partner-" + System.nanoTime();
+        byte[] big5 = repeat(TEXT, 10).getBytes(BIG5);
+        byte[] utf8 = repeat(TEXT, 10).getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("Big5", CharsetDetectionUtils.detect(key, StandardCharsets.UTF_8, big5, 1024, 0));
+        assertEquals("Big5", CharsetDetectionUtils.detect(key, StandardCharsets.UTF_8, utf8, 1024, 0));
+
+        CharsetDetectionUtils.evict(key);
+        assertEquals("UTF-8", CharsetDetectionUtils.detect(key, StandardCharsets.UTF_8, utf8, 1024, 0));
+    }
 }
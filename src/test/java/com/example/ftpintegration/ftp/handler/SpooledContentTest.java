@@ -0,0 +1,64 @@
+package com.example.ftpintegration.ftp.handler;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class SpooledContentTest {
+
+    private static final byte[] BYTES = { 1, 2, 3, 4, 5 };
+
+    @Test(expected = NullPointerException.class)
+    public void setup() {
+        new SpooledContent((byte[]) null);
+    }
+
+    @Test
+    public void heap() throws Throwable {
+        try (SpooledContent content = new SpooledContent(BYTES)) {
+            assertFalse(content.isSpooled());
+            assertNull(content.getPath());
+            assertEquals(5, content.getSize());
+            assertEquals(ByteBuffer.wrap(BYTES), content.getBuffer());
+            assertEquals(ByteBuffer.wrap(new byte[] { 2, 3 }), content.map(1, 2));
+            assertTrue(content.getBuffer().isReadOnly());
+        }
+    }
+
+    @Test
+    public void spooled() throws Throwable {
+        Path path = Files.createTempFile("spool", ".tmp");
+        Files.write(path, BYTES);
+        try (SpooledContent content = new SpooledContent(path)) {
+            assertTrue(content.isSpooled());
+            assertEquals(path, content.getPath());
+            assertEquals(5, content.getSize());
+            assertEquals(ByteBuffer.wrap(BYTES), content.getBuffer());
+            assertEquals(ByteBuffer.wrap(new byte[] { 4, 5 }), content.map(3, 2));
+            assertTrue(content.getBuffer().isReadOnly());
+            try (InputStream inputStream = content.openStream()) {
+                assertEquals(1, inputStream.read());
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void windowOutOfContent() throws Throwable {
+        try (SpooledContent content = new SpooledContent(BYTES)) {
+            assertThrows(IndexOutOfBoundsException.class, () -> {
+                content.map(4, 2);
+            });
+            assertThrows(IndexOutOfBoundsException.class, () -> {
+                content.map(-1, 1);
+            });
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.impl.test.Order;
+import com.example.ftpintegration.ftp.handler.impl.test.OrderItem;
+
+public class CsvFileGeneratorTest {
+
+    private RecordMapper<CSVRecord, Order> mapper = new RecordMapper<CSVRecord, Order>() {
+        @Override
+        public Order sourceToTarget(CSVRecord source) {
+            Order o = new Order();
+            o.setOrderNumber(source.get(0));
+            o.setCustomerName(source.get(1));
+            return o;
+        }
+
+        @Override
+        public Object[] targetToSource(Order target) {
+            Object[] o = new Object[2];
+            o[0] = target.getOrderNumber();
+            o[1] = target.getCustomerName();
+            return o;
+        }
+    };
+
+    private List<OrderItem> items() {
+        return Arrays.asList(
+                new OrderItem("ORD001", 3, 1.5, new BigDecimal("120.50"), LocalDate.of(2018, 10, 1)),
+                new OrderItem("ORD002", -2, 0.1, new BigDecimal("-0.01"), LocalDate.of(2018, 12, 31)),
+                new OrderItem("ORD003", Integer.MIN_VALUE, 1e20, new BigDecimal("1E+3"), null));
+    }
+
+    /**
+     * Each record is written on its own line.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void createFileContent() throws Throwable {
+        Order o = new Order();
+        o.setOrderNumber("ORD001");
+        o.setCustomerName(" John ");
+        Order o2 = new Order();
+        o2.setOrderNumber("ORD002");
+        o2.setCustomerName("Marry");
+
+        byte[] bytes = new CsvFileGenerator<>('|', mapper).createFileContent(Arrays.asList(o, o2));
+
+        assertEquals("ORD001|John\nORD002|Marry\n", new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records written with a record mapper are read back one by one, also when
+     * written to a stream.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void readBack() throws Throwable {
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Order o = new Order();
+            o.setOrderNumber("ORD00" + i);
+            o.setCustomerName("name" + i);
+            orders.add(o);
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new CsvFileGenerator<>('|', mapper).writeFileContent(orders, outputStream);
+
+        List<Order> records = new ArrayList<>();
+        new CsvFileHandler<>('|', mapper, records::addAll).handleFile(outputStream.toByteArray());
+
+        assertEquals(3, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("ORD00" + i, records.get(i).getOrderNumber());
+            assertEquals("name" + i, records.get(i).getCustomerName());
+        }
+    }
+
+    @Test
+    public void createFileContentTyped() throws Throwable {
+        byte[] bytes = new CsvFileGenerator<>('|', OrderItem.MAPPER).createFileContent(items());
+
+        assertEquals(String.join("\n", "ORD001|3|1.5|120.50|2018-10-01", "ORD002|-2|0.1|-0.01|2018-12-31",
+                "ORD003|-2147483648|1.0E20|1000|", ""), new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Typed records are read back the same by both csv handlers.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void readBackTyped() throws Throwable {
+        List<OrderItem> items = items().subList(0, 2);
+        byte[] bytes = new CsvFileGenerator<>('|', OrderItem.MAPPER).createFileContent(items);
+
+        List<OrderItem> records = new ArrayList<>();
+        new CsvFileHandler<>('|', OrderItem.MAPPER, records::addAll).handleFile(bytes);
+        new CsvRowFileHandler<>('|', OrderItem.MAPPER, records::addAll).handleFile(bytes);
+
+        assertEquals(4, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(items.get(i % 2).toString(), records.get(i).toString());
+        }
+    }
+}
@@ -2,11 +2,27 @@ package com.example.ftpintegration.ftp.handler.impl;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
 import org.apache.commons.csv.CSVRecord;
 import org.junit.Test;
 
 import com.example.ftpintegration.ftp.handler.FileHandler;
 import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.SpooledContent;
 import com.example.ftpintegration.ftp.handler.impl.CsvFileHandler;
 import com.example.ftpintegration.ftp.handler.impl.test.Order;
 
@@ -79,4 +95,407 @@ public class CsvFileHandlerTest {
         });
     }
 
+    /**
+     * Stream input gives the same result as byte array input.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleStreamSuccess() throws Throwable {
+
+        String content = String.join("\n", "ORD001|John", "", "   ", "ORD002|Marry", "ORD003|Mike|extra");
+
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, list -> {
+
+            assertEquals(3, list.size());
+
+            assertEquals("ORD001", list.get(0).getOrderNumber());
+            assertEquals("John", list.get(0).getCustomerName());
+
+            assertEquals("ORD003", list.get(2).getOrderNumber());
+            assertEquals("Mike", list.get(2).getCustomerName());
+        });
+
+        handler.handleStream(new ByteArrayInputStream(content.getBytes()));
+    }
+
+    /**
+     * With a batch size, records are passed to the record handler in batches in
+     * file order.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleStreamInBatches() throws Throwable {
+
+        String content = String.join("\n", "ORD001|John", "", "ORD002|Marry", "ORD003|Mike", "   ", "ORD004|Amy",
+                "ORD005|Tom");
+
+        List<List<Order>> batches = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, batches::add);
+        handler.setBatchSize(2);
+
+        handler.handleStream(new ByteArrayInputStream(content.getBytes()));
+
+        assertEquals(3, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(2, batches.get(1).size());
+        assertEquals(1, batches.get(2).size());
+
+        assertEquals("ORD001", batches.get(0).get(0).getOrderNumber());
+        assertEquals("ORD003", batches.get(1).get(0).getOrderNumber());
+        assertEquals("Amy", batches.get(1).get(1).getCustomerName());
+        assertEquals("ORD005", batches.get(2).get(0).getOrderNumber());
+    }
+
+    /**
+     * In batch mode, batches before a bad line are already handled when the
+     * error is thrown.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileInBatchesFailure() throws Throwable {
+
+        String content = String.join("\n", "ORD001|John", "ORD002|Marry", "ORD003", "ORD004|Amy");
+
+        List<List<Order>> batches = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, batches::add);
+        handler.setBatchSize(2);
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> {
+            handler.handleFile(content.getBytes());
+        });
+
+        assertEquals(1, batches.size());
+        assertEquals("ORD002", batches.get(0).get(1).getOrderNumber());
+    }
+
+    private String orders(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(String.format("ORD%04d|名字%d\n", i, i));
+            if (i % 7 == 0) {
+                sb.append("\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Chunks parsed in parallel give the records of the sequential parsing in
+     * file order.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileInParallel() throws Throwable {
+        byte[] content = orders(1000).getBytes(StandardCharsets.UTF_8);
+
+        List<Order> orders = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, orders::addAll,
+                StandardCharsets.UTF_8);
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        handler.setChunkSize(100);
+
+        handler.handleFile(content);
+
+        assertEquals(1000, orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            assertEquals(String.format("ORD%04d", i), orders.get(i).getOrderNumber());
+            assertEquals("名字" + i, orders.get(i).getCustomerName());
+        }
+    }
+
+    /**
+     * Quotes are plain characters, so a line break always ends a record; record
+     * numbers count from 1 in every chunk.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileWithQuotesInParallel() throws Throwable {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            sb.append(String.format("ORD%04d|\"John\n", i));
+        }
+        byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<Long> recordNumbers = Collections.synchronizedList(new ArrayList<>());
+        List<Order> orders = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', new RecordMapper<CSVRecord, Order>() {
+            @Override
+            public Order sourceToTarget(CSVRecord source) {
+                recordNumbers.add(source.getRecordNumber());
+                return mapper.sourceToTarget(source);
+            }
+
+            @Override
+            public Object[] targetToSource(Order target) {
+                return mapper.targetToSource(target);
+            }
+        }, orders::addAll, StandardCharsets.UTF_8);
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        handler.setChunkSize(100);
+
+        handler.handleFile(content);
+
+        assertEquals(100, orders.size());
+        for (int i = 0; i < orders.size(); i++) {
+            assertEquals(String.format("ORD%04d", i), orders.get(i).getOrderNumber());
+            assertEquals("\"John", orders.get(i).getCustomerName());
+        }
+        // 14 bytes per record, so a chunk ends after 8 records at 112 bytes.
+        assertEquals(13, recordNumbers.stream().filter(n -> n == 1).count());
+    }
+
+    /**
+     * Batches keep their size and file order across chunks, also for spooled
+     * content.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleSpooledFileInParallelBatches() throws Throwable {
+        Path path = Files.createTempFile("orders", ".csv");
+        Files.write(path, orders(1000).getBytes(StandardCharsets.UTF_8));
+
+        List<List<Order>> batches = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, batches::add);
+        handler.setBatchSize(64);
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        handler.setChunkSize(1000);
+
+        try (SpooledContent content = new SpooledContent(path)) {
+            handler.handleFile(content);
+        } finally {
+            Files.delete(path);
+        }
+
+        assertEquals(16, batches.size());
+        int i = 0;
+        for (List<Order> batch : batches) {
+            assertEquals(i < 960 ? 64 : 40, batch.size());
+            for (Order order : batch) {
+                assertEquals(String.format("ORD%04d", i++), order.getOrderNumber());
+            }
+        }
+    }
+
+    /**
+     * Unordered batches still contain every record once.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileInParallelUnordered() throws Throwable {
+        List<String> orderNumbers = Collections.synchronizedList(new ArrayList<>());
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper,
+                list -> list.forEach(order -> orderNumbers.add(order.getOrderNumber())));
+        handler.setBatchSize(10);
+        handler.setParallelPool(new ForkJoinPool(4));
+        handler.setChunkSize(50);
+        handler.setOrdered(false);
+
+        handler.handleFile(orders(1000).getBytes(StandardCharsets.UTF_8));
+
+        Collections.sort(orderNumbers);
+        assertEquals(1000, orderNumbers.size());
+        for (int i = 0; i < orderNumbers.size(); i++) {
+            assertEquals(String.format("ORD%04d", i), orderNumbers.get(i));
+        }
+    }
+
+    /**
+     * An error in a chunk fails the file.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileInParallelFailure() throws Throwable {
+        String content = orders(500) + "ORD9999\n" + orders(500);
+
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, list -> {
+            fail("shouldn't be here. should die before this.");
+        });
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        handler.setChunkSize(100);
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> {
+            handler.handleFile(content.getBytes(StandardCharsets.UTF_8));
+        });
+    }
+
+    /**
+     * UTF-16 cannot be split at line break bytes and is parsed sequentially.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleUtf16FileInParallel() throws Throwable {
+        List<Order> orders = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, orders::addAll,
+                StandardCharsets.UTF_16LE);
+        handler.setParallelPool(ForkJoinPool.commonPool());
+        handler.setChunkSize(100);
+
+        byte[] bom = { (byte) 0xFF, (byte) 0xFE };
+        byte[] content = orders(100).getBytes(StandardCharsets.UTF_16LE);
+        byte[] bytes = new byte[bom.length + content.length];
+        System.arraycopy(bom, 0, bytes, 0, bom.length);
+        System.arraycopy(content, 0, bytes, bom.length, content.length);
+        handler.handleFile(bytes);
+
+        assertEquals(100, orders.size());
+        assertEquals("ORD0099", orders.get(99).getOrderNumber());
+    }
+
+    /**
+     * mapper recording the threads it ran on.
+     */
+    private RecordMapper<CSVRecord, Order> threadRecordingMapper(Set<String> threads) {
+        return new RecordMapper<CSVRecord, Order>() {
+            @Override
+            public Order sourceToTarget(CSVRecord source) {
+                threads.add(Thread.currentThread().getName());
+                return mapper.sourceToTarget(source);
+            }
+
+            @Override
+            public Object[] targetToSource(Order target) {
+                return mapper.targetToSource(target);
+            }
+        };
+    }
+
+    /**
+     * Records are mapped on the pool from the threshold on, in file order.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileMappingInParallel() throws Throwable {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Set<String> threads = ConcurrentHashMap.newKeySet();
+            List<Order> orders = new ArrayList<>();
+            CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', threadRecordingMapper(threads),
+                    orders::addAll);
+            handler.setMappingPool(pool);
+            handler.setMappingThreshold(100);
+
+            handler.handleFile(orders(5000).getBytes(StandardCharsets.UTF_8));
+
+            assertEquals(5000, orders.size());
+            for (int i = 0; i < orders.size(); i++) {
+                assertEquals(String.format("ORD%04d", i), orders.get(i).getOrderNumber());
+            }
+            assertFalse(threads.contains(Thread.currentThread().getName()));
+
+            // below the threshold on the calling thread.
+            threads.clear();
+            orders.clear();
+            handler.handleFile(orders(99).getBytes(StandardCharsets.UTF_8));
+            assertEquals(99, orders.size());
+            assertEquals(Collections.singleton(Thread.currentThread().getName()), threads);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * With an error handler, bad records are collected and skipped instead of
+     * failing the file.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileCollectingErrors() throws Throwable {
+        String content = String.join("\n", "ORD001|John", "ORD002", "ORD003|Mike", "ORD004");
+
+        List<Order> orders = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, orders::addAll);
+        handler.setErrorHandler((record, error) -> {
+            assertEquals(ArrayIndexOutOfBoundsException.class, error.getClass());
+            failed.add(record.get(0));
+        });
+
+        String message = handler.handleFile(content.getBytes());
+
+        assertEquals(2, orders.size());
+        assertEquals("ORD003", orders.get(1).getOrderNumber());
+        assertEquals(Arrays.asList("ORD002", "ORD004"), failed);
+        assertTrue(message.endsWith("(2 records failed)"));
+    }
+
+    /**
+     * Errors of records mapped in parallel batches are reported in file order on
+     * the calling thread.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void handleStreamCollectingErrorsInParallelBatches() throws Throwable {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            content.append(i % 100 == 0 ? String.format("BAD%04d\n", i) : String.format("ORD%04d|name\n", i));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<List<Order>> batches = new ArrayList<>();
+            List<String> failed = new ArrayList<>();
+            CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, batches::add);
+            handler.setBatchSize(1000);
+            handler.setMappingPool(pool);
+            handler.setMappingThreshold(10);
+            Thread caller = Thread.currentThread();
+            handler.setErrorHandler((record, error) -> {
+                assertSame(caller, Thread.currentThread());
+                failed.add(record.get(0));
+            });
+
+            String message = handler.handleStream(new ByteArrayInputStream(content.toString().getBytes()));
+
+            assertEquals(30, failed.size());
+            for (int i = 0; i < failed.size(); i++) {
+                assertEquals(String.format("BAD%04d", i * 100), failed.get(i));
+            }
+            int count = 0;
+            for (List<Order> batch : batches) {
+                for (Order order : batch) {
+                    assertTrue(order.getOrderNumber().startsWith("ORD"));
+                    count++;
+                }
+            }
+            assertEquals(2970, count);
+            assertTrue(message.endsWith("(30 records failed)"));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Record lists are array-backed on every path, so indexed access is cheap.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void recordListsAreRandomAccess() throws Throwable {
+        byte[] content = orders(10).getBytes(StandardCharsets.UTF_8);
+        List<Class<?>> listTypes = new ArrayList<>();
+        CsvFileHandler<Order> handler = new CsvFileHandler<Order>('|', mapper, list -> listTypes.add(list.getClass()));
+
+        assertTrue(handler.getSourceObjectList(content) instanceof RandomAccess);
+        handler.handleFile(content);
+        handler.handleStream(new ByteArrayInputStream(content));
+        handler.setBatchSize(3);
+        handler.handleFile(content);
+
+        assertEquals(6, listTypes.size());
+        for (Class<?> listType : listTypes) {
+            assertTrue(RandomAccess.class.isAssignableFrom(listType));
+        }
+    }
 }
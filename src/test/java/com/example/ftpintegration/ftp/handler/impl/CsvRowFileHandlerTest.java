@@ -0,0 +1,274 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.handler.FileHandler;
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.impl.test.Order;
+import com.example.ftpintegration.ftp.handler.impl.test.OrderItem;
+
+public class CsvRowFileHandlerTest {
+
+    private RecordMapper<CsvRow, Order> mapper = new RecordMapper<CsvRow, Order>() {
+        @Override
+        public Order sourceToTarget(CsvRow source) {
+            Order o = new Order();
+            o.setOrderNumber(source.get(0));
+            o.setCustomerName(source.get(1));
+            return o;
+        }
+
+        @Override
+        public Object[] targetToSource(Order target) {
+            Object[] o = new Object[2];
+            o[0] = target.getOrderNumber();
+            o[1] = target.getCustomerName();
+            return o;
+        }
+    };
+
+    /**
+     * Same as {@link CsvFileHandler}: empty lines are skipped and extra fields
+     * are ignored.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileSuccess() throws Throwable {
+
+        String content = String.join("\n", "ORD001|John", "", "   ", "ORD002|Marry", "ORD003|Mike|extra");
+
+        FileHandler handler = new CsvRowFileHandler<Order>('|', mapper, list -> {
+
+            assertEquals(3, list.size());
+
+            assertEquals("ORD001", list.get(0).getOrderNumber());
+            assertEquals("John", list.get(0).getCustomerName());
+
+            assertEquals("ORD002", list.get(1).getOrderNumber());
+            assertEquals("Marry", list.get(1).getCustomerName());
+
+            assertEquals("ORD003", list.get(2).getOrderNumber());
+            assertEquals("Mike", list.get(2).getCustomerName());
+        });
+
+        handler.handleFile(content.getBytes());
+    }
+
+    @Test
+    public void handleFileFailure() throws Throwable {
+
+        String content = String.join("\n", "ORD001|John", "", "   ", "ORD002", "ORD003|Mike|extra");
+
+        FileHandler handler = new CsvRowFileHandler<Order>('|', mapper, list -> {
+            fail("shouldn't be here. here is the result. should die before this.");
+        });
+
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> {
+            handler.handleFile(content.getBytes());
+        });
+    }
+
+    /**
+     * Records are the same as the ones of {@link CsvFileHandler}, with any line
+     * breaks, blanks, empty fields and non-ASCII text.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void sameRecordsAsCsvFileHandler() throws Throwable {
+        String[] values = { "", " ", "ORD001", "  John ", "王小明", "台北市 信義區", "\t42", "a b" };
+        String[] lineBreaks = { "\n", "\r\n", "\r", "\n\n", "\n  \n" };
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            int fields = 1 + random.nextInt(4);
+            for (int j = 0; j < fields; j++) {
+                if (j > 0) {
+                    sb.append('|');
+                }
+                sb.append(values[random.nextInt(values.length)]);
+            }
+            sb.append(lineBreaks[random.nextInt(lineBreaks.length)]);
+        }
+        sb.append("ORD999|last line without a line break");
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+        List<CSVRecord> expected = new CsvFileHandler<Order>('|', (RecordMapper<CSVRecord, Order>) null, null,
+                StandardCharsets.UTF_8).getSourceObjectList(bytes);
+        CsvRowFileHandler<Order> handler = new CsvRowFileHandler<Order>('|', mapper, null);
+        List<CsvRow> rows = handler.getSourceObjectList(bytes);
+        assertSameRecords(expected, rows);
+
+        // blocks smaller than a line.
+        handler.setBlockSize(16);
+        assertSameRecords(expected, handler.getSourceObjectList(new ByteArrayInputStream(bytes)));
+    }
+
+    private void assertSameRecords(List<CSVRecord> expected, List<CsvRow> rows) {
+        assertEquals(expected.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(expected.get(i).size(), rows.get(i).size(), "record " + i);
+            assertEquals(i + 1, rows.get(i).getRecordNumber());
+            for (int j = 0; j < rows.get(i).size(); j++) {
+                assertEquals(expected.get(i).get(j), rows.get(i).get(j), "record " + i);
+                assertEquals(expected.get(i).get(j), rows.get(i).getField(j).toString(), "record " + i);
+            }
+        }
+    }
+
+    /**
+     * Encodings other than UTF-8 and single-byte ones are converted first, as a
+     * Big5 character may contain the delimiter byte.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void handleBig5File() throws Throwable {
+        String[] names = { "王小明", "陳大文", "林美麗", "許功蓋" };
+        String[] cities = { "台北市信義區", "新北市板橋區", "高雄市前金區" };
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            // the second byte of 許 is '\'.
+            sb.append(String.format("ORD%03d\\%s|%s\n", i, names[i % names.length], cities[i % cities.length]));
+        }
+        byte[] bytes = sb.toString().getBytes(Charset.forName("Big5"));
+
+        List<Order> orders = new ArrayList<>();
+        CsvRowFileHandler<Order> handler = new CsvRowFileHandler<Order>('\\', mapper, orders::addAll,
+                Charset.forName("Big5"));
+        handler.setCharsetSampleSize(0);
+        handler.handleFile(bytes);
+
+        assertEquals(100, orders.size());
+        assertEquals("ORD099", orders.get(99).getOrderNumber());
+        assertEquals("許功蓋|台北市信義區", orders.get(99).getCustomerName());
+
+        orders.clear();
+        handler.setBlockSize(64);
+        handler.handleStream(new ByteArrayInputStream(bytes));
+
+        assertEquals(100, orders.size());
+        assertEquals("王小明|台北市信義區", orders.get(0).getCustomerName());
+    }
+
+    /**
+     * Fields of ASCII records are views of the bytes; a UTF-8 byte order mark is
+     * not part of the first field.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void fieldsAreViews() throws Throwable {
+        byte[] content = "ORD001| John |\nORD002|王小明".getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = new byte[content.length + 3];
+        bytes[0] = (byte) 0xEF;
+        bytes[1] = (byte) 0xBB;
+        bytes[2] = (byte) 0xBF;
+        System.arraycopy(content, 0, bytes, 3, content.length);
+
+        List<CsvRow> rows = new CsvRowFileHandler<Order>('|', mapper, null).getSourceObjectList(bytes);
+
+        assertEquals(2, rows.size());
+        CsvRow row = rows.get(0);
+        assertEquals(3, row.size());
+        assertEquals("ORD001", row.get(0));
+        CharSequence name = row.getField(1);
+        assertFalse(name instanceof String);
+        assertEquals(4, name.length());
+        assertEquals('J', name.charAt(0));
+        assertEquals("oh", name.subSequence(1, 3).toString());
+        assertTrue(row.isEmpty(2));
+        assertEquals("王小明", rows.get(1).getField(1).toString());
+    }
+
+    @Test
+    public void delimiterMustBeAscii() throws Throwable {
+        assertThrows(IllegalArgumentException.class, () -> {
+            new CsvRowFileHandler<Order>('、', mapper, null);
+        });
+    }
+
+    /**
+     * Numbers and dates are parsed from the bytes the same way as by the JDK
+     * parsers.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void typedColumns() throws Throwable {
+        String[] longs = { "0", "-0", "+42", "-9223372036854775808", "9223372036854775807", "007" };
+        String[] doubles = { "0", "-0", "1.5", "-.25", "3.", "0.1", "123456789012345", "1234567890.123456",
+                "1e-5", "-2.5E3", "0.30000000000000004", "NaN" };
+        String[] decimals = { "0", "-0.0", "120.50", "+.5", "123456789012345678", "1234567890123456789.5",
+                "1E+3" };
+        String content = String.join("\n", String.join("|", longs), String.join("|", doubles),
+                String.join("|", decimals), "2018-10-01|01/10/2018|2018-1-1|2018-02-30");
+
+        List<CsvRow> rows = new CsvRowFileHandler<Order>('|', mapper, null).getSourceObjectList(content.getBytes());
+
+        for (int i = 0; i < longs.length; i++) {
+            assertEquals(Long.parseLong(longs[i]), rows.get(0).getLong(i), longs[i]);
+            assertEquals(Double.parseDouble(longs[i]), rows.get(0).getDouble(i), longs[i]);
+        }
+        assertEquals(42, rows.get(0).getInt(2));
+        assertThrows(NumberFormatException.class, () -> rows.get(0).getInt(3));
+        for (int i = 0; i < doubles.length; i++) {
+            assertEquals(Double.parseDouble(doubles[i]), rows.get(1).getDouble(i), doubles[i]);
+        }
+        assertThrows(NumberFormatException.class, () -> rows.get(1).getLong(2));
+        for (int i = 0; i < decimals.length; i++) {
+            assertEquals(new BigDecimal(decimals[i]), rows.get(2).getDecimal(i), decimals[i]);
+        }
+
+        CsvRow dates = rows.get(3);
+        assertEquals(LocalDate.of(2018, 10, 1), dates.getDate(0));
+        assertEquals(LocalDate.of(2018, 10, 1), dates.getDate(1, DateTimeFormatter.ofPattern("dd/MM/yyyy")));
+        assertThrows(DateTimeException.class, () -> dates.getDate(2));
+        assertThrows(DateTimeException.class, () -> dates.getDate(3));
+        assertThrows(NumberFormatException.class, () -> dates.getLong(0));
+        assertThrows(IllegalArgumentException.class, () -> dates.getInt("quantity"));
+    }
+
+    /**
+     * With a header row, columns are found by name and the header is not mapped.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void handleFileWithHeader() throws Throwable {
+        String content = String.join("\r\n", "no|qty|weight|amount|date", "ORD001|3|1.5|120.50|2018-10-01",
+                "ORD002|5|0.25|7|2018-12-31");
+
+        List<OrderItem> items = new ArrayList<>();
+        CsvRowFileHandler<OrderItem> handler = new CsvRowFileHandler<>('|', OrderItem.MAPPER, items::addAll);
+        handler.setHeader(true);
+        handler.handleFile(content.getBytes());
+
+        assertEquals(2, items.size());
+        assertEquals(3, items.get(0).getQuantity());
+        assertEquals(new BigDecimal("7"), items.get(1).getAmount());
+
+        List<CsvRow> rows = handler.getSourceObjectList(new ByteArrayInputStream(content.getBytes()));
+        assertEquals(2, rows.size());
+        assertEquals(1, rows.get(0).getRecordNumber());
+        assertEquals(5, rows.get(1).getInt("qty"));
+        assertEquals(0.25, rows.get(1).getDouble("weight"));
+        assertEquals(LocalDate.of(2018, 12, 31), rows.get(1).getDate("date"));
+        assertThrows(IllegalArgumentException.class, () -> rows.get(1).getInt("quantity"));
+    }
+}
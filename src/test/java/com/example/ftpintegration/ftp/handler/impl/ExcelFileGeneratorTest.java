@@ -0,0 +1,155 @@
+package com.example.ftpintegration.ftp.handler.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.handler.RecordMapper;
+import com.example.ftpintegration.ftp.handler.impl.test.Order;
+import com.example.ftpintegration.ftp.handler.impl.test.OrderItem;
+
+public class ExcelFileGeneratorTest {
+
+    private RecordMapper<Row, Order> mapper = new RecordMapper<Row, Order>() {
+        @Override
+        public Order sourceToTarget(Row source) {
+            Order o = new Order();
+            o.setOrderNumber(source.getCell(0).getStringCellValue());
+            o.setCustomerName(source.getCell(1).getStringCellValue());
+            return o;
+        }
+
+        @Override
+        public Object[] targetToSource(Order target) {
+            Object[] o = new Object[2];
+            o[0] = target.getOrderNumber();
+            o[1] = target.getCustomerName();
+            return o;
+        }
+    };
+
+    private List<Order> orders(int size) {
+        List<Order> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Order o = new Order();
+            o.setOrderNumber(String.format("ORD%04d", i));
+            o.setCustomerName("Customer " + i);
+            list.add(o);
+        }
+        return list;
+    }
+
+    private List<Order> readBack(byte[] bytes) throws Throwable {
+        List<Order> result = new ArrayList<>();
+        new ExcelFileHandler<Order>(mapper, result::addAll).handleFile(bytes);
+        return result;
+    }
+
+    @Test
+    public void createFileContent() throws Throwable {
+        ExcelFileGenerator<Order> generator = new ExcelFileGenerator<>(mapper);
+
+        List<Order> result = readBack(generator.createFileContent(orders(3)));
+
+        assertEquals(3, result.size());
+        assertEquals("ORD0000", result.get(0).getOrderNumber());
+        assertEquals("Customer 2", result.get(2).getCustomerName());
+    }
+
+    /**
+     * Streaming mode writes more rows than the row window and gives the same
+     * content.
+     * 
+     * @throws Throwable
+     */
+    @Test
+    public void createFileContentStreaming() throws Throwable {
+        ExcelFileGenerator<Order> generator = new ExcelFileGenerator<>(mapper);
+        generator.setRowWindowSize(10);
+        generator.setCompressTempFiles(true);
+
+        List<Order> result = readBack(generator.createFileContent(orders(1000)));
+
+        assertEquals(1000, result.size());
+        assertEquals("ORD0000", result.get(0).getOrderNumber());
+        assertEquals("ORD0500", result.get(500).getOrderNumber());
+        assertEquals("Customer 999", result.get(999).getCustomerName());
+    }
+
+    private List<OrderItem> items(int size) {
+        List<OrderItem> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add(new OrderItem(String.format("ORD%04d", i), i, i / 4.0, BigDecimal.valueOf(i, 2),
+                    LocalDate.of(2018, 1, 1).plusDays(i)));
+        }
+        return list;
+    }
+
+    /**
+     * The typed writer creates numeric and date cells, which the typed reader
+     * reads without text conversion, with and without streaming on both sides.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void createFileContentTyped() throws Throwable {
+        List<OrderItem> items = items(100);
+        ExcelFileGenerator<OrderItem> generator = new ExcelFileGenerator<>(OrderItem.MAPPER);
+        byte[] bytes = generator.createFileContent(items);
+        generator.setRowWindowSize(10);
+        byte[] streamed = generator.createFileContent(items);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+            Row row = wb.getSheetAt(0).getRow(99);
+            assertEquals(CellType.NUMERIC, row.getCell(1).getCellType());
+            assertEquals(99, row.getCell(1).getNumericCellValue());
+            assertEquals(LocalDate.of(2018, 4, 10), TypedRows.of(row).getDate(4));
+        }
+
+        List<OrderItem> result = new ArrayList<>();
+        ExcelFileHandler<OrderItem> handler = new ExcelFileHandler<>(OrderItem.MAPPER, result::addAll);
+        handler.handleFile(bytes);
+        handler.setEventMode(true);
+        handler.handleFile(streamed);
+
+        assertEquals(200, result.size());
+        for (int i = 0; i < result.size(); i++) {
+            OrderItem expected = items.get(i % 100);
+            assertEquals(expected.getOrderNumber(), result.get(i).getOrderNumber());
+            assertEquals(expected.getQuantity(), result.get(i).getQuantity());
+            assertEquals(expected.getWeight(), result.get(i).getWeight());
+            // cells are doubles, so the scale of a decimal is not kept.
+            assertEquals(0, expected.getAmount().compareTo(result.get(i).getAmount()));
+            assertEquals(expected.getOrderDate(), result.get(i).getOrderDate());
+        }
+    }
+
+    /**
+     * Only number cells formatted as a date are read as dates.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void numberIsNotADate() throws Throwable {
+        List<OrderItem> items = items(1);
+        byte[] bytes = new ExcelFileGenerator<>(OrderItem.MAPPER).createFileContent(items);
+
+        try (XSSFWorkbook wb = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+            Row row = wb.getSheetAt(0).getRow(0);
+            assertEquals(items.get(0).getOrderDate(), TypedRows.of(row).getDate(4));
+            assertThrows(DateTimeException.class, () -> TypedRows.of(row).getDate(1));
+            assertThrows(DateTimeException.class, () -> TypedRows.of(row).getDate(3));
+        }
+    }
+}
@@ -2,11 +2,25 @@ package com.example.ftpintegration.ftp.handler.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
 import org.apache.commons.io.IOUtils;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.DataFormatter;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
@@ -73,4 +87,128 @@ public class ExcelFileHandlerTest {
         byte[] bytes = readFile(fileName);
         handler.handleFile(bytes);
     }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "test1.xls", "test1.xlsx" })
+    public void handleXlsStream(String fileName) throws Throwable {
+
+        ExcelFileHandler<Order> handler = new ExcelFileHandler<Order>(mapper, list -> {
+
+            assertEquals(3, list.size());
+
+            assertEquals("ORD001", list.get(0).getOrderNumber());
+            assertEquals("John", list.get(0).getCustomerName());
+
+            assertEquals("ORD003", list.get(2).getOrderNumber());
+            assertEquals("Mike", list.get(2).getCustomerName());
+        });
+
+        try (InputStream in = ExcelFileHandlerTest.class.getClassLoader().getResourceAsStream(fileName)) {
+            handler.handleStream(in);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "test1.xls", "test1.xlsx" })
+    public void handleXlsFileInEventMode(String fileName) throws Throwable {
+
+        List<List<Order>> batches = new ArrayList<>();
+        ExcelFileHandler<Order> handler = new ExcelFileHandler<Order>(mapper, batches::add);
+        handler.setEventMode(true);
+        handler.setBatchSize(2);
+
+        handler.handleFile(readFile(fileName));
+
+        assertEquals(2, batches.size());
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+
+        assertEquals("ORD001", batches.get(0).get(0).getOrderNumber());
+        assertEquals("John", batches.get(0).get(0).getCustomerName());
+
+        assertEquals("ORD002", batches.get(0).get(1).getOrderNumber());
+        assertEquals("Marry", batches.get(0).get(1).getCustomerName());
+
+        assertEquals("ORD003", batches.get(1).get(0).getOrderNumber());
+        assertEquals("Mike", batches.get(1).get(0).getCustomerName());
+    }
+
+    /**
+     * The event model gives the same cell types, values and formats as the user
+     * model, including empty rows, blank cells, dates and formula results.
+     * 
+     * @param format
+     * @throws Throwable
+     */
+    @ParameterizedTest
+    @ValueSource(strings = { "xls", "xlsx" })
+    public void eventModeSameAsUserModel(String format) throws Throwable {
+
+        byte[] bytes;
+        try (Workbook wb = "xls".equals(format) ? new HSSFWorkbook() : new XSSFWorkbook()) {
+            CellStyle dateStyle = wb.createCellStyle();
+            dateStyle.setDataFormat(wb.createDataFormat().getFormat("yyyy-mm-dd"));
+
+            Sheet sheet = wb.createSheet("orders");
+            Row row = sheet.createRow(0);
+            row.createCell(0).setCellValue("ORD001");
+            row.createCell(1).setCellValue(12.5);
+            row.createCell(2).setCellValue(true);
+            Cell date = row.createCell(3);
+            date.setCellValue(new Date(1500000000000L));
+            date.setCellStyle(dateStyle);
+            sheet.createRow(1);
+            row = sheet.createRow(2);
+            row.createCell(1).setCellFormula("1+2");
+            row.createCell(2).setCellFormula("\"A\"&\"B\"");
+            row.createCell(4).setCellValue("last");
+            wb.createSheet("ignored").createRow(0).createCell(0).setCellValue("other sheet");
+
+            wb.getCreationHelper().createFormulaEvaluator().evaluateAll();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            wb.write(out);
+            bytes = out.toByteArray();
+        }
+
+        DataFormatter formatter = new DataFormatter();
+        RecordMapper<Row, String> describer = new RecordMapper<Row, String>() {
+            @Override
+            public String sourceToTarget(Row source) {
+                StringBuilder sb = new StringBuilder().append(source.getRowNum()).append(':');
+                for (Cell cell : source) {
+                    sb.append(cell.getColumnIndex()).append('=');
+                    if (cell.getCellType() == CellType.FORMULA) {
+                        sb.append(cell.getCachedFormulaResultType());
+                    } else {
+                        sb.append(cell.getCellType()).append('/').append(formatter.formatCellValue(cell));
+                    }
+                    sb.append(';');
+                }
+                return sb.toString();
+            }
+
+            @Override
+            public Object[] targetToSource(String target) {
+                return null;
+            }
+        };
+
+        List<String> userModel = new ArrayList<>();
+        new ExcelFileHandler<String>(describer, userModel::addAll).handleFile(bytes);
+
+        List<String> eventModel = new ArrayList<>();
+        ExcelFileHandler<String> handler = new ExcelFileHandler<String>(describer, eventModel::addAll);
+        handler.setEventMode(true);
+        handler.handleFile(bytes);
+
+        assertEquals(3, eventModel.size());
+        assertEquals("0:0=STRING/ORD001;1=NUMERIC/12.5;2=BOOLEAN/TRUE;3=NUMERIC/2017-07-14;", eventModel.get(0));
+        assertEquals("1:", eventModel.get(1));
+        assertEquals("2:1=NUMERIC/3;2=STRING/AB;4=STRING/last;", eventModel.get(2));
+
+        // formulas are cached values in event mode.
+        assertEquals(userModel.get(0), eventModel.get(0));
+        assertEquals(userModel.get(1), eventModel.get(1));
+        assertEquals("2:1=NUMERIC;2=STRING;4=STRING/last;", userModel.get(2));
+    }
 }
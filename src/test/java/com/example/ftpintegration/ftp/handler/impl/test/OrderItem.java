@@ -0,0 +1,99 @@
+package com.example.ftpintegration.ftp.handler.impl.test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import com.example.ftpintegration.ftp.handler.RowWriter;
+import com.example.ftpintegration.ftp.handler.TypedRecordMapper;
+import com.example.ftpintegration.ftp.handler.TypedRow;
+
+public class OrderItem {
+
+    /**
+     * order number, quantity, weight, amount, order date.
+     */
+    public static final TypedRecordMapper<OrderItem> MAPPER = new TypedRecordMapper<OrderItem>() {
+        @Override
+        public OrderItem rowToTarget(TypedRow row) {
+            OrderItem o = new OrderItem();
+            o.setOrderNumber(row.getString(0));
+            o.setQuantity(row.getInt(1));
+            o.setWeight(row.getDouble(2));
+            o.setAmount(row.getDecimal(3));
+            o.setOrderDate(row.getDate(4));
+            return o;
+        }
+
+        @Override
+        public void targetToRow(OrderItem target, RowWriter writer) {
+            writer.writeString(target.getOrderNumber());
+            writer.writeInt(target.getQuantity());
+            writer.writeDouble(target.getWeight());
+            writer.writeDecimal(target.getAmount());
+            writer.writeDate(target.getOrderDate());
+        }
+    };
+
+    private String orderNumber;
+    private int quantity;
+    private double weight;
+    private BigDecimal amount;
+    private LocalDate orderDate;
+
+    public OrderItem() {
+    }
+
+    public OrderItem(String orderNumber, int quantity, double weight, BigDecimal amount, LocalDate orderDate) {
+        this.orderNumber = orderNumber;
+        this.quantity = quantity;
+        this.weight = weight;
+        this.amount = amount;
+        this.orderDate = orderDate;
+    }
+
+    public String getOrderNumber() {
+        return orderNumber;
+    }
+
+    public void setOrderNumber(String orderNumber) {
+        this.orderNumber = orderNumber;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getWeight() {
+        return weight;
+    }
+
+    public void setWeight(double weight) {
+        this.weight = weight;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public void setAmount(BigDecimal amount) {
+        this.amount = amount;
+    }
+
+    public LocalDate getOrderDate() {
+        return orderDate;
+    }
+
+    public void setOrderDate(LocalDate orderDate) {
+        this.orderDate = orderDate;
+    }
+
+    @Override
+    public String toString() {
+        return "OrderItem [orderNumber=" + orderNumber + ", quantity=" + quantity + ", weight=" + weight
+                + ", amount=" + amount + ", orderDate=" + orderDate + "]";
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.ftpintegration.ftp.job;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.net.ftp.FTPFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.FtpAgent;
+import com.example.ftpintegration.ftp.FtpServer;
+import com.example.ftpintegration.ftp.exception.FtpLoginException;
+import com.example.ftpintegration.ftp.handler.FileHandler;
+
+public class FtpJobServiceTest {
+
+    private FtpServer server;
+    private FtpAgent agent;
+    private FileHandler handler;
+    private FtpJobService service;
+
+    @Before
+    public void before() {
+        agent = mock(FtpAgent.class);
+        server = mock(FtpServer.class);
+        when(server.getFtpAgent()).thenReturn(agent);
+        when(server.getHost()).thenReturn("mock-host");
+        when(server.getUsername()).thenReturn("mock-user");
+        when(server.getPassword()).thenReturn("mock-password");
+        handler = mock(FileHandler.class);
+
+        FtpJobConfig config = new FtpJobConfig();
+        config.setThreads(1);
+        config.setQueueSize(1);
+        config.setRetainedJobs(1);
+        service = new FtpJobService(null, config);
+    }
+
+    @After
+    public void after() {
+        service.close();
+    }
+
+    private static FTPFile file(String name) {
+        FTPFile file = mock(FTPFile.class);
+        when(file.getName()).thenReturn(name);
+        return file;
+    }
+
+    private static FtpJobProgress await(FtpJob job) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        job.addListener(progress -> {
+            if (job.isFinished()) {
+                finished.countDown();
+            }
+        });
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        return job.getProgress();
+    }
+
+    @Test
+    public void moveAll() throws Throwable {
+        FTPFile[] files = new FTPFile[] { file("a"), file("b") };
+        when(agent.listFiles("in")).thenReturn(files);
+        when(agent.retrieveFile(anyString())).thenReturn(new byte[] { 0x11, 0x12 });
+        when(agent.renameFile(anyString(), anyString())).thenReturn(true);
+        doThrow(IllegalStateException.class).when(handler).handleFile(any());
+
+        FtpJob job = service.submitMoveAll(server, "in", "archive", handler);
+        assertSame(job, service.getJob(job.getId()));
+        List<FtpJobProgress> events = new CopyOnWriteArrayList<>();
+        job.addListener(events::add);
+
+        FtpJobProgress progress = await(job);
+        assertEquals(FtpJob.State.COMPLETED, progress.getState());
+        assertEquals(2, progress.getFilesDone());
+        assertEquals(2, progress.getFilesFailed());
+        assertEquals(4, progress.getBytes());
+        assertNull(progress.getError());
+        assertEquals(2, job.getResults().size());
+        assertEquals(FtpJob.State.COMPLETED, events.get(events.size() - 1).getState());
+    }
+
+    @Test
+    public void loginFailure() throws Throwable {
+        doThrow(new FtpLoginException("bad password")).when(agent).login(anyString(), anyString());
+
+        FtpJob job = service.submitMoveAll(server, "in", "archive", handler);
+
+        FtpJobProgress progress = await(job);
+        assertEquals(FtpJob.State.FAILED, progress.getState());
+        assertEquals("bad password", progress.getError());
+        assertTrue(job.getResults().isEmpty());
+    }
+
+    @Test
+    public void rejectedWhenQueueIsFull() throws Throwable {
+        CountDownLatch latch = new CountDownLatch(1);
+        when(agent.listFiles("in")).thenAnswer(invocation -> {
+            latch.await();
+            return new FTPFile[0];
+        });
+
+        FtpJob running = service.submitMoveAll(server, "in", "archive", handler);
+        FtpJob queued = service.submitMoveAll(server, "in", "archive", handler);
+        assertThrows(RejectedExecutionException.class, () -> {
+            service.submitMoveAll(server, "in", "archive", handler);
+        });
+        assertEquals(FtpJob.State.QUEUED, queued.getProgress().getState());
+
+        latch.countDown();
+        await(running);
+        await(queued);
+
+        // only one finished job is retained.
+        service.submitMoveAll(server, "in", "archive", handler);
+        assertNull(service.getJob(running.getId()));
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.ftpintegration.ftp.job;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.FtpOperationResult;
+
+public class FtpJobTest {
+
+    @Test
+    public void listenerAddedAfterFinishGetsFinalProgress() {
+        FtpJob job = new FtpJob("job");
+        job.start();
+        job.finish(new FtpOperationResult());
+
+        List<FtpJobProgress> events = new CopyOnWriteArrayList<>();
+        job.addListener(events::add);
+
+        assertEquals(1, events.size());
+        assertEquals(FtpJob.State.COMPLETED, events.get(0).getState());
+    }
+
+    /**
+     * A listener added while the job finishes gets the final progress exactly
+     * once, from either side.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void listenerAddedWhileFinishingGetsFinalProgressOnce() throws Throwable {
+        for (int i = 0; i < 2000; i++) {
+            FtpJob job = new FtpJob("job-" + i);
+            job.start();
+            List<FtpJobProgress> early = new CopyOnWriteArrayList<>();
+            job.addListener(early::add);
+            List<FtpJobProgress> events = new CopyOnWriteArrayList<>();
+
+            CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread finisher = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                job.finish(new FtpOperationResult());
+            });
+            finisher.start();
+            barrier.await();
+            job.addListener(events::add);
+            finisher.join();
+
+            assertEquals(1, early.size());
+            long finals = events.stream().filter(progress -> progress.getState() == FtpJob.State.COMPLETED).count();
+            assertEquals("iteration " + i, 1, finals);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.ftpintegration.ftp.pool;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.example.ftpintegration.ftp.FtpAgent;
+import com.example.ftpintegration.ftp.FtpServer;
+import com.example.ftpintegration.ftp.exception.FtpLoginException;
+import com.example.ftpintegration.ftp.exception.FtpPoolExhaustedException;
+
+public class FtpSessionPoolTest {
+
+    private String host = "mock-host";
+    private int port = 123;
+    private String username = "mock-user";
+    private String password = "mock-password";
+
+    private FtpServer server;
+    private FtpAgent agent1;
+    private FtpAgent agent2;
+    private FtpSessionPoolConfig config;
+    private FtpSessionPool pool;
+
+    @Before
+    public void before() {
+        agent1 = mock(FtpAgent.class);
+        agent2 = mock(FtpAgent.class);
+        server = mock(FtpServer.class);
+        when(server.createFtpAgent()).thenReturn(agent1, agent2);
+        when(server.getHost()).thenReturn(host);
+        when(server.getPort()).thenReturn(port);
+        when(server.getUsername()).thenReturn(username);
+        when(server.getPassword()).thenReturn(password);
+        when(server.isPassiveMode()).thenReturn(true);
+
+        config = new FtpSessionPoolConfig();
+        config.setEvictionIntervalMillis(0);
+        config.setMaxPerHost(1);
+        config.setBorrowTimeoutMillis(10);
+        pool = new FtpSessionPool(config);
+    }
+
+    @After
+    public void after() {
+        pool.close();
+    }
+
+    @Test
+    public void borrowCreatesLoggedInSession() throws Throwable {
+        FtpSession session = pool.borrow(server);
+        assertSame(agent1, session.getFtpAgent());
+
+        verify(agent1, times(1)).connect(eq(host), eq(port));
+        verify(agent1, times(1)).login(eq(username), eq(password));
+        verify(agent1, times(1)).enterPassiveMode();
+        verifyNoMoreInteractions(agent1);
+    }
+
+    @Test
+    public void releasedSessionIsReused() throws Throwable {
+        when(agent1.sendNoOp()).thenReturn(true);
+
+        FtpSession session1 = pool.borrow(server);
+        pool.release(session1);
+        FtpSession session2 = pool.borrow(server);
+        assertSame(session1, session2);
+
+        FtpSessionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(1, metrics.getCreated());
+        assertEquals(2, metrics.getBorrowed());
+        assertEquals(1, metrics.getActive());
+        assertEquals(0, metrics.getIdle());
+
+        verify(agent1, times(1)).connect(eq(host), eq(port));
+        verify(agent1, times(1)).login(eq(username), eq(password));
+        verify(agent1, times(1)).enterPassiveMode();
+        verify(agent1, times(1)).sendNoOp();
+        verifyNoMoreInteractions(agent1);
+    }
+
+    @Test
+    public void staleSessionIsReplacedOnBorrow() throws Throwable {
+        when(agent1.sendNoOp()).thenReturn(false);
+
+        FtpSession session1 = pool.borrow(server);
+        pool.release(session1);
+        FtpSession session2 = pool.borrow(server);
+        assertSame(agent2, session2.getFtpAgent());
+
+        FtpSessionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(2, metrics.getCreated());
+        assertEquals(1, metrics.getDestroyed());
+        assertEquals(1, metrics.getValidationFailures());
+
+        verify(agent1, times(1)).disconnect();
+    }
+
+    @Test
+    public void borrowWaitsForHostLimit() throws Throwable {
+        pool.borrow(server);
+        assertThrows(FtpPoolExhaustedException.class, () -> {
+            pool.borrow(server);
+        });
+        assertEquals(1, pool.getMetrics().getBorrowTimeouts());
+        verify(server, times(1)).createFtpAgent();
+    }
+
+    @Test
+    public void invalidatedSessionIsClosed() throws Throwable {
+        FtpSession session1 = pool.borrow(server);
+        pool.invalidate(session1);
+        FtpSession session2 = pool.borrow(server);
+        assertSame(agent2, session2.getFtpAgent());
+
+        verify(agent1, times(1)).disconnect();
+        verify(agent1, never()).sendNoOp();
+    }
+
+    @Test
+    public void loginFailureFreesThePermit() throws Throwable {
+        doThrow(FtpLoginException.class).when(agent1).login(eq(username), eq(password));
+
+        assertThrows(FtpLoginException.class, () -> {
+            pool.borrow(server);
+        });
+        verify(agent1, times(1)).disconnect();
+
+        FtpSession session = pool.borrow(server);
+        assertSame(agent2, session.getFtpAgent());
+        assertEquals(1, pool.getMetrics().getCreated());
+    }
+
+    @Test
+    public void idleSessionIsEvicted() throws Throwable {
+        config.setMaxIdleTimeMillis(1);
+
+        FtpSession session = pool.borrow(server);
+        pool.release(session);
+        Thread.sleep(10);
+        pool.evictIdle();
+
+        FtpSessionPoolMetrics metrics = pool.getMetrics(server);
+        assertEquals(0, metrics.getIdle());
+        assertEquals(1, metrics.getEvicted());
+        verify(agent1, times(1)).disconnect();
+    }
+
+    @Test
+    public void doubleReleaseIsIgnored() throws Throwable {
+        FtpSession session = pool.borrow(server);
+        pool.release(session);
+        pool.release(session);
+
+        FtpSessionPoolMetrics metrics = pool.getMetrics();
+        assertEquals(0, metrics.getActive());
+        assertEquals(1, metrics.getIdle());
+    }
+
+    /**
+     * A server with another password or timeout does not get a session logged
+     * in by this one.
+     *
+     * @throws Throwable
+     */
+    @Test
+    public void sessionIsNotSharedWithOtherCredentials() throws Throwable {
+        when(agent1.sendNoOp()).thenReturn(true);
+        FtpAgent agent3 = mock(FtpAgent.class);
+        FtpServer other = mock(FtpServer.class);
+        when(other.createFtpAgent()).thenReturn(agent2, agent3);
+        when(other.getHost()).thenReturn(host);
+        when(other.getPort()).thenReturn(port);
+        when(other.getUsername()).thenReturn(username);
+        when(other.getPassword()).thenReturn("wrong-password");
+        when(other.isPassiveMode()).thenReturn(true);
+        doThrow(new FtpLoginException("mock")).when(agent2).login(eq(username), eq("wrong-password"));
+
+        pool.release(pool.borrow(server));
+
+        assertThrows(FtpLoginException.class, () -> {
+            pool.borrow(other);
+        });
+        verify(agent2, times(1)).login(eq(username), eq("wrong-password"));
+
+        when(other.getPassword()).thenReturn(password);
+        when(other.getTimeout()).thenReturn(60000);
+        FtpSession session = pool.borrow(other);
+        assertSame(agent3, session.getFtpAgent());
+        verify(agent1, never()).sendNoOp();
+    }
+}